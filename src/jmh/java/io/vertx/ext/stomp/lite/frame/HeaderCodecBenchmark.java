@@ -0,0 +1,77 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.vertx.ext.stomp.lite.frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link HeaderCodec} with the previous implementation, kept as {@link LegacyHeaderCodec}, which always
+ * copied the headers through a {@link StringBuilder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeaderCodecBenchmark {
+
+    @Param({"/topic/market-data.EURUSD", "a:header\\with\nspecial\rcharacters"})
+    private String header;
+
+    private String encoded;
+    private byte[] encodedBytes;
+
+    @Setup
+    public void setup() {
+        encoded = HeaderCodec.encode(header, false);
+        encodedBytes = encoded.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String encode() {
+        return HeaderCodec.encode(header, false);
+    }
+
+    @Benchmark
+    public String encodeLegacy() {
+        return LegacyHeaderCodec.encode(header, false);
+    }
+
+    @Benchmark
+    public String decode() {
+        return HeaderCodec.decode(encoded, false);
+    }
+
+    @Benchmark
+    public String decodeBytes() {
+        return HeaderCodec.decode(encodedBytes, 0, encodedBytes.length, false);
+    }
+
+    @Benchmark
+    public String decodeLegacy() {
+        return LegacyHeaderCodec.decode(new String(encodedBytes, StandardCharsets.UTF_8), false);
+    }
+}
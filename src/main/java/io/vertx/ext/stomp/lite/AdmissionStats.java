@@ -0,0 +1,56 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite;
+
+/**
+ * The counters of the admission control of a STOMP server, see
+ * {@link StompServerOptions#setMaxHandshakesPerSecondPerIp(int)},
+ * {@link StompServerOptions#setMaxPendingAuthentications(int)},
+ * {@link StompServerOptions#setMaxFramesPerSecondPerConnection(int)} and
+ * {@link StompServerOptions#setMaxBytesPerSecondPerConnection(long)}.
+ * The counters are shared by all the verticle instances listening on the same host and port.
+ */
+public interface AdmissionStats {
+
+    /**
+     * @return the number of connections rejected because their remote address connected too fast
+     */
+    long rejectedHandshakes();
+
+    /**
+     * @return the number of CONNECT frames rejected because too many authentications were pending
+     */
+    long rejectedAuthentications();
+
+    /**
+     * @return the number of connections closed because they sent too many frames
+     */
+    long rejectedFrames();
+
+    /**
+     * @return the number of connections closed because they sent too many bytes
+     */
+    long rejectedBytes();
+
+    /**
+     * @return the number of authentications currently running
+     */
+    int pendingAuthentications();
+
+}
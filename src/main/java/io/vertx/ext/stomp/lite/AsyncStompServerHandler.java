@@ -0,0 +1,120 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.stomp.lite.frame.Frame;
+
+/**
+ * A {@link StompServerHandler} whose frame callbacks return a {@link Future} completed once the frame has been
+ * processed.
+ * <p></p>
+ * The connection keeps track of the frames being processed. Reading from the client is paused while more than
+ * {@link StompServerOptions#getMaxFramesInFlight()} futures are not completed, and resumed once half of them are.
+ * When a future succeeds the RECEIPT frame requested by the client is sent, so implementations must not call
+ * {@link StompServerConnection#sendReceiptIfNeeded(Frame)} themselves. When a future fails an ERROR frame is sent and
+ * the client is disconnected.
+ * <p></p>
+ * The synchronous callbacks of {@link StompServerHandler} delegate to the asynchronous ones and are not called by the
+ * server.
+ */
+public interface AsyncStompServerHandler extends StompServerHandler {
+
+    Future<Void> sendAsync(Frame frame);
+
+    /**
+     * Called instead of {@link AsyncStompServerHandler#sendAsync(Frame)} when the body of a SEND frame is streamed.
+     * The default implementation accumulates the body and then calls {@link AsyncStompServerHandler#sendAsync(Frame)}.
+     *
+     * @param frame the frame command and headers, the frame has no body
+     * @param body the stream of the body chunks
+     * @return a future completed once the frame has been processed
+     */
+    default Future<Void> sendAsync(Frame frame, ReadStream<Buffer> body) {
+        Buffer buffer = Buffer.buffer();
+        Promise<Void> received = Promise.promise();
+        body.exceptionHandler(received::tryFail)
+            .endHandler(v -> received.tryComplete())
+            .handler(buffer::appendBuffer);
+        return received.future().compose(v -> sendAsync(frame.setBody(buffer)));
+    }
+
+    Future<Void> subscribeAsync(Frame frame);
+
+    Future<Void> unsubscribeAsync(Frame frame);
+
+    Future<Void> beginAsync(Frame frame);
+
+    Future<Void> abortAsync(Frame frame);
+
+    Future<Void> commitAsync(Frame frame);
+
+    Future<Void> ackAsync(Frame frame);
+
+    Future<Void> nackAsync(Frame frame);
+
+    @Override
+    default void send(Frame frame) {
+        sendAsync(frame);
+    }
+
+    @Override
+    default void send(Frame frame, ReadStream<Buffer> body) {
+        sendAsync(frame, body);
+    }
+
+    @Override
+    default void subscribe(Frame frame) {
+        subscribeAsync(frame);
+    }
+
+    @Override
+    default void unsubscribe(Frame frame) {
+        unsubscribeAsync(frame);
+    }
+
+    @Override
+    default void begin(Frame frame) {
+        beginAsync(frame);
+    }
+
+    @Override
+    default void abort(Frame frame) {
+        abortAsync(frame);
+    }
+
+    @Override
+    default void commit(Frame frame) {
+        commitAsync(frame);
+    }
+
+    @Override
+    default void ack(Frame frame) {
+        ackAsync(frame);
+    }
+
+    @Override
+    default void nack(Frame frame) {
+        nackAsync(frame);
+    }
+
+}
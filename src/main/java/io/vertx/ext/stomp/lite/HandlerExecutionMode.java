@@ -0,0 +1,38 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite;
+
+/**
+ * Where the callbacks of the {@link StompServerHandler} run.
+ */
+public enum HandlerExecutionMode {
+
+    /**
+     * The callbacks run on the event loop of the connection, they must never block.
+     */
+    EVENT_LOOP,
+
+    /**
+     * The callbacks run on virtual threads and may block. The callbacks of a connection run one at a time, in the
+     * order the frames were received. Reading from the client is paused while the connection has more than
+     * {@link StompServerOptions#getMaxFramesInFlight()} frames waiting to be handled.
+     */
+    VIRTUAL_THREAD
+
+}
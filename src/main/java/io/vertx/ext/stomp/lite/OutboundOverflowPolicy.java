@@ -0,0 +1,50 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite;
+
+/**
+ * What a connection does when its outbound queue grows past {@link StompServerOptions#getOutboundQueueHighWatermark()},
+ * which happens when a client does not read the frames as fast as they are produced.
+ */
+public enum OutboundOverflowPolicy {
+
+    /**
+     * Frames are still queued. {@link StompServerConnection#writeQueueFull()} reports the queue as full so producers
+     * are expected to stop writing until the {@link StompServerConnection#drainHandler(io.vertx.core.Handler)} is
+     * called. Producers ignoring it, such as the routers, keep filling the queue, so the connection is closed as with
+     * {@link #DISCONNECT} once the queue holds more than {@link StompServerOptions#getOutboundQueueMaxBytes()}.
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued frames are discarded to make room for the new frame, their write futures are failed.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new frame is discarded and its write future is failed.
+     */
+    DROP_NEWEST,
+
+    /**
+     * An ERROR frame is sent to the client and the connection is closed.
+     */
+    DISCONNECT
+
+}
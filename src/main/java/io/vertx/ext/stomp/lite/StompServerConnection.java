@@ -16,12 +16,16 @@
 
 package io.vertx.ext.stomp.lite;
 
+import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Promise;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.net.SocketAddress;
 import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
 import javax.net.ssl.SSLSession;
+import java.util.Map;
 
 /**
  *
@@ -37,6 +41,9 @@ public interface StompServerConnection {
      * that buffer will be received by this instance in its own event loop and written to the underlying connection. This
      * allows you to write data to other WebSockets which are owned by different event loops.
      *
+     * For a TCP connection this is the write handler of the socket, which is only registered when
+     * {@link io.vertx.core.net.NetServerOptions#setRegisterWriteHandler(boolean)} is enabled.
+     *
      * @return the binary handler id
      */
     String binaryHandlerID();
@@ -49,10 +56,23 @@ public interface StompServerConnection {
      * that buffer will be received by this instance in its own event loop and written to the underlying connection. This
      * allows you to write data to other WebSockets which are owned by different event loops.
      *
-     * @return the text handler id
+     * @return the text handler id, null for a TCP connection
      */
     String textHandlerID();
 
+    /**
+     * The default implementation throws an {@link UnsupportedOperationException}. The
+     * {@link io.vertx.ext.stomp.lite.routing.ShardedDestinationRouter} and the
+     * {@link io.vertx.ext.stomp.lite.ack.AckTracker} keep the state of a connection on its event loop, they reject a
+     * connection not overriding it with this exception.
+     *
+     * @return the context of the connection, the frames are received and written on its event loop
+     * @throws UnsupportedOperationException if the connection does not expose its context
+     */
+    default Context context() {
+        throw new UnsupportedOperationException("This connection does not expose its context");
+    }
+
     /**
      * @return the remote address for this socket
      */
@@ -84,6 +104,23 @@ public interface StompServerConnection {
      */
     Future<Void> write(Frame frame);
 
+    /**
+     * Writes a frame created from the given template to the socket. Only the command and the given headers are encoded,
+     * the common headers and the body are shared by all the frames created from the template. This should be used when
+     * the same message is sent to many subscribers.
+     *
+     * The default implementation encodes the frame without a trailing line and writes it with {@link #write(Buffer)}.
+     *
+     * @param template the template, must not be {@code null}.
+     * @param headers the headers specific to this connection such as {@code subscription}, may be {@code null}.
+     *                These headers take precedence over the common headers of the template.
+     * @return a {@link Promise} that will be completed when the data is successfully sent.
+     *         Will be failed if there is a problem sending the data or the underlying TCP connection is already closed.
+     */
+    default Future<Void> write(FrameTemplate template, Map<String, String> headers) {
+        return write(template.toBuffer(headers, false));
+    }
+
     /**
      * Writes the given buffer to the socket. This is a low level API that should be used carefully.
      *
@@ -93,6 +130,74 @@ public interface StompServerConnection {
      */
     Future<Void> write(Buffer buffer);
 
+    /**
+     * This will return {@code true} if there are more bytes waiting for the client to read them than the
+     * {@link StompServerOptions#getOutboundQueueHighWatermark()}. Producers should stop writing until the
+     * {@link #drainHandler(Handler)} is called. This can be called from any thread.
+     *
+     * The default implementation has no outbound queue and returns {@code false}.
+     *
+     * @return true if the outbound queue is full
+     */
+    default boolean writeQueueFull() {
+        return false;
+    }
+
+    /**
+     * Set a drain handler on the connection. The handler will be called on the context of the connection when the
+     * outbound queue goes under the {@link StompServerOptions#getOutboundQueueLowWatermark()} after having been full.
+     *
+     * The default implementation has no outbound queue, the handler is never called.
+     *
+     * @param handler the handler
+     * @return a reference to this, so the API can be used fluently
+     */
+    default StompServerConnection drainHandler(Handler<Void> handler) {
+        return this;
+    }
+
+    /**
+     * @return the number of bytes waiting for the client to read them, 0 by default
+     */
+    default long outboundQueueBytes() {
+        return 0;
+    }
+
+    /**
+     * @return the number of messages waiting for the client to read them, frames coalesced in a single message count
+     *         as one, 0 by default
+     */
+    default int outboundQueueDepth() {
+        return 0;
+    }
+
+    /**
+     * Enables the conflation of the MESSAGE frames written to this connection. While the client does not read fast
+     * enough, a MESSAGE frame that has not been sent yet is replaced by a newer one having the same subscription and the
+     * same value for the given header, the write future of the replaced frame is failed. The memory used by the
+     * outbound queue is then bounded by the number of distinct keys rather than by the message rate.
+     *
+     * @param keyHeader the header identifying the frames replacing each other, {@link Frame#DESTINATION} for the
+     *                  latest value per destination. {@code null} disables the conflation.
+     * @return a reference to this, so the API can be used fluently. The default implementation does not conflate.
+     */
+    default StompServerConnection conflate(String keyHeader) {
+        return this;
+    }
+
+    /**
+     * Enables the conflation of the MESSAGE frames of one subscription, see {@link #conflate(String)}. This takes
+     * precedence over the conflation of the connection.
+     *
+     * @param subscriptionId the id of the subscription, as provided by the {@code subscription} header of the frames
+     * @param keyHeader the header identifying the frames replacing each other, {@code null} removes it, the conflation
+     *                  of the connection then applies.
+     * @return a reference to this, so the API can be used fluently. The default implementation does not conflate.
+     */
+    default StompServerConnection conflate(String subscriptionId, String keyHeader) {
+        return this;
+    }
+
     /**
      * Will send receipt frame acknowledgement to clients when requested by a receipt header
      * @param frame to check for a receipt header
@@ -147,4 +252,25 @@ public interface StompServerConnection {
      */
     void close();
 
+    /**
+     * Adds a handler called once the connection is closed. The handler is called right away if the connection is
+     * already closed. This can be called from any thread.
+     * <p></p>
+     * The handler is called on the {@link #context()} of the connection, whatever the
+     * {@link StompServerOptions#getHandlerExecutionMode()}, so it may update state owned by the event loop of the
+     * connection. It must not block. With {@link HandlerExecutionMode#VIRTUAL_THREAD} it may run before
+     * {@link StompServerHandler#closed()}, which is called on a virtual thread.
+     * <p></p>
+     * The default implementation throws an {@link UnsupportedOperationException}. A connection not overriding it can
+     * not subscribe through the {@link io.vertx.ext.stomp.lite.routing.DestinationRouter}, which would otherwise keep
+     * its subscriptions forever, the subscription is then rejected with this exception.
+     *
+     * @param handler the handler
+     * @return a reference to this, so the API can be used fluently
+     * @throws UnsupportedOperationException if the connection does not report when it is closed
+     */
+    default StompServerConnection addCloseHandler(Handler<Void> handler) {
+        throw new UnsupportedOperationException("This connection does not support close handlers");
+    }
+
 }
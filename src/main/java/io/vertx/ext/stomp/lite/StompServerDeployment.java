@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The instances of a STOMP server deployed by
+ * {@link StompServerVerticleFactory#deploy(Vertx, io.vertx.core.http.HttpServerOptions, StompServerOptions, java.util.function.Supplier, io.vertx.ext.web.Router, int)}.
+ * Each instance runs on its own event loop, the connections are spread between them.
+ */
+public class StompServerDeployment {
+
+    private final Vertx vertx;
+    private final String deploymentId;
+    private final List<StompServerVerticle> instances;
+
+    StompServerDeployment(Vertx vertx, String deploymentId, List<StompServerVerticle> instances) {
+        this.vertx = vertx;
+        this.deploymentId = deploymentId;
+        this.instances = Collections.unmodifiableList(new ArrayList<>(instances));
+    }
+
+    /**
+     * @return the deployment id of the verticles
+     */
+    public String deploymentId() {
+        return deploymentId;
+    }
+
+    /**
+     * @return the deployed verticles
+     */
+    public List<StompServerVerticle> instances() {
+        return instances;
+    }
+
+    /**
+     * Gets the number of connections handled by each instance, which can be used to verify the connections are spread
+     * evenly.
+     *
+     * @return the connection count of each instance, in the order of {@link #instances()}
+     */
+    public List<Integer> connectionCounts() {
+        List<Integer> counts = new ArrayList<>(instances.size());
+        for (StompServerVerticle instance : instances) {
+            counts.add(instance.connectionCount());
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of connections handled by all the instances
+     */
+    public int connectionCount() {
+        int count = 0;
+        for (StompServerVerticle instance : instances) {
+            count += instance.connectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the counters of the connections and frames rejected by the admission control, they are shared by the
+     *         instances
+     */
+    public AdmissionStats admissionStats() {
+        return instances.isEmpty() ? null : instances.get(0).admissionStats();
+    }
+
+    /**
+     * Undeploys all the instances.
+     *
+     * @return a future completed once the instances are stopped
+     */
+    public Future<Void> undeploy() {
+        return vertx.undeploy(deploymentId);
+    }
+}
@@ -18,6 +18,8 @@ package io.vertx.ext.stomp.lite;
 
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.stomp.lite.frame.Frame;
 
 import java.util.Map;
@@ -39,6 +41,25 @@ public interface StompServerHandler {
 
     void send(Frame frame);
 
+    /**
+     * Called instead of {@link StompServerHandler#send(Frame)} when the body of a SEND frame is streamed.
+     * See {@link StompServerOptions#setBodyStreamingEnabled(boolean)}.
+     * Pausing the body stream pauses the client connection until the stream is resumed. If the body is not read for
+     * {@link StompServerOptions#getBodyStreamingIdleTimeout()} milliseconds the connection is closed.
+     * The frames sent after this one are handled once all the body has been read, after the end handler of the stream
+     * if it was set before the last chunk was read.
+     * The default implementation accumulates the body and then calls {@link StompServerHandler#send(Frame)}.
+     *
+     * @param frame the frame command and headers, the frame has no body
+     * @param body the stream of the body chunks
+     */
+    default void send(Frame frame, ReadStream<Buffer> body) {
+        Buffer buffer = Buffer.buffer();
+        // the end handler is set first, so the following frames are handled after this one
+        body.endHandler(v -> send(frame.setBody(buffer)))
+            .handler(buffer::appendBuffer);
+    }
+
     void subscribe(Frame frame);
 
     void unsubscribe(Frame frame);
@@ -49,8 +70,15 @@ public interface StompServerHandler {
 
     void commit(Frame frame);
 
+    /**
+     * Called when the client acknowledges messages, see {@link io.vertx.ext.stomp.lite.ack.AckTracker} to track the
+     * messages of the {@code client} and {@code client-individual} subscriptions.
+     */
     void ack(Frame frame);
 
+    /**
+     * Called when the client rejects messages, see {@link io.vertx.ext.stomp.lite.ack.AckTracker}.
+     */
     void nack(Frame frame);
 
     /**
@@ -19,6 +19,8 @@ package io.vertx.ext.stomp.lite;
 import io.vertx.ext.stomp.lite.frame.Frame;
 import io.vertx.core.json.JsonObject;
 
+import java.util.List;
+
 /**
  * STOMP Server options. You can also configure the Net Server used by the STOMP server from these options.
  *
@@ -38,6 +40,32 @@ public class StompServerOptions {
   public static JsonObject DEFAULT_STOMP_HEARTBEAT = new JsonObject().put("x", 30000).put("y", 30000);
   public static boolean DEFAULT_TRAILING_LINE = false;
   public static boolean DEFAULT_DEBUG_ENABLED = false;
+  public static boolean DEFAULT_BYTE_PARSER_ENABLED = false;
+  public static boolean DEFAULT_BODY_STREAMING_ENABLED = false;
+  public static final int DEFAULT_BODY_STREAMING_THRESHOLD = 1024 * 64;
+  public static final long DEFAULT_BODY_STREAMING_IDLE_TIMEOUT = 30000;
+  public static boolean DEFAULT_WRITE_COALESCING_ENABLED = false;
+  public static final int DEFAULT_WRITE_COALESCING_MAX_BYTES = 1024 * 64;
+  public static final long DEFAULT_WRITE_COALESCING_MAX_DELAY = 0;
+  public static final int DEFAULT_OUTBOUND_QUEUE_HIGH_WATERMARK = 1024 * 1024;
+  public static final int DEFAULT_OUTBOUND_QUEUE_LOW_WATERMARK = 1024 * 512;
+  public static final int DEFAULT_OUTBOUND_QUEUE_MAX_BYTES = 1024 * 1024 * 8;
+  public static final OutboundOverflowPolicy DEFAULT_OUTBOUND_OVERFLOW_POLICY = OutboundOverflowPolicy.BLOCK;
+  public static final long DEFAULT_HEARTBEAT_TICK = 500;
+  public static final HandlerExecutionMode DEFAULT_HANDLER_EXECUTION_MODE = HandlerExecutionMode.EVENT_LOOP;
+  public static final int DEFAULT_MAX_FRAMES_IN_FLIGHT = 64;
+  public static boolean DEFAULT_WEBSOCKET_ENABLED = true;
+  public static boolean DEFAULT_TCP_ENABLED = false;
+  public static final int DEFAULT_TCP_PORT = -1;
+  public static boolean DEFAULT_WEBSOCKET_FRAME_STREAMING_ENABLED = false;
+  public static boolean DEFAULT_AUTH_CACHE_ENABLED = false;
+  public static final long DEFAULT_AUTH_CACHE_TTL = 60000;
+  public static final int DEFAULT_AUTH_CACHE_MAX_SIZE = 10000;
+  public static final List<String> DEFAULT_AUTH_CACHE_KEY_HEADERS = List.of(Frame.LOGIN, Frame.PASSCODE);
+  public static final int DEFAULT_MAX_HANDSHAKES_PER_SECOND_PER_IP = 0;
+  public static final int DEFAULT_MAX_PENDING_AUTHENTICATIONS = 0;
+  public static final int DEFAULT_MAX_FRAMES_PER_SECOND_PER_CONNECTION = 0;
+  public static final long DEFAULT_MAX_BYTES_PER_SECOND_PER_CONNECTION = 0;
 
   private int maxConnectFrameLength = DEFAULT_MAX_CONNECT_FRAME_LENGTH;
   private int maxHeaderLength = DEFAULT_MAX_HEADER_LENGTH;
@@ -51,6 +79,32 @@ public class StompServerOptions {
   private int port;
   private String host;
   private boolean debugEnabled = DEFAULT_DEBUG_ENABLED;
+  private boolean byteParserEnabled = DEFAULT_BYTE_PARSER_ENABLED;
+  private boolean bodyStreamingEnabled = DEFAULT_BODY_STREAMING_ENABLED;
+  private int bodyStreamingThreshold = DEFAULT_BODY_STREAMING_THRESHOLD;
+  private long bodyStreamingIdleTimeout = DEFAULT_BODY_STREAMING_IDLE_TIMEOUT;
+  private boolean writeCoalescingEnabled = DEFAULT_WRITE_COALESCING_ENABLED;
+  private int writeCoalescingMaxBytes = DEFAULT_WRITE_COALESCING_MAX_BYTES;
+  private long writeCoalescingMaxDelay = DEFAULT_WRITE_COALESCING_MAX_DELAY;
+  private int outboundQueueHighWatermark = DEFAULT_OUTBOUND_QUEUE_HIGH_WATERMARK;
+  private int outboundQueueLowWatermark = DEFAULT_OUTBOUND_QUEUE_LOW_WATERMARK;
+  private int outboundQueueMaxBytes = DEFAULT_OUTBOUND_QUEUE_MAX_BYTES;
+  private OutboundOverflowPolicy outboundOverflowPolicy = DEFAULT_OUTBOUND_OVERFLOW_POLICY;
+  private long heartbeatTick = DEFAULT_HEARTBEAT_TICK;
+  private HandlerExecutionMode handlerExecutionMode = DEFAULT_HANDLER_EXECUTION_MODE;
+  private int maxFramesInFlight = DEFAULT_MAX_FRAMES_IN_FLIGHT;
+  private boolean websocketEnabled = DEFAULT_WEBSOCKET_ENABLED;
+  private boolean tcpEnabled = DEFAULT_TCP_ENABLED;
+  private int tcpPort = DEFAULT_TCP_PORT;
+  private boolean websocketFrameStreamingEnabled = DEFAULT_WEBSOCKET_FRAME_STREAMING_ENABLED;
+  private boolean authCacheEnabled = DEFAULT_AUTH_CACHE_ENABLED;
+  private long authCacheTtl = DEFAULT_AUTH_CACHE_TTL;
+  private int authCacheMaxSize = DEFAULT_AUTH_CACHE_MAX_SIZE;
+  private List<String> authCacheKeyHeaders = DEFAULT_AUTH_CACHE_KEY_HEADERS;
+  private int maxHandshakesPerSecondPerIp = DEFAULT_MAX_HANDSHAKES_PER_SECOND_PER_IP;
+  private int maxPendingAuthentications = DEFAULT_MAX_PENDING_AUTHENTICATIONS;
+  private int maxFramesPerSecondPerConnection = DEFAULT_MAX_FRAMES_PER_SECOND_PER_CONNECTION;
+  private long maxBytesPerSecondPerConnection = DEFAULT_MAX_BYTES_PER_SECOND_PER_CONNECTION;
 
   /**
    * Default constructor.
@@ -70,7 +124,8 @@ public class StompServerOptions {
   }
 
   /**
-   * Sets the maximum length of the CONNECT frame that can be provided by the client
+   * Sets the maximum length of the CONNECT frame that can be provided by the client. This also bounds the frames a
+   * client can pipeline after the CONNECT frame, they are held until the client is authenticated.
    * @param maxConnectFrameLength the max length of the connect frame in bytes
    * @return the current {@link StompServerOptions}
    */
@@ -263,4 +318,543 @@ public class StompServerOptions {
     return this;
   }
 
+  /**
+   * Gets whether or not the byte level frame parser is used to parse the data sent by clients.
+   * @return true if the {@link io.vertx.ext.stomp.lite.frame.ByteFrameParser} is used, false if the
+   *         {@link io.vertx.ext.stomp.lite.frame.FrameParser} is used
+   */
+  public boolean isByteParserEnabled() {
+    return byteParserEnabled;
+  }
+
+  /**
+   * Sets if the byte level frame parser should be used instead of the record based one. This parser scans the raw bytes
+   * of the received data and avoids most of the intermediate allocations. Disabled by default.
+   * @param byteParserEnabled true to use the {@link io.vertx.ext.stomp.lite.frame.ByteFrameParser}
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setByteParserEnabled(boolean byteParserEnabled) {
+    this.byteParserEnabled = byteParserEnabled;
+    return this;
+  }
+
+  /**
+   * Gets whether or not the body of large SEND frames is streamed to the
+   * {@link StompServerHandler#send(Frame, io.vertx.core.streams.ReadStream)} handler instead of being accumulated.
+   * Streaming requires the byte parser, see {@link #isByteParserEnabled()}.
+   * @return true if body streaming is enabled false if not
+   */
+  public boolean isBodyStreamingEnabled() {
+    return bodyStreamingEnabled;
+  }
+
+  /**
+   * Sets if the body of large SEND frames should be streamed. Only frames providing a {@code content-length} header
+   * greater or equal to the {@link #getBodyStreamingThreshold()} are streamed, the max body length still applies.
+   * Disabled by default.
+   * @param bodyStreamingEnabled true to enable body streaming false to disable it.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setBodyStreamingEnabled(boolean bodyStreamingEnabled) {
+    this.bodyStreamingEnabled = bodyStreamingEnabled;
+    return this;
+  }
+
+  /**
+   * Gets the minimal {@code content-length} of a SEND frame for its body to be streamed. 64 Kb by default.
+   * @return the threshold in bytes
+   */
+  public int getBodyStreamingThreshold() {
+    return bodyStreamingThreshold;
+  }
+
+  /**
+   * Sets the minimal {@code content-length} of a SEND frame for its body to be streamed.
+   * @param bodyStreamingThreshold the threshold in bytes
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setBodyStreamingThreshold(int bodyStreamingThreshold) {
+    this.bodyStreamingThreshold = bodyStreamingThreshold;
+    return this;
+  }
+
+  /**
+   * Gets the time a streamed body can stay unread before the connection is closed. 30 seconds by default.
+   * @return the timeout in milliseconds
+   */
+  public long getBodyStreamingIdleTimeout() {
+    return bodyStreamingIdleTimeout;
+  }
+
+  /**
+   * Sets the time a streamed body can stay unread before the connection is closed. While the received chunks are not
+   * consumed the client connection is paused, and the frames sent after the body are not handled. A
+   * {@link StompServerHandler#send(io.vertx.ext.stomp.lite.frame.Frame, io.vertx.core.streams.ReadStream)} that never
+   * reads the body would otherwise stall the connection for good.
+   * @param bodyStreamingIdleTimeout the timeout in milliseconds, 0 to disable it
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setBodyStreamingIdleTimeout(long bodyStreamingIdleTimeout) {
+    this.bodyStreamingIdleTimeout = bodyStreamingIdleTimeout;
+    return this;
+  }
+
+  /**
+   * Gets whether or not the frames written to a connection during one event loop turn are gathered and sent as a
+   * single WebSocket message.
+   * @return true if write coalescing is enabled false if not
+   */
+  public boolean isWriteCoalescingEnabled() {
+    return writeCoalescingEnabled;
+  }
+
+  /**
+   * Sets if the frames written to a connection should be coalesced. When enabled the frames are gathered until the end
+   * of the current event loop turn, or until {@link #getWriteCoalescingMaxDelay()} elapsed, and flushed as a single
+   * WebSocket message containing several STOMP frames. A flush happens sooner when
+   * {@link #getWriteCoalescingMaxBytes()} are pending. Disabled by default.
+   * @param writeCoalescingEnabled true to enable write coalescing false to disable it.
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setWriteCoalescingEnabled(boolean writeCoalescingEnabled) {
+    this.writeCoalescingEnabled = writeCoalescingEnabled;
+    return this;
+  }
+
+  /**
+   * Gets the number of pending bytes that triggers a flush when write coalescing is enabled. 64 Kb by default.
+   * @return the max number of bytes gathered in a single WebSocket message
+   */
+  public int getWriteCoalescingMaxBytes() {
+    return writeCoalescingMaxBytes;
+  }
+
+  /**
+   * Sets the number of pending bytes that triggers a flush when write coalescing is enabled.
+   * @param writeCoalescingMaxBytes the max number of bytes gathered in a single WebSocket message
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setWriteCoalescingMaxBytes(int writeCoalescingMaxBytes) {
+    this.writeCoalescingMaxBytes = writeCoalescingMaxBytes;
+    return this;
+  }
+
+  /**
+   * Gets how long, in milliseconds, written frames can wait before being flushed when write coalescing is enabled.
+   * 0 by default, meaning frames are flushed at the end of the event loop turn they were written in.
+   * @return the max delay in milliseconds
+   */
+  public long getWriteCoalescingMaxDelay() {
+    return writeCoalescingMaxDelay;
+  }
+
+  /**
+   * Sets how long, in milliseconds, written frames can wait before being flushed when write coalescing is enabled.
+   * A delay gathers more frames per message at the cost of latency.
+   * @param writeCoalescingMaxDelay the max delay in milliseconds, 0 to flush at the end of the event loop turn
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setWriteCoalescingMaxDelay(long writeCoalescingMaxDelay) {
+    this.writeCoalescingMaxDelay = writeCoalescingMaxDelay;
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes queued for a connection, while the client does not read fast enough, above which the
+   * outbound queue is considered full and the {@link #getOutboundOverflowPolicy()} applies. 1 Mb by default.
+   * @return the high watermark in bytes
+   */
+  public int getOutboundQueueHighWatermark() {
+    return outboundQueueHighWatermark;
+  }
+
+  /**
+   * Sets the number of bytes queued for a connection above which the outbound queue is considered full.
+   * @param outboundQueueHighWatermark the high watermark in bytes
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setOutboundQueueHighWatermark(int outboundQueueHighWatermark) {
+    this.outboundQueueHighWatermark = outboundQueueHighWatermark;
+    return this;
+  }
+
+  /**
+   * Gets the number of queued bytes a full outbound queue must go under before the drain handler of the connection is
+   * called. 512 Kb by default.
+   * @return the low watermark in bytes
+   */
+  public int getOutboundQueueLowWatermark() {
+    return outboundQueueLowWatermark;
+  }
+
+  /**
+   * Sets the number of queued bytes a full outbound queue must go under before the drain handler of the connection is
+   * called. Must be lower than the high watermark.
+   * @param outboundQueueLowWatermark the low watermark in bytes
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setOutboundQueueLowWatermark(int outboundQueueLowWatermark) {
+    this.outboundQueueLowWatermark = outboundQueueLowWatermark;
+    return this;
+  }
+
+  /**
+   * Gets the number of queued bytes above which the connection is closed with the {@link OutboundOverflowPolicy#BLOCK}
+   * policy, whether or not the producers stopped writing. 8 Mb by default.
+   * @return the max number of queued bytes
+   */
+  public int getOutboundQueueMaxBytes() {
+    return outboundQueueMaxBytes;
+  }
+
+  /**
+   * Sets the number of queued bytes above which the connection is closed with the {@link OutboundOverflowPolicy#BLOCK}
+   * policy. This bounds the memory used by a client that does not read when some producers, such as the routers, do
+   * not check {@link StompServerConnection#writeQueueFull()}. A value lower than the high watermark is raised to it.
+   * @param outboundQueueMaxBytes the max number of queued bytes
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setOutboundQueueMaxBytes(int outboundQueueMaxBytes) {
+    this.outboundQueueMaxBytes = outboundQueueMaxBytes;
+    return this;
+  }
+
+  /**
+   * Gets what a connection does when its outbound queue is full. {@link OutboundOverflowPolicy#BLOCK} by default.
+   * @return the overflow policy
+   */
+  public OutboundOverflowPolicy getOutboundOverflowPolicy() {
+    return outboundOverflowPolicy;
+  }
+
+  /**
+   * Sets what a connection does when its outbound queue is full.
+   * @param outboundOverflowPolicy the overflow policy
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setOutboundOverflowPolicy(OutboundOverflowPolicy outboundOverflowPolicy) {
+    this.outboundOverflowPolicy = outboundOverflowPolicy;
+    return this;
+  }
+
+  /**
+   * Gets the duration of a tick of the timing wheel checking the heartbeats, in milliseconds. Pings are sent and
+   * inactive clients are disconnected with this precision. 500 ms by default.
+   * @return the tick in milliseconds
+   */
+  public long getHeartbeatTick() {
+    return heartbeatTick;
+  }
+
+  /**
+   * Sets the duration of a tick of the timing wheel checking the heartbeats. A single timer per event loop fires with
+   * this period whatever the number of connections.
+   * @param heartbeatTick the tick in milliseconds
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setHeartbeatTick(long heartbeatTick) {
+    this.heartbeatTick = heartbeatTick;
+    return this;
+  }
+
+  /**
+   * Gets where the callbacks of the {@link StompServerHandler} run. {@link HandlerExecutionMode#EVENT_LOOP} by default.
+   * @return the execution mode
+   */
+  public HandlerExecutionMode getHandlerExecutionMode() {
+    return handlerExecutionMode;
+  }
+
+  /**
+   * Sets where the callbacks of the {@link StompServerHandler} run. Use {@link HandlerExecutionMode#VIRTUAL_THREAD}
+   * when the handler performs blocking calls.
+   * @param handlerExecutionMode the execution mode
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setHandlerExecutionMode(HandlerExecutionMode handlerExecutionMode) {
+    this.handlerExecutionMode = handlerExecutionMode;
+    return this;
+  }
+
+  /**
+   * Gets the number of frames of a connection waiting to be handled above which reading from the client is paused.
+   * Reading resumes once half of them have been handled. Used with {@link HandlerExecutionMode#VIRTUAL_THREAD} and
+   * with an {@link AsyncStompServerHandler}, whose frames are in flight until their future completes. 64 by default.
+   * @return the max number of frames in flight per connection
+   */
+  public int getMaxFramesInFlight() {
+    return maxFramesInFlight;
+  }
+
+  /**
+   * Sets the number of frames of a connection waiting to be handled above which reading from the client is paused.
+   * @param maxFramesInFlight the max number of frames in flight per connection
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setMaxFramesInFlight(int maxFramesInFlight) {
+    this.maxFramesInFlight = maxFramesInFlight;
+    return this;
+  }
+
+  /**
+   * Gets whether the server accepts STOMP over WebSocket connections on the {@link #getWebsocketPath()} of the HTTP
+   * server. Enabled by default.
+   *
+   * @return true if the WebSocket transport is enabled
+   */
+  public boolean isWebsocketEnabled() {
+    return websocketEnabled;
+  }
+
+  /**
+   * Sets whether the server accepts STOMP over WebSocket connections. When disabled the HTTP server is only started
+   * if a router is provided.
+   *
+   * @param websocketEnabled true to enable the WebSocket transport
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setWebsocketEnabled(boolean websocketEnabled) {
+    this.websocketEnabled = websocketEnabled;
+    return this;
+  }
+
+  /**
+   * Gets whether the server accepts STOMP over raw TCP connections, without the HTTP upgrade and the WebSocket
+   * framing. Disabled by default.
+   *
+   * @return true if the TCP transport is enabled
+   */
+  public boolean isTcpEnabled() {
+    return tcpEnabled;
+  }
+
+  /**
+   * Sets whether the server accepts STOMP over raw TCP connections. The TCP listener can run next to the WebSocket one,
+   * in which case they must use different ports, see {@link #setTcpPort(int)}.
+   *
+   * @param tcpEnabled true to enable the TCP transport
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setTcpEnabled(boolean tcpEnabled) {
+    this.tcpEnabled = tcpEnabled;
+    return this;
+  }
+
+  /**
+   * Gets the port of the TCP listener. Defaults to {@link #DEFAULT_TCP_PORT}, which means the {@link #getPort()} is used.
+   *
+   * @return the TCP port
+   */
+  public int getTcpPort() {
+    return tcpPort;
+  }
+
+  /**
+   * Sets the port on which the TCP listener is going to listen for connections. A negative value uses
+   * {@link #getPort()}, which is only possible when the WebSocket transport is disabled.
+   *
+   * @param tcpPort the port number
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setTcpPort(int tcpPort) {
+    this.tcpPort = tcpPort;
+    return this;
+  }
+
+  /**
+   * Gets whether the WebSocket frames are fed to the parser as they arrive. Disabled by default.
+   *
+   * @return true if the WebSocket frames are streamed
+   */
+  public boolean isWebsocketFrameStreamingEnabled() {
+    return websocketFrameStreamingEnabled;
+  }
+
+  /**
+   * Sets whether the WebSocket frames, including the continuation fragments of a message, are fed to the parser as
+   * they arrive instead of being handled as whole messages. The memory used by a large STOMP frame is then bounded by
+   * the size of the fragments.
+   *
+   * @param websocketFrameStreamingEnabled true to stream the WebSocket frames
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setWebsocketFrameStreamingEnabled(boolean websocketFrameStreamingEnabled) {
+    this.websocketFrameStreamingEnabled = websocketFrameStreamingEnabled;
+    return this;
+  }
+
+  /**
+   * Gets whether the results of {@link StompServerHandler#authenticate(java.util.Map)} are cached. Disabled by default.
+   *
+   * @return true if the authentication cache is enabled
+   */
+  public boolean isAuthCacheEnabled() {
+    return authCacheEnabled;
+  }
+
+  /**
+   * Sets whether the results of {@link StompServerHandler#authenticate(java.util.Map)} are cached, so that clients
+   * reconnecting all at once, after a failover for example, do not call the identity service again. The authentications
+   * running concurrently for the same key are merged into a single call. This should only be enabled if the
+   * authentication has no side effect specific to a connection.
+   *
+   * @param authCacheEnabled true to enable the authentication cache
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setAuthCacheEnabled(boolean authCacheEnabled) {
+    this.authCacheEnabled = authCacheEnabled;
+    return this;
+  }
+
+  /**
+   * Gets how long a successful authentication is cached. Defaults to {@link #DEFAULT_AUTH_CACHE_TTL}.
+   *
+   * @return the time to live in milliseconds
+   */
+  public long getAuthCacheTtl() {
+    return authCacheTtl;
+  }
+
+  /**
+   * Sets how long a successful authentication is cached. Failed authentications are never cached.
+   *
+   * @param authCacheTtl the time to live in milliseconds
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setAuthCacheTtl(long authCacheTtl) {
+    this.authCacheTtl = authCacheTtl;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of cached authentications. Defaults to {@link #DEFAULT_AUTH_CACHE_MAX_SIZE}.
+   *
+   * @return the maximum size of the authentication cache
+   */
+  public int getAuthCacheMaxSize() {
+    return authCacheMaxSize;
+  }
+
+  /**
+   * Sets the maximum number of cached authentications, the least recently used ones are evicted first.
+   *
+   * @param authCacheMaxSize the maximum size of the authentication cache
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setAuthCacheMaxSize(int authCacheMaxSize) {
+    this.authCacheMaxSize = authCacheMaxSize;
+    return this;
+  }
+
+  /**
+   * Gets the CONNECT headers identifying cached authentications. Defaults to {@link #DEFAULT_AUTH_CACHE_KEY_HEADERS}.
+   *
+   * @return the names of the headers
+   */
+  public List<String> getAuthCacheKeyHeaders() {
+    return authCacheKeyHeaders;
+  }
+
+  /**
+   * Sets the CONNECT headers identifying cached authentications. Only an HMAC of their values, keyed with a random
+   * secret, is kept, so the credentials are never stored. All the headers the authentication depends on must be listed, otherwise a client
+   * could be authenticated with the result of another one.
+   *
+   * @param authCacheKeyHeaders the names of the headers, must not be {@code null}
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setAuthCacheKeyHeaders(List<String> authCacheKeyHeaders) {
+    this.authCacheKeyHeaders = authCacheKeyHeaders;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of connections per second accepted from one remote IP address. Defaults to
+   * {@link #DEFAULT_MAX_HANDSHAKES_PER_SECOND_PER_IP}, 0 means unlimited.
+   *
+   * @return the max handshakes per second per IP
+   */
+  public int getMaxHandshakesPerSecondPerIp() {
+    return maxHandshakesPerSecondPerIp;
+  }
+
+  /**
+   * Sets the maximum number of connections per second accepted from one remote IP address, with bursts of up to one
+   * second worth of connections. The WebSocket handshakes over the limit are rejected with a 429 status, the TCP
+   * connections are closed.
+   *
+   * @param maxHandshakesPerSecondPerIp the max handshakes per second per IP, 0 for unlimited
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setMaxHandshakesPerSecondPerIp(int maxHandshakesPerSecondPerIp) {
+    this.maxHandshakesPerSecondPerIp = maxHandshakesPerSecondPerIp;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of authentications running at the same time. Defaults to
+   * {@link #DEFAULT_MAX_PENDING_AUTHENTICATIONS}, 0 means unlimited.
+   *
+   * @return the max pending authentications
+   */
+  public int getMaxPendingAuthentications() {
+    return maxPendingAuthentications;
+  }
+
+  /**
+   * Sets the maximum number of authentications running at the same time. The CONNECT frames over the limit are
+   * answered with an ERROR frame and the client is disconnected.
+   *
+   * @param maxPendingAuthentications the max pending authentications, 0 for unlimited
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setMaxPendingAuthentications(int maxPendingAuthentications) {
+    this.maxPendingAuthentications = maxPendingAuthentications;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of frames per second a connection may send. Defaults to
+   * {@link #DEFAULT_MAX_FRAMES_PER_SECOND_PER_CONNECTION}, 0 means unlimited.
+   *
+   * @return the max frames per second per connection
+   */
+  public int getMaxFramesPerSecondPerConnection() {
+    return maxFramesPerSecondPerConnection;
+  }
+
+  /**
+   * Sets the maximum number of frames per second a connection may send, with bursts of up to one second worth of
+   * frames. A client going over the limit gets an ERROR frame and is disconnected.
+   *
+   * @param maxFramesPerSecondPerConnection the max frames per second per connection, 0 for unlimited
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setMaxFramesPerSecondPerConnection(int maxFramesPerSecondPerConnection) {
+    this.maxFramesPerSecondPerConnection = maxFramesPerSecondPerConnection;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of bytes per second a connection may send. Defaults to
+   * {@link #DEFAULT_MAX_BYTES_PER_SECOND_PER_CONNECTION}, 0 means unlimited.
+   *
+   * @return the max bytes per second per connection
+   */
+  public long getMaxBytesPerSecondPerConnection() {
+    return maxBytesPerSecondPerConnection;
+  }
+
+  /**
+   * Sets the maximum number of bytes per second a connection may send, with bursts of up to one second worth of
+   * bytes. A client going over the limit gets an ERROR frame and is disconnected.
+   *
+   * @param maxBytesPerSecondPerConnection the max bytes per second per connection, 0 for unlimited
+   * @return the current {@link StompServerOptions}
+   */
+  public StompServerOptions setMaxBytesPerSecondPerConnection(long maxBytesPerSecondPerConnection) {
+    this.maxBytesPerSecondPerConnection = maxBytesPerSecondPerConnection;
+    return this;
+  }
+
 }
@@ -21,11 +21,17 @@ import io.vertx.core.Future;
 import io.vertx.core.VerticleBase;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.ext.stomp.lite.handler.StompServerNetSocketHandler;
 import io.vertx.ext.stomp.lite.handler.StompServerWebSocketHandler;
 import io.vertx.ext.web.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Created by Navid Mitchell on 2019-01-09.
  */
@@ -38,10 +44,13 @@ public class StompServerVerticle extends VerticleBase {
     private final StompServerHandlerFactory stompServerHandlerFactory;
     private final Router router;
     private HttpServer httpServer;
+    private NetServer netServer;
+    private volatile StompServerWebSocketHandler ssWebSocketHandler;
+    private volatile StompServerNetSocketHandler ssNetSocketHandler;
 
     /**
      * Creates a StompServerVerticle
-     * @param httpOptions to use with the underlying HttpServer
+     * @param httpOptions to use with the underlying HttpServer, the TCP listener is configured from them too
      * @param stompOptions to use with the StompServer
      * @param stompServerHandlerFactory to create StompServerHandlers
      * @param router to use for handling Http requests (can be null)
@@ -58,26 +67,101 @@ public class StompServerVerticle extends VerticleBase {
 
     @Override
     public Future<?> start() {
-        StompServerWebSocketHandler ssWebSocketHandler
-                = new StompServerWebSocketHandler(vertx, stompOptions, stompServerHandlerFactory);
-
-        httpServer = vertx.createHttpServer(httpOptions)
-                          .webSocketHandshakeHandler(ssWebSocketHandler::onServerWebSocketHandshake)
-                          .webSocketHandler(ssWebSocketHandler::onServerWebSocket)
-                          .exceptionHandler(event -> log.error(
-                                  "Stomp server Exception before completing Client Connection",
-                                  event));
-
-        if(router != null){
-            httpServer.requestHandler(router);
+        boolean httpEnabled = stompOptions.isWebsocketEnabled() || router != null;
+        int tcpPort = stompOptions.getTcpPort() >= 0 ? stompOptions.getTcpPort() : stompOptions.getPort();
+        // port 0 picks a free port for each listener
+        if (httpEnabled && stompOptions.isTcpEnabled() && tcpPort == stompOptions.getPort() && tcpPort != 0) {
+            return Future.failedFuture(new IllegalStateException(
+                    "The TCP transport can not listen on the HTTP port " + tcpPort + ", set a different TCP port"));
+        }
+
+        List<Future<?>> listening = new ArrayList<>(2);
+
+        if(httpEnabled) {
+            httpServer = vertx.createHttpServer(httpOptions)
+                              .exceptionHandler(event -> log.error(
+                                      "Stomp server Exception before completing Client Connection",
+                                      event));
+
+            if(stompOptions.isWebsocketEnabled()) {
+                ssWebSocketHandler = new StompServerWebSocketHandler(vertx, stompOptions, stompServerHandlerFactory);
+                httpServer.webSocketHandshakeHandler(ssWebSocketHandler::onServerWebSocketHandshake)
+                          .webSocketHandler(ssWebSocketHandler::onServerWebSocket);
+            }
+
+            if(router != null){
+                httpServer.requestHandler(router);
+            }
+
+            listening.add(httpServer.listen(stompOptions.getPort(), stompOptions.getHost()));
         }
 
-        return httpServer.listen(stompOptions.getPort(), stompOptions.getHost());
+        if(stompOptions.isTcpEnabled()) {
+            ssNetSocketHandler = new StompServerNetSocketHandler(vertx, stompOptions, stompServerHandlerFactory);
+
+            netServer = vertx.createNetServer(httpOptions != null ? new NetServerOptions(httpOptions) : new NetServerOptions())
+                             .connectHandler(ssNetSocketHandler::onNetSocket)
+                             .exceptionHandler(event -> log.error(
+                                     "Stomp server Exception before completing Client Connection",
+                                     event));
+
+            listening.add(netServer.listen(tcpPort, stompOptions.getHost()));
+        }
+
+        if(listening.isEmpty()) {
+            return Future.failedFuture(new IllegalStateException("Neither the WebSocket nor the TCP transport is enabled"));
+        }
+        return Future.all(listening);
+    }
+
+    /**
+     * @return the number of STOMP connections currently handled by this verticle, 0 if it is not started
+     */
+    public int connectionCount() {
+        int count = 0;
+        StompServerWebSocketHandler webSocketHandler = ssWebSocketHandler;
+        if (webSocketHandler != null) {
+            count += webSocketHandler.connectionCount();
+        }
+        StompServerNetSocketHandler netSocketHandler = ssNetSocketHandler;
+        if (netSocketHandler != null) {
+            count += netSocketHandler.connectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the counters of the connections and frames rejected by the admission control, null if the verticle is not
+     *         started
+     */
+    public AdmissionStats admissionStats() {
+        StompServerWebSocketHandler webSocketHandler = ssWebSocketHandler;
+        if (webSocketHandler != null) {
+            return webSocketHandler.admissionStats();
+        }
+        StompServerNetSocketHandler netSocketHandler = ssNetSocketHandler;
+        return netSocketHandler != null ? netSocketHandler.admissionStats() : null;
     }
 
     @Override
     public Future<?> stop() {
-        return httpServer.close();
+        List<Future<?>> closing = new ArrayList<>(2);
+        if (httpServer != null) {
+            closing.add(httpServer.close());
+        }
+        if (netServer != null) {
+            closing.add(netServer.close());
+        }
+        return Future.all(closing).andThen(ar -> {
+            StompServerWebSocketHandler webSocketHandler = ssWebSocketHandler;
+            if (webSocketHandler != null) {
+                webSocketHandler.close();
+            }
+            StompServerNetSocketHandler netSocketHandler = ssNetSocketHandler;
+            if (netSocketHandler != null) {
+                netSocketHandler.close();
+            }
+        });
     }
 }
 
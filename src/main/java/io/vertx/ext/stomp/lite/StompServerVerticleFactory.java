@@ -16,11 +16,18 @@
 
 package io.vertx.ext.stomp.lite;
 
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.http.HttpServerOptions;
 import io.vertx.ext.stomp.lite.handler.StompServerWebSocketHandler;
 import io.vertx.core.Vertx;
 import io.vertx.ext.web.Router;
 
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
 /**
  * Created by Navid Mitchell on 2019-02-04.
  */
@@ -40,4 +47,59 @@ public class StompServerVerticleFactory {
                                              Router router) {
         return new StompServerVerticle(httpOptions, stompOptions, factory, router);
     }
+
+    /**
+     * Deploys one STOMP server verticle per available processor, see
+     * {@link #deploy(Vertx, HttpServerOptions, StompServerOptions, Supplier, Router, int)}.
+     * @param vertx the vertx instance to deploy to
+     * @param httpOptions the HTTP server options to use to create the underlying HTTP servers
+     * @param stompOptions the STOMP server options
+     * @param factorySupplier supplies the factory used by each instance to create STOMP server handlers
+     * @param router to use for handling Http requests (can be null)
+     * @return a future completed with the deployment once all the instances are listening
+     */
+    public static Future<StompServerDeployment> deploy(Vertx vertx,
+                                                       HttpServerOptions httpOptions,
+                                                       StompServerOptions stompOptions,
+                                                       Supplier<StompServerHandlerFactory> factorySupplier,
+                                                       Router router) {
+        return deploy(vertx,
+                      httpOptions,
+                      stompOptions,
+                      factorySupplier,
+                      router,
+                      Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Deploys several instances of the STOMP server verticle listening on the same port. Vert.x assigns each instance to
+     * its own event loop and spreads the incoming connections between them.
+     * @param vertx the vertx instance to deploy to
+     * @param httpOptions the HTTP server options to use to create the underlying HTTP servers
+     * @param stompOptions the STOMP server options
+     * @param factorySupplier supplies the factory used by each instance to create STOMP server handlers, it is called
+     *                        once per instance so instances do not share state unless the supplier does
+     * @param router to use for handling Http requests (can be null), it is shared by the instances
+     * @param instances the number of instances to deploy
+     * @return a future completed with the deployment once all the instances are listening
+     */
+    public static Future<StompServerDeployment> deploy(Vertx vertx,
+                                                       HttpServerOptions httpOptions,
+                                                       StompServerOptions stompOptions,
+                                                       Supplier<StompServerHandlerFactory> factorySupplier,
+                                                       Router router,
+                                                       int instances) {
+        Objects.requireNonNull(vertx, "The vertx instance must be set");
+        Objects.requireNonNull(factorySupplier, "The handler factory supplier must be set");
+        if (instances < 1) {
+            throw new IllegalArgumentException("The number of instances must be positive");
+        }
+        List<StompServerVerticle> verticles = new CopyOnWriteArrayList<>();
+        return vertx.deployVerticle(() -> {
+                        StompServerVerticle verticle = create(httpOptions, stompOptions, factorySupplier.get(), router);
+                        verticles.add(verticle);
+                        return verticle;
+                    }, new DeploymentOptions().setInstances(instances))
+                    .map(deploymentId -> new StompServerDeployment(vertx, deploymentId, verticles));
+    }
 }
@@ -0,0 +1,503 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.ack;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.lite.StompServerConnection;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameException;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+import io.vertx.ext.stomp.lite.frame.Headers;
+import io.vertx.ext.stomp.lite.routing.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Tracks the messages delivered to the {@code client} and {@code client-individual} subscriptions of a connection
+ * until the client acknowledges them.
+ * <p></p>
+ * Each message written to such a subscription gets a numeric {@code ack} header and is kept until an ACK or a NACK
+ * frame refers to it, in {@code client} mode an ACK or a NACK applies to all the messages of the subscription delivered
+ * up to the given one. At most {@link #prefetch(int)} messages per subscription wait for an acknowledgement, the
+ * following ones are held back until the client acknowledges some, and at most {@link #maxBacklog(int)} messages are
+ * held back per subscription.
+ * <p></p>
+ * A message the client rejects with a NACK is delivered again, with the {@link #REDELIVERED} header, until it has been
+ * delivered more than {@link #maxRedeliveries(int)} times. It is then passed to the {@link #deadLetterHandler(Handler)},
+ * as is a message arriving while the backlog is full. The messages not acknowledged when the subscription is removed or
+ * the connection is closed are passed to the {@link #releaseHandler(Handler)}, so that they can be delivered to another
+ * client, or to the dead letter handler when no release handler is set.
+ * <p></p>
+ * The subscriptions using the {@code auto} mode, or not registered with one of the {@code subscribe} methods, are not
+ * tracked, their messages are written right away. The acknowledgement ids are primitive longs and the pending messages
+ * are kept in primitive long keyed structures, so tracking a message allocates only its {@link Delivery}.
+ * <p></p>
+ * The state is kept on the context of the connection, the methods can be called from any thread. The configuration
+ * should be set before the first message is delivered.
+ */
+public class AckTracker {
+
+    public static final int DEFAULT_PREFETCH = 100;
+    public static final int DEFAULT_MAX_REDELIVERIES = 5;
+    public static final int DEFAULT_MAX_BACKLOG = 10000;
+
+    /**
+     * The SUBSCRIBE header setting the prefetch window of a subscription, as used by several brokers
+     */
+    public static final String PREFETCH_COUNT = "prefetch-count";
+
+    /**
+     * The header set on the messages delivered again after a NACK
+     */
+    public static final String REDELIVERED = "redelivered";
+
+    private static final Logger log = LoggerFactory.getLogger(AckTracker.class);
+
+    private final StompServerConnection connection;
+    private final Context context;
+
+    // the messages waiting for an acknowledgement by ack id, the ids are increasing for the connection
+    private final LongObjectMap<Delivery> inflight = new LongObjectMap<>(64);
+    private final Map<String, SubscriptionState> subscriptions = new HashMap<>();
+    private long nextAckId = 1;
+    private boolean closed = false;
+
+    private volatile int prefetch = DEFAULT_PREFETCH;
+    private volatile int maxRedeliveries = DEFAULT_MAX_REDELIVERIES;
+    private volatile int maxBacklog = DEFAULT_MAX_BACKLOG;
+    private volatile Handler<Delivery> releaseHandler;
+    private volatile Handler<Delivery> deadLetterHandler;
+
+    private volatile int inflightCount = 0;
+    private volatile int backlogCount = 0;
+
+    /**
+     * Creates the tracker of a connection, the pending messages are released once the connection is closed
+     *
+     * @param connection the connection
+     * @throws UnsupportedOperationException if the connection does not implement
+     *                                       {@link StompServerConnection#context()} and
+     *                                       {@link StompServerConnection#addCloseHandler(Handler)}
+     */
+    public AckTracker(StompServerConnection connection) {
+        this.connection = Objects.requireNonNull(connection, "The connection must not be null");
+        this.context = connection.context();
+        connection.addCloseHandler(v -> onContext(this::onClose));
+    }
+
+    /**
+     * Sets the default number of messages per subscription waiting for an acknowledgement, {@code 0} for no limit.
+     * Defaults to {@link #DEFAULT_PREFETCH}.
+     *
+     * @return the current {@link AckTracker}
+     */
+    public AckTracker prefetch(int prefetch) {
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    /**
+     * Sets the number of times a message rejected by the client is delivered again before being dead lettered.
+     * Defaults to {@link #DEFAULT_MAX_REDELIVERIES}.
+     *
+     * @return the current {@link AckTracker}
+     */
+    public AckTracker maxRedeliveries(int maxRedeliveries) {
+        this.maxRedeliveries = maxRedeliveries;
+        return this;
+    }
+
+    /**
+     * Sets the number of messages held back per subscription while its prefetch window is full, {@code 0} for no
+     * limit. Defaults to {@link #DEFAULT_MAX_BACKLOG}.
+     *
+     * @return the current {@link AckTracker}
+     */
+    public AckTracker maxBacklog(int maxBacklog) {
+        this.maxBacklog = maxBacklog;
+        return this;
+    }
+
+    /**
+     * Sets the handler receiving the messages not acknowledged when their subscription is removed or the connection
+     * is closed. The handler is called on the context of the connection.
+     *
+     * @return the current {@link AckTracker}
+     */
+    public AckTracker releaseHandler(Handler<Delivery> releaseHandler) {
+        this.releaseHandler = releaseHandler;
+        return this;
+    }
+
+    /**
+     * Sets the handler receiving the messages rejected too many times or arriving while the backlog is full. The
+     * handler is called on the context of the connection.
+     *
+     * @return the current {@link AckTracker}
+     */
+    public AckTracker deadLetterHandler(Handler<Delivery> deadLetterHandler) {
+        this.deadLetterHandler = deadLetterHandler;
+        return this;
+    }
+
+    /**
+     * @return the number of messages waiting for an acknowledgement
+     */
+    public int inflight() {
+        return inflightCount;
+    }
+
+    /**
+     * @return the number of messages held back because of the prefetch windows
+     */
+    public int backlog() {
+        return backlogCount;
+    }
+
+    /**
+     * Registers the subscription requested by a SUBSCRIBE frame, using its {@code id}, {@code ack} and
+     * {@link #PREFETCH_COUNT} headers
+     *
+     * @throws IllegalArgumentException if the frame has no {@code id} or an invalid {@link #PREFETCH_COUNT}
+     */
+    public void subscribe(Frame frame) {
+        String id = frame.getId();
+        if (id == null) {
+            throw new IllegalArgumentException("The SUBSCRIBE frame must have an id header");
+        }
+        String count = frame.getHeader(PREFETCH_COUNT);
+        int subscriptionPrefetch = prefetch;
+        if (count != null) {
+            try {
+                subscriptionPrefetch = Integer.parseInt(count);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + PREFETCH_COUNT + " header " + count);
+            }
+        }
+        subscribe(id, frame.getAck(), subscriptionPrefetch);
+    }
+
+    /**
+     * Registers a subscription
+     *
+     * @param id       the subscription id
+     * @param ackMode  the ack mode, {@code auto}, {@code client} or {@code client-individual}, {@code null} for auto
+     * @param prefetch the number of messages waiting for an acknowledgement, {@code 0} for no limit
+     */
+    public void subscribe(String id, String ackMode, int prefetch) {
+        Objects.requireNonNull(id, "The subscription id must not be null");
+        onContext(() -> {
+            if (!closed && !subscriptions.containsKey(id)) {
+                subscriptions.put(id, new SubscriptionState(id, ackMode, prefetch));
+            }
+        });
+    }
+
+    /**
+     * Removes a subscription, its pending messages are released
+     *
+     * @param id the subscription id
+     */
+    public void unsubscribe(String id) {
+        onContext(() -> {
+            SubscriptionState subscription = subscriptions.remove(id);
+            if (subscription != null) {
+                release(subscription);
+            }
+        });
+    }
+
+    /**
+     * Delivers a message to a subscription, registering it with the default prefetch if needed
+     *
+     * @param subscription the subscription
+     * @param message      the MESSAGE frame template
+     * @param headers      the headers specific to this delivery, may be {@code null}
+     */
+    public void deliver(Subscription subscription, FrameTemplate message, Map<String, String> headers) {
+        Objects.requireNonNull(subscription, "The subscription must not be null");
+        Objects.requireNonNull(message, "The message must not be null");
+        onContext(() -> {
+            if (!closed && !subscriptions.containsKey(subscription.id())) {
+                subscriptions.put(subscription.id(), new SubscriptionState(subscription.id(), subscription.ack(), prefetch));
+            }
+            deliver(subscription.id(), message, headers);
+        });
+    }
+
+    /**
+     * Delivers a message to a subscription. The message is written once the prefetch window of the subscription allows
+     * it, the {@code subscription} and {@code ack} headers are set, as well as the {@code message-id} if none is given.
+     * The messages of the subscriptions not tracked are written right away, with the {@code subscription} and
+     * {@code message-id} headers.
+     *
+     * @param subscriptionId the id of the subscription
+     * @param message        the MESSAGE frame template
+     * @param headers        the headers specific to this delivery, may be {@code null}
+     */
+    public void deliver(String subscriptionId, FrameTemplate message, Map<String, String> headers) {
+        Objects.requireNonNull(subscriptionId, "The subscription id must not be null");
+        Objects.requireNonNull(message, "The message must not be null");
+        onContext(() -> {
+            Map<String, String> copy = Headers.create();
+            if (headers != null) {
+                copy.putAll(headers);
+            }
+            copy.put(Frame.SUBSCRIPTION, subscriptionId);
+            Delivery delivery = new Delivery(subscriptionId, message, copy);
+
+            if (closed) {
+                release(delivery);
+                return;
+            }
+            SubscriptionState subscription = subscriptions.get(subscriptionId);
+            if (subscription == null || !subscription.tracked) {
+                // the ack ids are unique for the connection, so they are used as the message ids of all the messages
+                if (!copy.containsKey(Frame.MESSAGE_ID) && message.getHeader(Frame.MESSAGE_ID) == null) {
+                    copy.put(Frame.MESSAGE_ID, Long.toString(nextAckId++));
+                }
+                connection.write(message, copy);
+                return;
+            }
+            if (subscription.backlog.isEmpty() && subscription.hasWindow()) {
+                send(subscription, delivery);
+            } else if (maxBacklog > 0 && subscription.backlog.size() >= maxBacklog) {
+                deadLetter(delivery);
+            } else {
+                subscription.backlog.add(delivery);
+                backlogCount++;
+            }
+        });
+    }
+
+    /**
+     * Acknowledges the messages an ACK frame refers to
+     *
+     * @param frame the ACK frame
+     * @return a future failed with a {@link FrameException} if the frame does not refer to a pending message
+     */
+    public Future<Void> ack(Frame frame) {
+        return acknowledge(frame, false);
+    }
+
+    /**
+     * Rejects the messages a NACK frame refers to, they are delivered again or dead lettered
+     *
+     * @param frame the NACK frame
+     * @return a future failed with a {@link FrameException} if the frame does not refer to a pending message
+     */
+    public Future<Void> nack(Frame frame) {
+        return acknowledge(frame, true);
+    }
+
+    private Future<Void> acknowledge(Frame frame, boolean rejected) {
+        String id = frame.getId();
+        return Future.future(promise -> onContext(() -> {
+            long ackId;
+            try {
+                ackId = id != null ? Long.parseLong(id) : -1;
+            } catch (NumberFormatException e) {
+                ackId = -1;
+            }
+            Delivery delivery = ackId >= 0 ? inflight.get(ackId) : null;
+            if (delivery == null) {
+                promise.fail(new FrameException("No pending message with the ack id " + id));
+                return;
+            }
+            SubscriptionState subscription = subscriptions.get(delivery.subscriptionId());
+
+            List<Delivery> acknowledged;
+            if (subscription.cumulative) {
+                acknowledged = new ArrayList<>();
+                while (!subscription.order.isEmpty() && subscription.order.peekFirst() <= ackId) {
+                    acknowledged.add(remove(subscription, subscription.order.pollFirst()));
+                }
+            } else {
+                acknowledged = List.of(remove(subscription, ackId));
+            }
+
+            if (rejected) {
+                // delivered again in their original order, before the messages held back
+                for (int i = acknowledged.size() - 1; i >= 0; i--) {
+                    Delivery nacked = acknowledged.get(i);
+                    if (nacked.deliveryCount > maxRedeliveries) {
+                        deadLetter(nacked);
+                    } else {
+                        subscription.backlog.addFirst(nacked);
+                        backlogCount++;
+                    }
+                }
+            }
+            pump(subscription);
+            promise.complete();
+        }));
+    }
+
+    private Delivery remove(SubscriptionState subscription, long ackId) {
+        Delivery delivery = inflight.remove(ackId);
+        subscription.inflight--;
+        inflightCount--;
+        return delivery;
+    }
+
+    private void pump(SubscriptionState subscription) {
+        while (!subscription.backlog.isEmpty() && subscription.hasWindow()) {
+            backlogCount--;
+            send(subscription, subscription.backlog.poll());
+        }
+    }
+
+    private void send(SubscriptionState subscription, Delivery delivery) {
+        long ackId = nextAckId++;
+        Map<String, String> headers = delivery.mutableHeaders();
+        String ack = Long.toString(ackId);
+        if (delivery.deliveryCount == 0) {
+            if (!headers.containsKey(Frame.MESSAGE_ID) && delivery.message().getHeader(Frame.MESSAGE_ID) == null) {
+                headers.put(Frame.MESSAGE_ID, ack);
+            }
+        } else {
+            headers.put(REDELIVERED, "true");
+        }
+        headers.put(Frame.ACK, ack);
+        delivery.ackId = ackId;
+        delivery.deliveryCount++;
+
+        inflight.put(ackId, delivery);
+        subscription.inflight++;
+        inflightCount++;
+        if (subscription.cumulative) {
+            subscription.order.addLast(ackId);
+        }
+        connection.write(delivery.message(), headers);
+    }
+
+    /**
+     * Releases the pending messages of a subscription, the ones written first then the ones held back
+     */
+    private void release(SubscriptionState subscription) {
+        List<Delivery> released = new ArrayList<>(subscription.inflight);
+        if (subscription.inflight > 0) {
+            inflight.forEachValue(delivery -> {
+                if (delivery.subscriptionId().equals(subscription.id)) {
+                    released.add(delivery);
+                }
+            });
+            released.sort(Comparator.comparingLong(delivery -> delivery.ackId));
+            for (Delivery delivery : released) {
+                inflight.remove(delivery.ackId);
+            }
+            inflightCount -= released.size();
+        }
+        backlogCount -= subscription.backlog.size();
+        released.addAll(subscription.backlog);
+        subscription.backlog.clear();
+        subscription.order.clear();
+        subscription.inflight = 0;
+        for (Delivery delivery : released) {
+            release(delivery);
+        }
+    }
+
+    private void release(Delivery delivery) {
+        Handler<Delivery> handler = releaseHandler;
+        if (handler == null) {
+            deadLetter(delivery);
+            return;
+        }
+        try {
+            handler.handle(delivery);
+        } catch (Exception e) {
+            log.error("Release handler threw an exception.. You should fix your handler not to throw exceptions.", e);
+        }
+    }
+
+    private void deadLetter(Delivery delivery) {
+        Handler<Delivery> handler = deadLetterHandler;
+        if (handler == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Dropping message {} of subscription {}, no dead letter handler is set",
+                          delivery.headers().get(Frame.MESSAGE_ID), delivery.subscriptionId());
+            }
+            return;
+        }
+        try {
+            handler.handle(delivery);
+        } catch (Exception e) {
+            log.error("Dead letter handler threw an exception.. You should fix your handler not to throw exceptions.", e);
+        }
+    }
+
+    private void onClose() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        List<SubscriptionState> removed = new ArrayList<>(subscriptions.values());
+        subscriptions.clear();
+        for (SubscriptionState subscription : removed) {
+            release(subscription);
+        }
+        inflight.clear();
+    }
+
+    private void onContext(Runnable action) {
+        if (Vertx.currentContext() == context) {
+            action.run();
+        } else {
+            context.runOnContext(v -> action.run());
+        }
+    }
+
+    /**
+     * The pending messages of a subscription
+     */
+    private static final class SubscriptionState {
+
+        private final String id;
+        private final boolean tracked;
+        private final boolean cumulative;
+        private final int prefetch;
+        private final ArrayDeque<Delivery> backlog = new ArrayDeque<>();
+        // the ack ids of the messages waiting for an acknowledgement in delivery order, only kept in client mode
+        private final LongQueue order = new LongQueue(16);
+        private int inflight = 0;
+
+        private SubscriptionState(String id, String ackMode, int prefetch) {
+            this.id = id;
+            this.cumulative = "client".equals(ackMode);
+            this.tracked = cumulative || "client-individual".equals(ackMode);
+            this.prefetch = prefetch;
+        }
+
+        private boolean hasWindow() {
+            return prefetch <= 0 || inflight < prefetch;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.ack;
+
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A message delivered to a subscription requiring acknowledgements, as tracked by an {@link AckTracker}.
+ */
+public final class Delivery {
+
+    private final String subscriptionId;
+    private final FrameTemplate message;
+    private final Map<String, String> headers;
+    long ackId = -1;
+    int deliveryCount = 0;
+
+    Delivery(String subscriptionId, FrameTemplate message, Map<String, String> headers) {
+        this.subscriptionId = subscriptionId;
+        this.message = message;
+        this.headers = headers;
+    }
+
+    /**
+     * @return the id of the subscription the message was delivered to
+     */
+    public String subscriptionId() {
+        return subscriptionId;
+    }
+
+    /**
+     * @return the message
+     */
+    public FrameTemplate message() {
+        return message;
+    }
+
+    /**
+     * @return the headers given with the message, such as the {@code message-id}
+     */
+    public Map<String, String> headers() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * @return the number of times the message has been written to the client, 0 if it was never written
+     */
+    public int deliveryCount() {
+        return deliveryCount;
+    }
+
+    Map<String, String> mutableHeaders() {
+        return headers;
+    }
+
+    @Override
+    public String toString() {
+        return "Delivery{subscription='" + subscriptionId + "', deliveryCount=" + deliveryCount + "}";
+    }
+}
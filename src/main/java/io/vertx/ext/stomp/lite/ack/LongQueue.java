@@ -0,0 +1,77 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.ack;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A growable ring buffer of primitive longs.
+ * <p></p>
+ * This class is <strong>NOT</strong> thread-safe.
+ */
+final class LongQueue {
+
+    private long[] elements;
+    private int head;
+    private int size;
+
+    LongQueue(int initialCapacity) {
+        elements = new long[Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void addLast(long value) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = value;
+        size++;
+    }
+
+    long peekFirst() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return elements[head];
+    }
+
+    long pollFirst() {
+        long value = peekFirst();
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return value;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        long[] grown = new long[elements.length << 1];
+        for (int i = 0; i < size; i++) {
+            grown[i] = elements[(head + i) & (elements.length - 1)];
+        }
+        elements = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.vertx.ext.stomp.lite.frame;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.internal.buffer.BufferInternal;
+
+/**
+ * Utility methods creating {@link Buffer}s without copying their content. The returned buffers share the given data,
+ * which must not be modified once given.
+ * <p></p>
+ * This class is thread-safe.
+ */
+public final class Buffers {
+
+    private Buffers() {
+        //Avoid direct instantiation.
+    }
+
+    /**
+     * Creates a {@link Buffer} backed by the given array.
+     *
+     * @param bytes the content of the buffer
+     * @return the buffer
+     */
+    public static Buffer wrap(byte[] bytes) {
+        return BufferInternal.buffer(Unpooled.wrappedBuffer(bytes));
+    }
+
+    /**
+     * Creates a {@link Buffer} whose content is the concatenation of the given buffers. The content of the buffers is
+     * referenced, not copied.
+     *
+     * @param buffers the buffers to concatenate
+     * @return the composite buffer
+     */
+    public static Buffer composite(Buffer... buffers) {
+        ByteBuf[] parts = new ByteBuf[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            parts[i] = byteBuf(buffers[i]);
+        }
+        return BufferInternal.buffer(Unpooled.wrappedBuffer(parts));
+    }
+
+    private static ByteBuf byteBuf(Buffer buffer) {
+        if (buffer instanceof BufferInternal) {
+            return ((BufferInternal) buffer).getByteBuf();
+        }
+        return Unpooled.wrappedBuffer(buffer.getBytes());
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.vertx.ext.stomp.lite.frame;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A STOMP frame parser working directly on the bytes of the received {@link Buffer}s.
+ * <p></p>
+ * Unlike {@link FrameParser} no intermediate line {@link Buffer} or {@link String} is created. The command and header
+ * lines are scanned in a single pass and copied into a reusable line buffer, the limits defined by the
+ * {@link StompServerOptions} are checked in bytes before anything is allocated, and the body is copied once into a
+ * buffer sized from the {@code content-length} header when present. The emitted {@link Frame}s are the same as the
+ * ones emitted by {@link FrameParser}.
+ * <p></p>
+ * The header lines of a frame are kept in a single byte array handed to the frame headers. Header values are only
+ * checked for illegal escape sequences while parsing, they are decoded the first time they are read. The command and
+ * the well-known header names are resolved from their bytes by {@link FrameSymbols} without allocating.
+ * <p></p>
+ * When {@link StompServerOptions#isBodyStreamingEnabled()} is set and a {@link #bodyStreamHandler(Handler)} is
+ * registered, SEND frames with a {@code content-length} of at least
+ * {@link StompServerOptions#getBodyStreamingThreshold()} bytes are not accumulated. A {@link FrameBodyStream} is
+ * emitted as soon as the headers are parsed and the body chunks are written to it as they are received. The data
+ * following the body is only parsed once the stream has completed, all its chunks delivered or the stream failed, so
+ * the frames are handled after the end handler of the stream when it is set before the last chunk is read.
+ * <p></p>
+ * This class is <strong>NOT</strong> thread-safe and, unlike {@link FrameParser}, takes no lock. It must be fed from a
+ * single connection, on its event loop.
+ */
+public class ByteFrameParser implements StompFrameParser {
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte NUL = 0;
+    private static final byte COLON = ':';
+
+    private static final int INITIAL_LINE_CAPACITY = 256;
+
+    enum State {
+        COMMAND,
+        HEADERS,
+        FIXED_BODY,
+        STREAMED_BODY,
+        DELIMITED_BODY,
+        BODY_END
+    }
+
+    private final StompServerOptions properties;
+    private final int maxLineLength;
+
+    private Handler<Frame> handler;
+    private Handler<FrameException> errorHandler;
+    private Handler<FrameBodyStream> bodyStreamHandler;
+
+    private State current = State.COMMAND;
+
+    /**
+     * Holds the header lines of the current frame, {@code lineStart} is the start of the line being parsed.
+     */
+    private byte[] line = new byte[INITIAL_LINE_CAPACITY];
+    private int lineStart = 0;
+    private int lineLength = 0;
+
+    private Frame.Command command;
+    private LazyHeaders headers;
+    private Buffer body;
+    private FrameBodyStream bodyStream;
+    private int remaining = 0;
+
+    /**
+     * The data received after a streamed body while the stream has not completed, parsed once it has
+     */
+    private Buffer suspendedData;
+    private boolean suspended = false;
+    private boolean closed = false;
+
+    public ByteFrameParser(StompServerOptions properties) {
+        this.properties = properties;
+        // A header line holds the name, the colon, the value and an optional carriage return
+        this.maxLineLength = (int) Math.min(Integer.MAX_VALUE - 8, 2L * properties.getMaxHeaderLength() + 2);
+    }
+
+    public ByteFrameParser() {
+        this(new StompServerOptions());
+    }
+
+    @Override
+    public ByteFrameParser handler(Handler<Frame> handler) {
+        Objects.requireNonNull(handler);
+        this.handler = handler;
+        return this;
+    }
+
+    @Override
+    public ByteFrameParser errorHandler(Handler<FrameException> handler) {
+        this.errorHandler = handler;
+        return this;
+    }
+
+    @Override
+    public ByteFrameParser bodyStreamHandler(Handler<FrameBodyStream> handler) {
+        this.bodyStreamHandler = handler;
+        return this;
+    }
+
+    /**
+     * Stops the parser, the data received after a streamed body and not parsed yet is discarded, and so is the data
+     * handled afterwards
+     */
+    @Override
+    public void close() {
+        closed = true;
+        suspendedData = null;
+    }
+
+    @Override
+    public void handle(Buffer event) {
+        if (closed) {
+            return;
+        }
+        if (suspended) {
+            suspendedData = suspendedData == null ? event.copy() : suspendedData.appendBuffer(event);
+            return;
+        }
+        int position = 0;
+        int length = event.length();
+        while (position < length) {
+            switch (current) {
+                case COMMAND:
+                case HEADERS: {
+                    int eol = indexOf(event, LF, position, length);
+                    if (!appendToLine(event, position, eol == -1 ? length : eol)) {
+                        return;
+                    }
+                    if (eol == -1) {
+                        // The line continues in the next buffer
+                        return;
+                    }
+                    position = eol + 1;
+                    boolean proceed = current == State.COMMAND ? handleCommandLine() : handleHeaderLine();
+                    if (!proceed) {
+                        return;
+                    }
+                    break;
+                }
+                case FIXED_BODY: {
+                    int count = Math.min(remaining, length - position);
+                    body.appendBuffer(event, position, count);
+                    position += count;
+                    remaining -= count;
+                    if (remaining == 0) {
+                        if (!emit()) {
+                            return;
+                        }
+                        current = State.BODY_END;
+                    }
+                    break;
+                }
+                case STREAMED_BODY: {
+                    int count = Math.min(remaining, length - position);
+                    // The slice shares the received data, so the body is never accumulated
+                    FrameBodyStream stream = bodyStream;
+                    position += count;
+                    remaining -= count;
+                    if (remaining == 0) {
+                        reset();
+                        current = State.BODY_END;
+                    }
+                    stream.write(event.slice(position - count, position));
+                    if (remaining == 0) {
+                        stream.end();
+                        if (!stream.isCompleted()) {
+                            // the body is still being consumed, the following frames wait for it
+                            suspended = true;
+                            if (position < length) {
+                                suspendedData = event.slice(position, length).copy();
+                            }
+                            stream.completionHandler(this::resumeAfterStream);
+                            return;
+                        }
+                    }
+                    break;
+                }
+                case BODY_END:
+                    // The content-length gave the body size, the frame still ends with a NULL octet
+                    if (event.getByte(position) == NUL) {
+                        position++;
+                    }
+                    current = State.COMMAND;
+                    break;
+                case DELIMITED_BODY: {
+                    int nul = indexOf(event, NUL, position, length);
+                    int end = nul == -1 ? length : nul;
+                    if (body.length() + (end - position) >= properties.getMaxBodyLength()) {
+                        reportOrThrow("Body size exceeded");
+                        return;
+                    }
+                    body.appendBuffer(event, position, end - position);
+                    if (nul == -1) {
+                        return;
+                    }
+                    position = nul + 1;
+                    if (!emit()) {
+                        return;
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean handleCommandLine() {
+        // Same as String.trim(), removes the optional \r and the NULL octet ending a previous frame
+        int start = lineStart;
+        int end = lineLength;
+        while (start < end && (line[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (line[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        lineLength = lineStart;
+
+        if (start == end) {
+            // ping frame.
+            reset();
+            handler.handle(Frames.ping());
+            return true;
+        }
+
+        command = FrameSymbols.command(line, start, end);
+        headers = new LazyHeaders(command == Frame.Command.CONNECT || command == Frame.Command.CONNECTED);
+        if (command == null) {
+            // Not a valid command, use UNKNOWN, and write the given command as header.
+            command = Frame.Command.UNKNOWN;
+            headers.put(Frame.STOMP_FRAME_COMMAND, new String(line, start, end - start, StandardCharsets.UTF_8));
+        }
+        current = State.HEADERS;
+        return true;
+    }
+
+    private boolean handleHeaderLine() {
+        int start = lineStart;
+        int end = lineLength;
+        if (end > start && line[end - 1] == CR) {
+            end--;
+        }
+        if (end == start) {
+            lineLength = lineStart;
+            return endOfHeaders();
+        }
+
+        int colon = indexOf(line, COLON, start, end);
+        if (colon == -1) {
+            reportOrThrow("Invalid header line : '"
+                                  + new String(line, start, lineLength - start, StandardCharsets.UTF_8) + "'");
+            return false;
+        }
+
+        if (headers.size() + 1 > properties.getMaxHeaders()) {
+            reportOrThrow("Number of headers exceeded");
+            return false;
+        }
+
+        if (colon - start > properties.getMaxHeaderLength() || end - colon - 1 > properties.getMaxHeaderLength()) {
+            reportOrThrow("Header length exceeded");
+            return false;
+        }
+
+        try {
+            HeaderCodec.checkEscapes(line, colon + 1, end);
+        } catch (FrameException e) {
+            reportOrThrow(e.getMessage());
+            return false;
+        }
+
+        // By spec (repeated headers) - Put the header only if not already set, the line of a repeated header is
+        // dropped.
+        String name = FrameSymbols.headerName(line, start, colon);
+        if (!headers.containsKey(name)) {
+            headers.addRaw(name, colon + 1, end);
+            lineStart = lineLength;
+        } else {
+            lineLength = lineStart;
+        }
+        return true;
+    }
+
+    private boolean endOfHeaders() {
+        if (lineStart > 0) {
+            // The header lines now belong to the frame headers
+            headers.raw(line);
+            line = new byte[INITIAL_LINE_CAPACITY];
+            lineStart = 0;
+            lineLength = 0;
+        }
+
+        String length = headers.get(Frame.CONTENT_LENGTH);
+        if (length == null) {
+            body = Buffer.buffer();
+            current = State.DELIMITED_BODY;
+            return true;
+        }
+
+        int contentLength;
+        try {
+            contentLength = Integer.parseInt(length);
+        } catch (NumberFormatException e) {
+            contentLength = -1;
+        }
+        if (contentLength < 0) {
+            reportOrThrow("Invalid content-length header : '" + length + "'");
+            return false;
+        }
+        if (contentLength >= properties.getMaxBodyLength()) {
+            reportOrThrow("Body size exceeded");
+            return false;
+        }
+
+        if (isStreamed(contentLength)) {
+            return emitStream(contentLength);
+        }
+
+        body = Buffer.buffer(contentLength);
+        if (contentLength == 0) {
+            if (!emit()) {
+                return false;
+            }
+            current = State.BODY_END;
+        } else {
+            remaining = contentLength;
+            current = State.FIXED_BODY;
+        }
+        return true;
+    }
+
+    private boolean appendToLine(Buffer event, int start, int end) {
+        int count = end - start;
+        if (count == 0) {
+            return true;
+        }
+        if (lineLength - lineStart + count > maxLineLength) {
+            reportOrThrow(current == State.COMMAND ? "Command length exceeded" : "Header length exceeded");
+            return false;
+        }
+        int required = lineLength + count;
+        if (required > line.length) {
+            line = Arrays.copyOf(line, Math.max(required, line.length * 2));
+        }
+        event.getBytes(start, end, line, lineLength);
+        lineLength = required;
+        return true;
+    }
+
+    private boolean emit() {
+        Frame frame;
+        try {
+            frame = new Frame(command, headers, body);
+        } catch (FrameException e) {
+            reportOrThrow("Malformed frame received");
+            return false;
+        }
+        reset();
+        handler.handle(frame);
+        return true;
+    }
+
+    private boolean isStreamed(int contentLength) {
+        return bodyStreamHandler != null
+                && command == Frame.Command.SEND
+                && properties.isBodyStreamingEnabled()
+                && contentLength > 0
+                && contentLength >= properties.getBodyStreamingThreshold();
+    }
+
+    private boolean emitStream(int contentLength) {
+        FrameBodyStream stream;
+        try {
+            stream = new FrameBodyStream(new Frame(command, headers, null));
+        } catch (FrameException e) {
+            reportOrThrow("Malformed frame received");
+            return false;
+        }
+        bodyStream = stream;
+        remaining = contentLength;
+        current = State.STREAMED_BODY;
+        bodyStreamHandler.handle(stream);
+        return true;
+    }
+
+    private void resumeAfterStream() {
+        if (closed) {
+            // the stream failed because the connection was closed
+            return;
+        }
+        suspended = false;
+        Buffer data = suspendedData;
+        suspendedData = null;
+        if (data != null) {
+            handle(data);
+        }
+    }
+
+    private void reset() {
+        command = null;
+        headers = null;
+        body = null;
+        bodyStream = null;
+        remaining = 0;
+        lineStart = 0;
+        lineLength = 0;
+        current = State.COMMAND;
+    }
+
+    private static int indexOf(Buffer buffer, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.getByte(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Invokes the error handler or throw an exception if no error handler.
+     *
+     * @param error the error
+     */
+    private void reportOrThrow(String error) {
+        FrameException exception = new FrameException(error);
+        if (bodyStream != null) {
+            bodyStream.fail(exception);
+        }
+        reset();
+        if (errorHandler != null) {
+            errorHandler.handle(exception);
+        } else {
+            throw exception;
+        }
+    }
+}
@@ -16,7 +16,10 @@
 
 package io.vertx.ext.stomp.lite.frame;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.internal.buffer.BufferInternal;
 import io.vertx.core.json.JsonObject;
 
 import java.util.Arrays;
@@ -79,6 +82,14 @@ public class Frame {
    */
   private final static Pattern CHARSET_PATTERN = Pattern.compile(".+;charset=([a-zA-Z0-9\\-]+);?.*");
 
+  /**
+   * Bodies smaller than this size are copied in the encoded frame, larger bodies are referenced.
+   */
+  final static int BODY_REFERENCE_THRESHOLD = 1024;
+
+  final static Buffer NULL_BUFFER = Buffers.wrap(new byte[]{0});
+  final static Buffer NULL_EOL_BUFFER = Buffers.wrap(new byte[]{0, FrameParser.LINE_FEED});
+
   /**
    * The list of command defined by the STOMP specification.
    * It also contains a {@code PING} command used for heartbeat. It should not be used in frames (as it's not a valid
@@ -443,11 +454,7 @@ public class Frame {
    * header encoding).
    */
   public Buffer toBuffer(boolean trailingLine) {
-    Buffer buffer = toBuffer();
-    if (trailingLine) {
-      buffer.appendString("\n");
-    }
-    return buffer;
+    return encode(trailingLine);
   }
 
   /**
@@ -457,22 +464,99 @@ public class Frame {
    * header encoding).
    */
   public Buffer toBuffer() {
-    Buffer buffer = Buffer.buffer(command.name() + "\n");
-    for (Map.Entry<String, String> entry : headers.entrySet()) {
-      buffer.appendString(encode(entry.getKey()) + ":" + encode(entry.getValue()) + "\n");
-    }
-    buffer.appendString("\n");
-    if (body != null) {
-      buffer.appendBuffer(body);
-    }
-    buffer.appendString(FrameParser.NULL);
-    return buffer;
+    return encode(false);
   }
 
-  private String encode(String header) {
+  /**
+   * Encodes the frame with a single allocation. The exact size of the command and the encoded headers is computed
+   * first, then everything is written in the array backing the returned buffer. Small bodies are copied into the same
+   * array, large bodies are referenced by the returned buffer.
+   */
+  private Buffer encode(boolean trailingLine) {
     // By spec, frame headers need to be encoded. CONNECT and CONNECTED frames do not encode \r \n \c but still
     // require the encoding of \\.
-    return HeaderCodec.encode(header, command == Command.CONNECT || command == Command.CONNECTED);
+    boolean connectOrConnected = command == Command.CONNECT || command == Command.CONNECTED;
+    String name = command.name();
+
+    int headLength = name.length() + 2 + encodedLength(headers, connectOrConnected);
+    int bodyLength = body != null ? body.length() : 0;
+    boolean bodyReferenced = bodyLength >= BODY_REFERENCE_THRESHOLD;
+    int length = headLength + (bodyReferenced ? 0 : bodyLength + (trailingLine ? 2 : 1));
+
+    ByteBuf buffer = Unpooled.buffer(length);
+    byte[] bytes = buffer.array();
+    int position = buffer.arrayOffset();
+    // Command names are ASCII
+    for (int i = 0; i < name.length(); i++) {
+      bytes[position++] = (byte) name.charAt(i);
+    }
+    bytes[position++] = FrameParser.LINE_FEED;
+    position = encodeHeaders(headers, connectOrConnected, bytes, position);
+    bytes[position++] = FrameParser.LINE_FEED;
+
+    if (bodyReferenced) {
+      buffer.writerIndex(length);
+      return Buffers.composite(BufferInternal.buffer(buffer), body, trailingLine ? NULL_EOL_BUFFER : NULL_BUFFER);
+    }
+    if (bodyLength > 0) {
+      body.getBytes(0, bodyLength, bytes, position);
+      position += bodyLength;
+    }
+    bytes[position++] = 0;
+    if (trailingLine) {
+      bytes[position] = FrameParser.LINE_FEED;
+    }
+    buffer.writerIndex(length);
+    return BufferInternal.buffer(buffer);
+  }
+
+  /**
+   * Computes the size of the given headers once encoded, each header being followed by a line feed.
+   */
+  static int encodedLength(Map<String, String> headers, boolean connectOrConnected) {
+    int length = 0;
+    if (headers instanceof Headers) {
+      // Headers are walked by position to avoid allocating entries
+      Headers compact = (Headers) headers;
+      for (int i = 0; i < compact.size(); i++) {
+        length += HeaderCodec.encodedLength(compact.keyAt(i), connectOrConnected)
+            + HeaderCodec.encodedLength(compact.valueAt(i), connectOrConnected) + 2;
+      }
+    } else {
+      for (Map.Entry<String, String> entry : headers.entrySet()) {
+        length += HeaderCodec.encodedLength(entry.getKey(), connectOrConnected)
+            + HeaderCodec.encodedLength(entry.getValue(), connectOrConnected) + 2;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Writes the given headers at {@code position}, the array must have room for {@link #encodedLength(Map, boolean)}
+   * bytes.
+   *
+   * @return the position following the last written byte
+   */
+  static int encodeHeaders(Map<String, String> headers, boolean connectOrConnected, byte[] bytes, int position) {
+    if (headers instanceof Headers) {
+      Headers compact = (Headers) headers;
+      for (int i = 0; i < compact.size(); i++) {
+        position = encodeHeader(compact.keyAt(i), compact.valueAt(i), connectOrConnected, bytes, position);
+      }
+    } else {
+      for (Map.Entry<String, String> entry : headers.entrySet()) {
+        position = encodeHeader(entry.getKey(), entry.getValue(), connectOrConnected, bytes, position);
+      }
+    }
+    return position;
+  }
+
+  private static int encodeHeader(String key, String value, boolean connectOrConnected, byte[] bytes, int position) {
+    position = HeaderCodec.encode(key, connectOrConnected, bytes, position);
+    bytes[position++] = ':';
+    position = HeaderCodec.encode(value, connectOrConnected, bytes, position);
+    bytes[position++] = FrameParser.LINE_FEED;
+    return position;
   }
 
   public String toString() {
@@ -0,0 +1,332 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.vertx.ext.stomp.lite.frame;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxException;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The body of a streamed frame. The frame {@link #head()} (command and headers) is available as soon as the headers
+ * have been parsed, the body chunks are then delivered by this {@link ReadStream} as they are received.
+ * <p></p>
+ * Back-pressure is propagated to the source of the data. When chunks can not be delivered, because the stream is
+ * paused or has no handler yet, the source is paused until the pending chunks have been consumed. If they are not
+ * consumed within the {@link #idleTimeout(long, Runnable)} the stream fails.
+ * <p></p>
+ * The stream completes once all the body has been delivered, or dropped because it failed. The end handler is called
+ * then, or as soon as it is set if it was not set yet.
+ * <p></p>
+ * This class is <strong>NOT</strong> thread-safe, it must be used from the connection event loop. When a
+ * {@link #context(Context)} is set, the {@link ReadStream} methods called from another thread, such as a virtual
+ * thread running the handler, are handed over to it and the data is always delivered on it.
+ */
+public class FrameBodyStream implements ReadStream<Buffer> {
+
+    private static final Runnable NOOP = () -> {};
+
+    private final Frame head;
+    private final ArrayDeque<Buffer> pending = new ArrayDeque<>();
+
+    private Handler<Buffer> handler;
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+
+    private Context context;
+    private Runnable pauseSource = NOOP;
+    private Runnable resumeSource = NOOP;
+    private boolean sourcePaused = false;
+
+    private long demand = Long.MAX_VALUE;
+    private boolean ended = false;
+    private boolean completed = false;
+    // the body has been delivered but the end handler was not set yet
+    private boolean endPending = false;
+    private boolean emitting = false;
+    private Runnable completionHandler;
+
+    private long idleTimeout = 0;
+    private Runnable timeoutHandler = NOOP;
+    private long idleTimer = -1;
+    private long lastDelivery;
+
+    public FrameBodyStream(Frame head) {
+        Objects.requireNonNull(head, "The frame head must be set");
+        this.head = head;
+    }
+
+    /**
+     * @return the frame command and headers, the frame itself has no body
+     */
+    public Frame head() {
+        return head;
+    }
+
+    /**
+     * Sets the context the stream belongs to.
+     *
+     * @param context the context of the connection
+     * @return the current {@link FrameBodyStream}
+     */
+    public FrameBodyStream context(Context context) {
+        this.context = context;
+        return this;
+    }
+
+    /**
+     * Sets the actions used to pause and resume the source of the data, typically the client connection.
+     *
+     * @param pause  called when chunks can not be delivered anymore
+     * @param resume called once all the pending chunks have been delivered
+     * @return the current {@link FrameBodyStream}
+     */
+    public FrameBodyStream sourceControl(Runnable pause, Runnable resume) {
+        Objects.requireNonNull(pause);
+        Objects.requireNonNull(resume);
+        this.pauseSource = pause;
+        this.resumeSource = resume;
+        return this;
+    }
+
+    /**
+     * Sets the time the received chunks can stay pending, it requires a {@link #context(Context)}. Once it elapsed
+     * without any chunk being delivered, the given handler is called and the stream fails.
+     *
+     * @param timeout        the timeout in milliseconds, 0 to disable it
+     * @param timeoutHandler called before the stream fails, typically closes the source
+     * @return the current {@link FrameBodyStream}
+     */
+    public FrameBodyStream idleTimeout(long timeout, Runnable timeoutHandler) {
+        Objects.requireNonNull(timeoutHandler);
+        this.idleTimeout = timeout;
+        this.timeoutHandler = timeoutHandler;
+        return this;
+    }
+
+    /**
+     * @return true if all the body has been received or the stream failed
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * @return true once all the body has been delivered, or the stream failed
+     */
+    boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Sets the action run once the stream is completed, see {@link #isCompleted()}
+     */
+    void completionHandler(Runnable completionHandler) {
+        this.completionHandler = completionHandler;
+    }
+
+    @Override
+    public FrameBodyStream exceptionHandler(Handler<Throwable> handler) {
+        if (handOver(() -> exceptionHandler(handler))) {
+            return this;
+        }
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public FrameBodyStream handler(Handler<Buffer> handler) {
+        if (handOver(() -> handler(handler))) {
+            return this;
+        }
+        this.handler = handler;
+        drain();
+        return this;
+    }
+
+    @Override
+    public FrameBodyStream pause() {
+        if (handOver(this::pause)) {
+            return this;
+        }
+        demand = 0;
+        return this;
+    }
+
+    @Override
+    public FrameBodyStream resume() {
+        return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public FrameBodyStream fetch(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("The amount must be positive");
+        }
+        if (handOver(() -> fetch(amount))) {
+            return this;
+        }
+        demand += amount;
+        if (demand < 0) {
+            demand = Long.MAX_VALUE;
+        }
+        drain();
+        return this;
+    }
+
+    @Override
+    public FrameBodyStream endHandler(Handler<Void> endHandler) {
+        if (handOver(() -> endHandler(endHandler))) {
+            return this;
+        }
+        this.endHandler = endHandler;
+        drain();
+        return this;
+    }
+
+    /**
+     * Fails the stream, pending chunks are discarded. Does nothing if the stream has already completed.
+     *
+     * @param cause the failure reported to the exception handler
+     */
+    public void fail(Throwable cause) {
+        if (!completed) {
+            ended = true;
+            completed = true;
+            pending.clear();
+            updateSource();
+            if (exceptionHandler != null) {
+                exceptionHandler.handle(cause);
+            }
+            complete();
+        }
+    }
+
+    void write(Buffer chunk) {
+        if (!ended) {
+            pending.add(chunk);
+            drain();
+        }
+    }
+
+    void end() {
+        if (!ended) {
+            ended = true;
+            drain();
+        }
+    }
+
+    /**
+     * Runs the given action on the context when called from another thread
+     * @return true if the action has been handed over
+     */
+    private boolean handOver(Runnable action) {
+        if (context != null && Vertx.currentContext() != context) {
+            context.runOnContext(v -> action.run());
+            return true;
+        }
+        return false;
+    }
+
+    private void drain() {
+        if (emitting) {
+            return;
+        }
+        emitting = true;
+        try {
+            while (!pending.isEmpty() && demand > 0 && handler != null) {
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                lastDelivery = System.nanoTime();
+                handler.handle(pending.poll());
+            }
+            if (ended && !completed && pending.isEmpty()) {
+                completed = true;
+                endPending = true;
+            }
+            if (endPending && endHandler != null) {
+                endPending = false;
+                endHandler.handle(null);
+            }
+        } finally {
+            emitting = false;
+        }
+        updateSource();
+        if (completed) {
+            complete();
+        }
+    }
+
+    private void complete() {
+        Runnable action = completionHandler;
+        if (action != null) {
+            completionHandler = null;
+            action.run();
+        }
+    }
+
+    private void updateSource() {
+        if (!pending.isEmpty()) {
+            if (!sourcePaused) {
+                sourcePaused = true;
+                lastDelivery = System.nanoTime();
+                startIdleTimer(idleTimeout);
+                pauseSource.run();
+            }
+        } else if (sourcePaused) {
+            sourcePaused = false;
+            cancelIdleTimer();
+            resumeSource.run();
+        }
+    }
+
+    private void startIdleTimer(long delay) {
+        if (idleTimeout > 0 && context != null) {
+            idleTimer = context.owner().setTimer(delay, id -> onIdleTimer());
+        }
+    }
+
+    private void cancelIdleTimer() {
+        if (idleTimer != -1) {
+            context.owner().cancelTimer(idleTimer);
+            idleTimer = -1;
+        }
+    }
+
+    private void onIdleTimer() {
+        idleTimer = -1;
+        if (!sourcePaused || completed) {
+            return;
+        }
+        long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastDelivery);
+        if (idle < idleTimeout) {
+            // chunks have been delivered since the timer was set
+            startIdleTimer(idleTimeout - idle);
+            return;
+        }
+        timeoutHandler.run();
+        fail(new VertxException("The body was not read for " + idleTimeout + " ms", true));
+    }
+}
@@ -21,7 +21,6 @@ import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.parsetools.RecordParser;
 
-import java.util.HashMap;
 import java.util.Objects;
 
 /**
@@ -29,7 +28,7 @@ import java.util.Objects;
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
-public class FrameParser implements Handler<Buffer> {
+public class FrameParser implements StompFrameParser {
 
   public static final String UTF_8 = "utf-8";
   public static final String NULL = "\u0000";
@@ -45,7 +44,7 @@ public class FrameParser implements Handler<Buffer> {
   private final StompServerOptions properties;
 
   private Frame.Command command;
-  private HashMap<String, String> headers = new HashMap<>();
+  private Headers headers = Headers.create();
   private Handler<Frame> handler;
   private int bodyLength = 0;
 
@@ -69,12 +68,14 @@ public class FrameParser implements Handler<Buffer> {
     this(new StompServerOptions());
   }
 
+  @Override
   public synchronized FrameParser handler(Handler<Frame> handler) {
     Objects.requireNonNull(handler);
     this.handler = handler;
     return this;
   }
 
+  @Override
   public synchronized FrameParser errorHandler(Handler<FrameException> handler) {
     this.errorHandler = handler;
     return this;
@@ -169,7 +170,7 @@ public class FrameParser implements Handler<Buffer> {
   private void reset() {
     command = null;
     bodyLength = 0;
-    headers = new HashMap<>();
+    headers = Headers.create();
     current = State.COMMAND;
     frameParser.delimitedMode(EOL);
   }
@@ -0,0 +1,122 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.vertx.ext.stomp.lite.frame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed lookup tables resolving the raw bytes of a command or a header name to the {@link Frame.Command} and to
+ * the canonical {@link String} constants defined by {@link Frame}. Only unknown names need to be allocated by the
+ * parser.
+ * <p></p>
+ * The tables are open addressing hash tables sized to keep a low load factor, so a lookup usually costs a hash of the
+ * bytes and a single comparison. This class is thread-safe.
+ */
+final class FrameSymbols {
+
+    private static final SymbolTable<Frame.Command> COMMANDS;
+    private static final SymbolTable<String> HEADER_NAMES;
+
+    static {
+        Map<String, Frame.Command> commands = new LinkedHashMap<>();
+        for (Frame.Command command : Frame.Command.values()) {
+            commands.put(command.name(), command);
+        }
+        COMMANDS = new SymbolTable<>(commands);
+
+        Map<String, String> names = new LinkedHashMap<>();
+        for (String name : new String[]{
+                Frame.CONTENT_LENGTH, Frame.CONTENT_TYPE,
+                Frame.HOST, Frame.VERSION, Frame.ACCEPT_VERSION, Frame.SESSION, Frame.SERVER,
+                Frame.LOGIN, Frame.PASSCODE, Frame.HEARTBEAT,
+                Frame.DESTINATION, Frame.RECEIPT, Frame.RECEIPT_ID, Frame.ACK, Frame.ID, Frame.SUBSCRIPTION,
+                Frame.MESSAGE_ID, Frame.TRANSACTION, Frame.MESSAGE, Frame.STOMP_FRAME_COMMAND}) {
+            names.put(name, name);
+        }
+        HEADER_NAMES = new SymbolTable<>(names);
+    }
+
+    private FrameSymbols() {
+        //Avoid direct instantiation.
+    }
+
+    /**
+     * @return the command spelled by the given bytes, {@code null} if this is not a known command
+     */
+    static Frame.Command command(byte[] bytes, int start, int end) {
+        return COMMANDS.get(bytes, start, end);
+    }
+
+    /**
+     * @return the canonical header name spelled by the given UTF-8 bytes, a new {@link String} for unknown names
+     */
+    static String headerName(byte[] bytes, int start, int end) {
+        String name = HEADER_NAMES.get(bytes, start, end);
+        if (name == null) {
+            name = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+        return name;
+    }
+
+    private static final class SymbolTable<T> {
+
+        private final byte[][] keys;
+        private final Object[] values;
+        private final int mask;
+
+        private SymbolTable(Map<String, T> symbols) {
+            int capacity = Integer.highestOneBit(symbols.size() * 4 - 1) << 1;
+            keys = new byte[capacity][];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            for (Map.Entry<String, T> entry : symbols.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                int slot = hash(key, 0, key.length) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = entry.getValue();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private T get(byte[] bytes, int start, int end) {
+            int slot = hash(bytes, start, end) & mask;
+            byte[] key;
+            while ((key = keys[slot]) != null) {
+                if (Arrays.equals(key, 0, key.length, bytes, start, end)) {
+                    return (T) values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int hash(byte[] bytes, int start, int end) {
+            int hash = end - start;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
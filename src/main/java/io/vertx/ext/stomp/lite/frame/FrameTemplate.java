@@ -0,0 +1,200 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.frame;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.internal.buffer.BufferInternal;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A frame encoded once to be sent to many connections, typically a MESSAGE published to every subscriber of a
+ * destination. The common headers and the body are encoded when the template is created, each call to
+ * {@link #toBuffer(Map, boolean)} only encodes the command and the headers specific to one recipient (such as
+ * {@code subscription} and {@code message-id}).
+ * <p></p>
+ * When the shared part is small, as for control frames, it is copied with the recipient headers in a single array.
+ * Otherwise the returned buffer is a composite referencing the shared part, so the cost per recipient does not depend
+ * on the body size.
+ * <p></p>
+ * The recipient headers are written before the common headers. By spec (repeated headers) the first value wins, so a
+ * recipient header takes precedence over a common header with the same name.
+ * <p></p>
+ * This class is immutable and can be shared between event loops.
+ */
+public final class FrameTemplate {
+
+    private final Frame.Command command;
+    private final boolean connectOrConnected;
+    private final Headers headers;
+    /**
+     * The common headers, the empty line and the body, without the terminating NULL byte
+     */
+    private final Buffer shared;
+    /**
+     * The content of {@link #shared} when it is copied in the frames, {@code null} when it is referenced
+     */
+    private final byte[] sharedBytes;
+
+    private FrameTemplate(Frame.Command command, Headers headers, Buffer shared, byte[] sharedBytes) {
+        this.command = command;
+        this.headers = headers;
+        this.connectOrConnected = command == Frame.Command.CONNECT || command == Frame.Command.CONNECTED;
+        this.shared = shared;
+        this.sharedBytes = sharedBytes;
+    }
+
+    /**
+     * Creates a template from the given frame. The frame is encoded immediately and can be modified or discarded
+     * afterwards, the body is referenced and must not be modified.
+     *
+     * @param frame the frame holding the command, the common headers and the body
+     * @return the template
+     */
+    public static FrameTemplate create(Frame frame) {
+        Objects.requireNonNull(frame, "The frame must not be null");
+        Frame.Command command = frame.getCommand();
+        boolean connectOrConnected = command == Frame.Command.CONNECT || command == Frame.Command.CONNECTED;
+        Map<String, String> headers = frame.getHeaders();
+        Buffer body = frame.getBody();
+
+        int headLength = Frame.encodedLength(headers, connectOrConnected) + 1;
+        int bodyLength = body != null ? body.length() : 0;
+        boolean bodyReferenced = bodyLength >= Frame.BODY_REFERENCE_THRESHOLD;
+        int length = headLength + (bodyReferenced ? 0 : bodyLength);
+
+        byte[] bytes = new byte[length];
+        int position = Frame.encodeHeaders(headers, connectOrConnected, bytes, 0);
+        bytes[position++] = FrameParser.LINE_FEED;
+        if (!bodyReferenced && bodyLength > 0) {
+            body.getBytes(0, bodyLength, bytes, position);
+        }
+
+        Buffer shared = Buffers.wrap(bytes);
+        byte[] sharedBytes = bytes;
+        if (bodyReferenced || length >= Frame.BODY_REFERENCE_THRESHOLD) {
+            sharedBytes = null;
+            if (bodyReferenced) {
+                shared = Buffers.composite(shared, body);
+            }
+        }
+        return new FrameTemplate(command, Headers.create(headers), shared, sharedBytes);
+    }
+
+    /**
+     * @return the command of the frame
+     */
+    public Frame.Command getCommand() {
+        return command;
+    }
+
+    /**
+     * Gets the value of one of the common headers.
+     *
+     * @param name the header name
+     * @return the value, {@code null} if not set
+     */
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Creates the buffer sent to one recipient. Only the command and the given headers are encoded, the common headers
+     * and the body are shared with the other buffers created from this template.
+     *
+     * @param headers      the headers specific to the recipient, may be {@code null} or empty
+     * @param trailingLine whether or not a trailing line should be added to the buffer
+     * @return a {@link Buffer} containing the STOMP frame
+     */
+    public Buffer toBuffer(Map<String, String> headers, boolean trailingLine) {
+        return encode(headers, null, null, trailingLine);
+    }
+
+    /**
+     * Creates the buffer sent to a recipient having a single specific header, such as the {@code receipt-id} of a
+     * RECEIPT frame.
+     *
+     * @param name         the name of the header specific to the recipient
+     * @param value        the value of the header
+     * @param trailingLine whether or not a trailing line should be added to the buffer
+     * @return a {@link Buffer} containing the STOMP frame
+     */
+    public Buffer toBuffer(String name, String value, boolean trailingLine) {
+        Objects.requireNonNull(name, "The header name must not be null");
+        Objects.requireNonNull(value, "The header value must not be null");
+        return encode(null, name, value, trailingLine);
+    }
+
+    private Buffer encode(Map<String, String> headers, String name, String value, boolean trailingLine) {
+        String commandName = command.name();
+        int length = commandName.length() + 1;
+        if (headers != null) {
+            length += Frame.encodedLength(headers, connectOrConnected);
+        }
+        if (name != null) {
+            length += HeaderCodec.encodedLength(name, connectOrConnected)
+                    + HeaderCodec.encodedLength(value, connectOrConnected) + 2;
+        }
+        int headLength = length;
+        if (sharedBytes != null) {
+            length += sharedBytes.length + (trailingLine ? 2 : 1);
+        }
+
+        ByteBuf buffer = Unpooled.buffer(length);
+        byte[] bytes = buffer.array();
+        int position = buffer.arrayOffset();
+        // Command names are ASCII
+        for (int i = 0; i < commandName.length(); i++) {
+            bytes[position++] = (byte) commandName.charAt(i);
+        }
+        bytes[position++] = FrameParser.LINE_FEED;
+        if (headers != null) {
+            position = Frame.encodeHeaders(headers, connectOrConnected, bytes, position);
+        }
+        if (name != null) {
+            position = HeaderCodec.encode(name, connectOrConnected, bytes, position);
+            bytes[position++] = ':';
+            position = HeaderCodec.encode(value, connectOrConnected, bytes, position);
+            bytes[position++] = FrameParser.LINE_FEED;
+        }
+
+        if (sharedBytes == null) {
+            buffer.writerIndex(headLength);
+            return Buffers.composite(BufferInternal.buffer(buffer),
+                                     shared,
+                                     trailingLine ? Frame.NULL_EOL_BUFFER : Frame.NULL_BUFFER);
+        }
+        System.arraycopy(sharedBytes, 0, bytes, position, sharedBytes.length);
+        position += sharedBytes.length;
+        bytes[position++] = 0;
+        if (trailingLine) {
+            bytes[position] = FrameParser.LINE_FEED;
+        }
+        buffer.writerIndex(length);
+        return BufferInternal.buffer(buffer);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameTemplate{" + command + ", " + shared.length() + " shared bytes}";
+    }
+}
@@ -27,20 +27,43 @@ import java.util.Objects;
  * Utility methods to build common {@link Frame}s. It defines a non-STOMP frame ({@code PING}) that is used for
  * heartbeats. When such frame is written on the wire it is just the {@code 0} byte.
  * <p></p>
+ * Control frames sent often are pre-encoded, only their variable part is encoded when they are sent. The buffers
+ * returned for them are shared or freshly allocated but must never be modified.
+ * <p></p>
  * This class is thread-safe.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public interface Frames {
 
+    /**
+     * The encoded PING frame, this buffer is shared and must not be modified.
+     */
+    Buffer PING_BUFFER = Buffers.wrap(new byte[]{FrameParser.LINE_FEED});
+
+    /**
+     * The encoded PING frame followed by a trailing line, this buffer is shared and must not be modified.
+     */
+    Buffer PING_TRAILING_LINE_BUFFER = Buffers.wrap(new byte[]{FrameParser.LINE_FEED, FrameParser.LINE_FEED});
+
     Frame PING = new Frame(Frame.Command.PING, Headers.create(), null) {
 
         @Override
         public Buffer toBuffer() {
-            return Buffer.buffer(FrameParser.EOL);
+            return PING_BUFFER;
+        }
+
+        @Override
+        public Buffer toBuffer(boolean trailingLine) {
+            return trailingLine ? PING_TRAILING_LINE_BUFFER : PING_BUFFER;
         }
     };
 
+    /**
+     * The RECEIPT frame without its {@code receipt-id} header.
+     */
+    FrameTemplate RECEIPT = FrameTemplate.create(new Frame(Frame.Command.RECEIPT, Headers.create(), null));
+
     static Frame createErrorFrame(String message, Map<String, String> headers, String body) {
         Objects.requireNonNull(message);
         Objects.requireNonNull(headers);
@@ -80,6 +103,32 @@ public interface Frames {
                          null);
     }
 
+    /**
+     * Encodes a RECEIPT frame from the pre-encoded {@link #RECEIPT} template, the only allocation is the returned buffer.
+     * @param receiptId the value of the {@code receipt-id} header
+     * @param trailingLine whether or not a trailing line should be added to the buffer
+     * @return the encoded frame
+     */
+    static Buffer createReceiptBuffer(String receiptId, boolean trailingLine) {
+        return RECEIPT.toBuffer(Frame.RECEIPT_ID, receiptId, trailingLine);
+    }
+
+    /**
+     * Creates the template of the CONNECTED frames sent by a server. The headers provided when authenticating a client
+     * are added when the frame is sent.
+     * @param version the negotiated protocol version
+     * @param heartbeat the heartbeat configuration of the server
+     * @return the template
+     */
+    static FrameTemplate createConnectedTemplate(String version, Frame.Heartbeat heartbeat) {
+        Objects.requireNonNull(version);
+        Objects.requireNonNull(heartbeat);
+        return FrameTemplate.create(new Frame(Frame.Command.CONNECTED,
+                                              Headers.create(Frame.VERSION, version,
+                                                             Frame.HEARTBEAT, heartbeat.toString()),
+                                              null));
+    }
+
     static Frame ping() {
         return PING;
     }
@@ -16,8 +16,12 @@
 
 package io.vertx.ext.stomp.lite.frame;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Class responsible for the encoding and decoding of the STOMP frame headers.
+ * Headers are scanned first and returned unchanged when there is nothing to escape or unescape, which is the case
+ * of almost all of them.
  * This class is thread-safe.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
@@ -34,7 +38,10 @@ public class HeaderCodec {
   }
 
   public static String encode(String header, boolean connectOrConnectedFrame) {
-    StringBuilder builder = new StringBuilder();
+    if (!needsEncoding(header, connectOrConnectedFrame)) {
+      return header;
+    }
+    StringBuilder builder = new StringBuilder(header.length() + 8);
 
     for (int i = 0; i < header.length(); i++) {
       char value = header.charAt(i);
@@ -72,7 +79,10 @@ public class HeaderCodec {
   }
 
   public static String decode(String header, boolean connectOrConnectedFrame) {
-    StringBuilder builder = new StringBuilder();
+    if (header.indexOf(FrameParser.ESCAPE) < 0) {
+      return header;
+    }
+    StringBuilder builder = new StringBuilder(header.length());
 
     int i = 0;
     while (i < header.length()) {
@@ -121,4 +131,207 @@ public class HeaderCodec {
     }
     return builder.toString();
   }
+
+  /**
+   * Decodes a raw UTF-8 header value. This is the same as {@link #decode(String, boolean)} without creating the
+   * intermediate {@link String} of the raw value.
+   *
+   * @param value                   the raw value
+   * @param start                   the start of the value
+   * @param end                     the end (exclusive) of the value
+   * @param connectOrConnectedFrame whether or not the header belongs to a CONNECT or CONNECTED frame
+   * @return the decoded value
+   */
+  public static String decode(byte[] value, int start, int end, boolean connectOrConnectedFrame) {
+    int escape = indexOfEscape(value, start, end);
+    if (escape < 0) {
+      return new String(value, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // Escape sequences are ASCII, so they never appear within a multi-bytes UTF-8 character
+    byte[] decoded = new byte[end - start];
+    int length = escape - start;
+    System.arraycopy(value, start, decoded, 0, length);
+    int i = escape;
+    while (i < end) {
+      byte current = value[i];
+      if (current == FrameParser.ESCAPE && i + 1 < end) {
+        byte next = value[i + 1];
+        switch (next) {
+          case 'r':
+            if (connectOrConnectedFrame) {
+              decoded[length++] = current;
+            } else {
+              decoded[length++] = '\r';
+              i++;
+            }
+            break;
+          case 'n':
+            if (connectOrConnectedFrame) {
+              decoded[length++] = current;
+            } else {
+              decoded[length++] = FrameParser.LINE_FEED;
+              i++;
+            }
+            break;
+          case 'c':
+            if (connectOrConnectedFrame) {
+              decoded[length++] = current;
+            } else {
+              decoded[length++] = ':';
+              i++;
+            }
+            break;
+          case FrameParser.ESCAPE:
+            // Always decoded.
+            decoded[length++] = FrameParser.ESCAPE;
+            i++;
+            break;
+          default:
+            // By spec, all other escape must be treated as a fatal protocol error.
+            throw new FrameException("Incorrect header value " +
+                "- the header uses an illegal escaped character '" + (char) (next & 0xFF) + "' (" + next + ")");
+        }
+      } else {
+        decoded[length++] = current;
+      }
+      i++;
+    }
+    return new String(decoded, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Checks the escape sequences of a raw UTF-8 header value without decoding it. Once checked the value can be
+   * decoded with {@link #decode(String, boolean)} without failing.
+   *
+   * @param value the raw value
+   * @param start the start of the value
+   * @param end   the end (exclusive) of the value
+   * @throws FrameException if the value uses an illegal escaped character
+   */
+  public static void checkEscapes(byte[] value, int start, int end) {
+    for (int i = start; i < end - 1; i++) {
+      if (value[i] == FrameParser.ESCAPE) {
+        byte next = value[i + 1];
+        if (next != 'r' && next != 'n' && next != 'c' && next != FrameParser.ESCAPE) {
+          // By spec, all other escape must be treated as a fatal protocol error.
+          throw new FrameException("Incorrect header value " +
+              "- the header uses an illegal escaped character '" + (char) (next & 0xFF) + "' (" + next + ")");
+        }
+        i++;
+      }
+    }
+  }
+
+  /**
+   * Computes the length in bytes of the given header once encoded with {@link #encode(String, boolean, byte[], int)}.
+   *
+   * @param header                  the header name or value
+   * @param connectOrConnectedFrame whether or not the header belongs to a CONNECT or CONNECTED frame
+   * @return the length of the UTF-8 encoded and escaped header
+   */
+  public static int encodedLength(String header, boolean connectOrConnectedFrame) {
+    int length = 0;
+    for (int i = 0; i < header.length(); i++) {
+      char value = header.charAt(i);
+      if (value < 0x80) {
+        length += isEscaped(value, connectOrConnectedFrame) ? 2 : 1;
+      } else if (value < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(value) && i + 1 < header.length()
+          && Character.isLowSurrogate(header.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(value)) {
+        // Malformed, replaced by '?' like String.getBytes does
+        length += 1;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Encodes and writes the given header to the given array in UTF-8, without creating any intermediate object.
+   * The array must have room for {@link #encodedLength(String, boolean)} bytes.
+   *
+   * @param header                  the header name or value
+   * @param connectOrConnectedFrame whether or not the header belongs to a CONNECT or CONNECTED frame
+   * @param dst                     the destination array
+   * @param offset                  the position of the first byte to write
+   * @return the position following the last written byte
+   */
+  public static int encode(String header, boolean connectOrConnectedFrame, byte[] dst, int offset) {
+    int position = offset;
+    for (int i = 0; i < header.length(); i++) {
+      char value = header.charAt(i);
+      if (value < 0x80) {
+        if (isEscaped(value, connectOrConnectedFrame)) {
+          dst[position++] = FrameParser.ESCAPE;
+          dst[position++] = escapeCode(value);
+        } else {
+          dst[position++] = (byte) value;
+        }
+      } else if (value < 0x800) {
+        dst[position++] = (byte) (0xC0 | (value >> 6));
+        dst[position++] = (byte) (0x80 | (value & 0x3F));
+      } else if (Character.isHighSurrogate(value) && i + 1 < header.length()
+          && Character.isLowSurrogate(header.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(value, header.charAt(++i));
+        dst[position++] = (byte) (0xF0 | (codePoint >> 18));
+        dst[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        dst[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        dst[position++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(value)) {
+        dst[position++] = '?';
+      } else {
+        dst[position++] = (byte) (0xE0 | (value >> 12));
+        dst[position++] = (byte) (0x80 | ((value >> 6) & 0x3F));
+        dst[position++] = (byte) (0x80 | (value & 0x3F));
+      }
+    }
+    return position;
+  }
+
+  private static boolean needsEncoding(String header, boolean connectOrConnectedFrame) {
+    if (connectOrConnectedFrame) {
+      return header.indexOf(FrameParser.ESCAPE) >= 0;
+    }
+    for (int i = 0; i < header.length(); i++) {
+      char value = header.charAt(i);
+      if (value == FrameParser.ESCAPE || value == FrameParser.LINE_FEED || value == ':' || value == '\r') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int indexOfEscape(byte[] value, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (value[i] == FrameParser.ESCAPE) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isEscaped(char value, boolean connectOrConnectedFrame) {
+    // The escape character is always encoded, CONNECT and CONNECTED frames do not encode \r \n and :
+    return value == FrameParser.ESCAPE
+        || !connectOrConnectedFrame && (value == FrameParser.LINE_FEED || value == ':' || value == '\r');
+  }
+
+  private static byte escapeCode(char value) {
+    switch (value) {
+      case FrameParser.LINE_FEED:
+        return 'n';
+      case ':':
+        return 'c';
+      case '\r':
+        return 'r';
+      default:
+        return FrameParser.ESCAPE;
+    }
+  }
 }
@@ -16,17 +16,53 @@
 
 package io.vertx.ext.stomp.lite.frame;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
- * An implementation  of {@link HashMap} to store STOMP frame headers. This implementation offers fluent methods to
- * ease the construction of the headers.
+ * A compact {@link Map} to store STOMP frame headers. This implementation offers fluent methods to ease the
+ * construction of the headers.
+ * <p></p>
+ * Frames usually have a handful of headers, so the entries are stored in insertion order in flat arrays and looked up
+ * by a linear scan. Once the map grows past {@value #INDEX_THRESHOLD} entries an open addressing index is added so
+ * lookups stay constant time. Unlike a {@link java.util.HashMap} no object is allocated per entry.
+ * <p></p>
+ * This class does not extend {@link java.util.HashMap}, it is neither {@link Cloneable} nor
+ * {@link java.io.Serializable}, and {@code null} header names are rejected with a {@link NullPointerException}.
+ * <p></p>
+ * This class is <strong>NOT</strong> thread-safe.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
-public class Headers extends HashMap<String, String> {
+public class Headers extends AbstractMap<String, String> {
+
+  private static final int INITIAL_CAPACITY = 8;
+  private static final int INDEX_THRESHOLD = 16;
+
+  private String[] keys = new String[INITIAL_CAPACITY];
+  private String[] values = new String[INITIAL_CAPACITY];
+  private int size = 0;
+
+  /**
+   * Open addressing index, holds the position of the entry plus one, {@code 0} marks an empty slot.
+   * Only used when the map holds more than {@link #INDEX_THRESHOLD} entries.
+   */
+  private int[] index;
+
+  /**
+   * Start and end of the raw values not decoded yet, the start is {@code -1} once the value is available.
+   * Only used by {@link LazyHeaders}.
+   */
+  int[] slices;
+
+  private EntrySet entrySet;
 
   public static Headers create() {
     return new Headers();
@@ -56,4 +92,332 @@ public class Headers extends HashMap<String, String> {
   public static Headers create(Map<String, String> headers) {
     return create().addAll(headers);
   }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  public String get(Object key) {
+    int position = indexOf(key);
+    return position < 0 ? null : valueAt(position);
+  }
+
+  @Override
+  public String put(String key, String value) {
+    int position = indexOf(key);
+    if (position < 0) {
+      append(key, value);
+      return null;
+    }
+    String previous = valueAt(position);
+    values[position] = value;
+    return previous;
+  }
+
+  /**
+   * By spec (repeated headers) only the first value of a header is kept, this is the operation used when frames are
+   * built.
+   */
+  @Override
+  public String putIfAbsent(String key, String value) {
+    int position = indexOf(key);
+    if (position < 0) {
+      append(key, value);
+      return null;
+    }
+    String previous = valueAt(position);
+    if (previous == null) {
+      values[position] = value;
+    }
+    return previous;
+  }
+
+  @Override
+  public void putAll(Map<? extends String, ? extends String> other) {
+    if (other instanceof Headers) {
+      Headers headers = (Headers) other;
+      for (int i = 0; i < headers.size; i++) {
+        put(headers.keys[i], headers.valueAt(i));
+      }
+    } else {
+      super.putAll(other);
+    }
+  }
+
+  @Override
+  public String remove(Object key) {
+    int position = indexOf(key);
+    if (position < 0) {
+      return null;
+    }
+    String previous = valueAt(position);
+    removeAt(position);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(keys, 0, size, null);
+    Arrays.fill(values, 0, size, null);
+    if (slices != null) {
+      Arrays.fill(slices, 0, size * 2, -1);
+    }
+    size = 0;
+    index = null;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super String> action) {
+    for (int i = 0; i < size; i++) {
+      action.accept(keys[i], valueAt(i));
+    }
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  /**
+   * @param position the position of the entry, in insertion order
+   * @return the name of the header at the given position
+   */
+  String keyAt(int position) {
+    return keys[position];
+  }
+
+  /**
+   * @param position the position of the entry, in insertion order
+   * @return the value of the header at the given position
+   */
+  String valueAt(int position) {
+    if (slices != null && slices[position * 2] >= 0) {
+      values[position] = decodeSlice(slices[position * 2], slices[position * 2 + 1]);
+      slices[position * 2] = -1;
+    }
+    return values[position];
+  }
+
+  /**
+   * Decodes a raw value, only called for entries added with {@link #appendSlice(String, int, int)}.
+   */
+  String decodeSlice(int start, int end) {
+    throw new IllegalStateException("Headers do not have raw values");
+  }
+
+  /**
+   * Adds a header whose value is not decoded yet, the header must not be present already.
+   */
+  void appendSlice(String key, int start, int end) {
+    int position = append(key, null);
+    if (slices == null) {
+      slices = new int[keys.length * 2];
+      Arrays.fill(slices, -1);
+    }
+    slices[position * 2] = start;
+    slices[position * 2 + 1] = end;
+  }
+
+  private int indexOf(Object key) {
+    if (index != null) {
+      if (key == null) {
+        return -1;
+      }
+      int mask = index.length - 1;
+      int slot = hash(key) & mask;
+      int entry;
+      while ((entry = index[slot]) != 0) {
+        String candidate = keys[entry - 1];
+        if (candidate == key || candidate.equals(key)) {
+          return entry - 1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+    for (int i = 0; i < size; i++) {
+      // well-known names are the canonical constants, so the identity check usually succeeds
+      String candidate = keys[i];
+      if (candidate == key || candidate != null && candidate.equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int append(String key, String value) {
+    Objects.requireNonNull(key, "The header name must not be null");
+    if (size == keys.length) {
+      int capacity = size * 2;
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+      if (slices != null) {
+        slices = Arrays.copyOf(slices, capacity * 2);
+        Arrays.fill(slices, size * 2, capacity * 2, -1);
+      }
+    }
+    int position = size++;
+    keys[position] = key;
+    values[position] = value;
+    if (slices != null) {
+      // the position may have held a raw value before a clear
+      slices[position * 2] = -1;
+    }
+    if (index != null && index.length < size * 2) {
+      // keeps the load factor under 0.5
+      rebuildIndex();
+    } else if (index != null) {
+      insertInIndex(position);
+    } else if (size > INDEX_THRESHOLD) {
+      rebuildIndex();
+    }
+    return position;
+  }
+
+  private void removeAt(int position) {
+    int moved = size - position - 1;
+    if (moved > 0) {
+      System.arraycopy(keys, position + 1, keys, position, moved);
+      System.arraycopy(values, position + 1, values, position, moved);
+      if (slices != null) {
+        System.arraycopy(slices, (position + 1) * 2, slices, position * 2, moved * 2);
+      }
+    }
+    size--;
+    keys[size] = null;
+    values[size] = null;
+    if (slices != null) {
+      slices[size * 2] = -1;
+    }
+    if (index != null) {
+      // Positions have moved, removals are rare enough to rebuild the index
+      if (size > INDEX_THRESHOLD) {
+        rebuildIndex();
+      } else {
+        index = null;
+      }
+    }
+  }
+
+  private void rebuildIndex() {
+    int capacity = Integer.highestOneBit(size * 4 - 1) << 1;
+    index = new int[capacity];
+    for (int i = 0; i < size; i++) {
+      insertInIndex(i);
+    }
+  }
+
+  private void insertInIndex(int position) {
+    int mask = index.length - 1;
+    int slot = hash(keys[position]) & mask;
+    while (index[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    index[slot] = position + 1;
+  }
+
+  private static int hash(Object key) {
+    int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<String, String>> {
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      Headers.this.clear();
+    }
+
+    @Override
+    public Iterator<Entry<String, String>> iterator() {
+      return new Iterator<>() {
+        private int next = 0;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+          return next < size;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+          if (next >= size) {
+            throw new NoSuchElementException();
+          }
+          last = next++;
+          return new HeaderEntry(last);
+        }
+
+        @Override
+        public void remove() {
+          if (last < 0) {
+            throw new IllegalStateException();
+          }
+          removeAt(last);
+          next = last;
+          last = -1;
+        }
+      };
+    }
+  }
+
+  private final class HeaderEntry implements Entry<String, String> {
+
+    private final int position;
+
+    private HeaderEntry(int position) {
+      this.position = position;
+    }
+
+    @Override
+    public String getKey() {
+      return keys[position];
+    }
+
+    @Override
+    public String getValue() {
+      return valueAt(position);
+    }
+
+    @Override
+    public String setValue(String value) {
+      String previous = valueAt(position);
+      values[position] = value;
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry<?, ?> other = (Entry<?, ?>) o;
+      return Objects.equals(getKey(), other.getKey()) && Objects.equals(getValue(), other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
 }
@@ -0,0 +1,66 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.vertx.ext.stomp.lite.frame;
+
+import java.util.Map;
+
+/**
+ * Headers of a parsed frame backed by the raw bytes received from the client. The header values are kept as slices of
+ * the raw data, they are decoded (and unescaped) the first time they are read and the result is cached.
+ * <p></p>
+ * The values must have been validated with {@link HeaderCodec#checkEscapes(byte[], int, int)} before being added,
+ * so decoding never fails. This map supports all the {@link Map} operations, values set by the application replace
+ * the raw slices.
+ * <p></p>
+ * This class is <strong>NOT</strong> thread-safe.
+ */
+final class LazyHeaders extends Headers {
+
+    private final boolean connectOrConnectedFrame;
+
+    private byte[] raw;
+
+    LazyHeaders(boolean connectOrConnectedFrame) {
+        this.connectOrConnectedFrame = connectOrConnectedFrame;
+    }
+
+    /**
+     * Sets the raw data the slices given to {@link #addRaw(String, int, int)} refer to.
+     *
+     * @param raw the raw data, must not be modified afterwards
+     */
+    void raw(byte[] raw) {
+        this.raw = raw;
+    }
+
+    /**
+     * Adds a header whose value is not decoded yet. The header must not be present already.
+     *
+     * @param name  the header name
+     * @param start the start of the raw value
+     * @param end   the end (exclusive) of the raw value
+     */
+    void addRaw(String name, int start, int end) {
+        appendSlice(name, start, end);
+    }
+
+    @Override
+    String decodeSlice(int start, int end) {
+        return HeaderCodec.decode(raw, start, end, connectOrConnectedFrame);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.vertx.ext.stomp.lite.frame;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+
+/**
+ * A parser receiving raw STOMP data and emitting {@link Frame}s. Implementations are incremental, the data may be
+ * split at any position across the received {@link Buffer}s.
+ */
+public interface StompFrameParser extends Handler<Buffer> {
+
+    /**
+     * Creates the parser configured by the given options.
+     *
+     * @param options the STOMP server options
+     * @return a {@link ByteFrameParser} if {@link StompServerOptions#isByteParserEnabled()} is {@code true}, a
+     *         {@link FrameParser} otherwise
+     */
+    static StompFrameParser create(StompServerOptions options) {
+        if (options.isByteParserEnabled()) {
+            return new ByteFrameParser(options);
+        }
+        return new FrameParser(options);
+    }
+
+    /**
+     * Sets the handler receiving the parsed frames.
+     *
+     * @param handler the handler, must not be {@code null}
+     * @return the current {@link StompFrameParser}
+     */
+    StompFrameParser handler(Handler<Frame> handler);
+
+    /**
+     * Sets the handler notified when the received data is not a valid STOMP frame. If not set a {@link FrameException}
+     * is thrown instead.
+     *
+     * @param handler the error handler
+     * @return the current {@link StompFrameParser}
+     */
+    StompFrameParser errorHandler(Handler<FrameException> handler);
+
+    /**
+     * Sets the handler receiving the SEND frames whose body is streamed, see
+     * {@link StompServerOptions#isBodyStreamingEnabled()}. The stream is given as soon as the headers have been parsed
+     * and the frame is not given to the {@link #handler(Handler)}. Parsers not supporting streaming ignore this
+     * handler and always emit complete frames.
+     *
+     * @param handler the handler receiving the streamed frames
+     * @return the current {@link StompFrameParser}
+     */
+    default StompFrameParser bodyStreamHandler(Handler<FrameBodyStream> handler) {
+        return this;
+    }
+
+    /**
+     * Stops the parser once the connection is closed, the data it still holds is discarded and no frame is emitted
+     * afterwards. The default implementation holds no data and does nothing.
+     */
+    default void close() {
+    }
+
+}
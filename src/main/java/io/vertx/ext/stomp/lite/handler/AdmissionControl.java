@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.stomp.lite.AdmissionStats;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how fast clients may connect and authenticate, and keeps the counters of what has been rejected. The limits
+ * on the frames and bytes sent by a connection use a {@link TokenBucket} owned by the connection, see
+ * {@link #frameLimiter()} and {@link #byteLimiter()}.
+ * <p></p>
+ * The instance is shared by all the verticle instances listening on the same host and port with the same limits, it is
+ * removed once all of them have released it, see {@link #release(Vertx, StompServerOptions)}. This class is
+ * thread-safe.
+ */
+class AdmissionControl implements AdmissionStats, Shareable {
+
+    private static final String LOCAL_MAP_NAME = AdmissionControl.class.getName();
+    // the idle buckets are removed every time this number of handshakes has been checked
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final int handshakesPerSecond;
+    private final int maxPendingAuthentications;
+    private final int framesPerSecond;
+    private final long bytesPerSecond;
+
+    private final ConcurrentHashMap<String, TokenBucket> handshakeBuckets = new ConcurrentHashMap<>();
+    private final AtomicInteger handshakes = new AtomicInteger();
+    private final AtomicInteger pendingAuthentications = new AtomicInteger();
+
+    private final LongAdder rejectedHandshakes = new LongAdder();
+    private final LongAdder rejectedAuthentications = new LongAdder();
+    private final LongAdder rejectedFrames = new LongAdder();
+    private final LongAdder rejectedBytes = new LongAdder();
+
+    // the number of handlers using this instance, only updated while computing its entry of the local map
+    private int references = 0;
+
+    AdmissionControl(StompServerOptions options) {
+        this.handshakesPerSecond = options.getMaxHandshakesPerSecondPerIp();
+        this.maxPendingAuthentications = options.getMaxPendingAuthentications();
+        this.framesPerSecond = options.getMaxFramesPerSecondPerConnection();
+        this.bytesPerSecond = options.getMaxBytesPerSecondPerConnection();
+    }
+
+    /**
+     * Gets the admission control of the server configured by the given options, it must be released by
+     * {@link #release(Vertx, StompServerOptions)}
+     */
+    static AdmissionControl get(Vertx vertx, StompServerOptions options) {
+        LocalMap<String, AdmissionControl> controls = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return controls.compute(mapKey(options), (k, control) -> {
+            if (control == null) {
+                control = new AdmissionControl(options);
+            }
+            control.references++;
+            return control;
+        });
+    }
+
+    /**
+     * Releases the instance got by {@link #get(Vertx, StompServerOptions)}, it is removed once no handler uses it so
+     * that a server deployed again applies its own limits
+     */
+    static void release(Vertx vertx, StompServerOptions options) {
+        LocalMap<String, AdmissionControl> controls = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        controls.computeIfPresent(mapKey(options), (k, control) -> --control.references > 0 ? control : null);
+    }
+
+    private static String mapKey(StompServerOptions options) {
+        return options.getHost() + ":" + options.getPort() + ":" + options.getMaxHandshakesPerSecondPerIp() + ":"
+                + options.getMaxPendingAuthentications() + ":" + options.getMaxFramesPerSecondPerConnection() + ":"
+                + options.getMaxBytesPerSecondPerConnection();
+    }
+
+    /**
+     * Checks whether a new connection from the given address is allowed
+     *
+     * @param remoteAddress the address of the client
+     * @return false if the connection must be rejected
+     */
+    boolean acceptHandshake(SocketAddress remoteAddress) {
+        if (handshakesPerSecond <= 0 || remoteAddress == null) {
+            return true;
+        }
+        if (handshakes.incrementAndGet() % PURGE_INTERVAL == 0) {
+            long now = System.nanoTime();
+            handshakeBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+        String ip = remoteAddress.hostAddress() != null ? remoteAddress.hostAddress() : remoteAddress.host();
+        TokenBucket bucket = handshakeBuckets.computeIfAbsent(ip, k -> new TokenBucket(handshakesPerSecond));
+        if (bucket.tryAcquire(1)) {
+            return true;
+        }
+        rejectedHandshakes.increment();
+        return false;
+    }
+
+    /**
+     * Reserves one of the pending authentications, it must be released by {@link #releaseAuthentication()}
+     *
+     * @return false if too many authentications are pending, nothing is reserved then
+     */
+    boolean acquireAuthentication() {
+        int pending = pendingAuthentications.incrementAndGet();
+        if (maxPendingAuthentications > 0 && pending > maxPendingAuthentications) {
+            pendingAuthentications.decrementAndGet();
+            rejectedAuthentications.increment();
+            return false;
+        }
+        return true;
+    }
+
+    void releaseAuthentication() {
+        pendingAuthentications.decrementAndGet();
+    }
+
+    /**
+     * @return a new limiter of the frames sent by a connection, or null if they are not limited
+     */
+    TokenBucket frameLimiter() {
+        return framesPerSecond > 0 ? new TokenBucket(framesPerSecond) : null;
+    }
+
+    /**
+     * @return a new limiter of the bytes sent by a connection, or null if they are not limited
+     */
+    TokenBucket byteLimiter() {
+        return bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond) : null;
+    }
+
+    void frameRejected() {
+        rejectedFrames.increment();
+    }
+
+    void bytesRejected() {
+        rejectedBytes.increment();
+    }
+
+    @Override
+    public long rejectedHandshakes() {
+        return rejectedHandshakes.sum();
+    }
+
+    @Override
+    public long rejectedAuthentications() {
+        return rejectedAuthentications.sum();
+    }
+
+    @Override
+    public long rejectedFrames() {
+        return rejectedFrames.sum();
+    }
+
+    @Override
+    public long rejectedBytes() {
+        return rejectedBytes.sum();
+    }
+
+    @Override
+    public int pendingAuthentications() {
+        return pendingAuthentications.get();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Caches the results of {@link io.vertx.ext.stomp.lite.StompServerHandler#authenticate(Map)}, so that clients
+ * reconnecting with the same credentials do not hit the identity service again.
+ * <p></p>
+ * The entries are keyed on an HMAC-SHA256 of the {@link StompServerOptions#getAuthCacheKeyHeaders()} of the CONNECT
+ * frame, computed with a random key generated for each cache. The credentials themselves are never stored, and the
+ * keys can not be matched against precomputed digests of common passwords. A successful authentication is kept for
+ * {@link StompServerOptions#getAuthCacheTtl()} milliseconds, failures are not cached. While an authentication is
+ * running, the connections presenting the same key wait for its result instead of calling the handler again.
+ * The least recently used entries are evicted once the cache holds {@link StompServerOptions#getAuthCacheMaxSize()}
+ * entries.
+ * <p></p>
+ * The cache is shared by all the verticle instances listening on the same host and port with the same cache options,
+ * it is removed once all of them have released it, see {@link #release(Vertx, StompServerOptions)}. This class is
+ * thread-safe.
+ */
+class AuthenticationCache implements Shareable {
+
+    private static final String LOCAL_MAP_NAME = AuthenticationCache.class.getName();
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final List<String> keyHeaders;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final SecretKeySpec secretKey;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // the number of handlers using this cache, only updated while computing its entry of the local map
+    private int references = 0;
+
+    AuthenticationCache(StompServerOptions options) {
+        this.keyHeaders = List.copyOf(options.getAuthCacheKeyHeaders());
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(options.getAuthCacheTtl());
+        this.maxSize = options.getAuthCacheMaxSize();
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.secretKey = new SecretKeySpec(secret, MAC_ALGORITHM);
+    }
+
+    /**
+     * Gets the cache of the server configured by the given options, it must be released by
+     * {@link #release(Vertx, StompServerOptions)}
+     *
+     * @return the cache, or null if the authentication cache is disabled
+     */
+    static AuthenticationCache get(Vertx vertx, StompServerOptions options) {
+        if (!options.isAuthCacheEnabled()) {
+            return null;
+        }
+        LocalMap<String, AuthenticationCache> caches = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        return caches.compute(mapKey(options), (k, cache) -> {
+            if (cache == null) {
+                cache = new AuthenticationCache(options);
+            }
+            cache.references++;
+            return cache;
+        });
+    }
+
+    /**
+     * Releases the cache got by {@link #get(Vertx, StompServerOptions)}, it is removed once no handler uses it so that
+     * a server deployed again starts with an empty cache configured by its own options
+     */
+    static void release(Vertx vertx, StompServerOptions options) {
+        if (!options.isAuthCacheEnabled()) {
+            return;
+        }
+        LocalMap<String, AuthenticationCache> caches = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+        caches.computeIfPresent(mapKey(options), (k, cache) -> --cache.references > 0 ? cache : null);
+    }
+
+    private static String mapKey(StompServerOptions options) {
+        return options.getHost() + ":" + options.getPort() + ":" + options.getAuthCacheTtl() + ":"
+                + options.getAuthCacheMaxSize() + ":" + options.getAuthCacheKeyHeaders();
+    }
+
+    /**
+     * Authenticates the given CONNECT headers, using the cached result if there is one
+     *
+     * @param connectHeaders the headers of the CONNECT frame
+     * @param authenticator  called when there is no cached result
+     * @return the headers to add to the CONNECTED frame
+     */
+    Future<Map<String, String>> authenticate(Map<String, String> connectHeaders,
+                                             Function<Map<String, String>, Future<Map<String, String>>> authenticator) {
+        String key = key(connectHeaders);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expired(System.nanoTime())) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                return entry.promise.future();
+            }
+            entry = new Entry();
+            entries.put(key, entry);
+            evict();
+        }
+
+        Entry created = entry;
+        Future<Map<String, String>> result;
+        try {
+            result = authenticator.apply(connectHeaders);
+        } catch (RuntimeException e) {
+            synchronized (entries) {
+                entries.remove(key, created);
+            }
+            created.promise.fail(e);
+            throw e;
+        }
+        if (result == null) {
+            result = Future.succeededFuture();
+        }
+
+        result.onComplete(ar -> {
+            synchronized (entries) {
+                if (ar.succeeded()) {
+                    created.expiration = System.nanoTime() + ttlNanos;
+                } else if (entries.get(key) == created) {
+                    entries.remove(key);
+                }
+            }
+            if (ar.succeeded()) {
+                Map<String, String> headers = ar.result();
+                created.promise.complete(headers != null ? Collections.unmodifiableMap(headers) : null);
+            } else {
+                created.promise.fail(ar.cause());
+            }
+        });
+        return created.promise.future();
+    }
+
+    /**
+     * @return the number of cached entries, including the authentications in progress
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evict() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && entries.size() > maxSize) {
+            Entry entry = it.next();
+            // an authentication in progress is kept so that the waiting connections are still merged
+            if (entry.expiration != Long.MAX_VALUE) {
+                it.remove();
+            }
+        }
+    }
+
+    private String key(Map<String, String> connectHeaders) {
+        Mac mac;
+        try {
+            mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secretKey);
+        } catch (GeneralSecurityException e) {
+            // every Java platform must support HmacSHA256
+            throw new IllegalStateException(e);
+        }
+        // the values are prefixed by their length, so that no two sets of headers give the same input
+        for (String name : keyHeaders) {
+            String value = connectHeaders.get(name);
+            if (value == null) {
+                update(mac, -1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                update(mac, bytes.length);
+                mac.update(bytes);
+            }
+        }
+        return Base64.getEncoder().encodeToString(mac.doFinal());
+    }
+
+    private static void update(Mac mac, int value) {
+        mac.update((byte) (value >>> 24));
+        mac.update((byte) (value >>> 16));
+        mac.update((byte) (value >>> 8));
+        mac.update((byte) value);
+    }
+
+    private static final class Entry {
+
+        private final Promise<Map<String, String>> promise = Promise.promise();
+        // set once the authentication succeeded, guarded by the entries lock
+        private long expiration = Long.MAX_VALUE;
+
+        private boolean expired(long now) {
+            return expiration != Long.MAX_VALUE && now - expiration >= 0;
+        }
+    }
+}
@@ -16,30 +16,43 @@
 
 package io.vertx.ext.stomp.lite.handler;
 
+import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxException;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.stomp.lite.AsyncStompServerHandler;
 import io.vertx.ext.stomp.lite.StompServerConnection;
 import io.vertx.ext.stomp.lite.StompServerHandler;
 import io.vertx.ext.stomp.lite.StompServerHandlerFactory;
 import io.vertx.ext.stomp.lite.StompServerOptions;
 import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameBodyStream;
 import io.vertx.ext.stomp.lite.frame.FrameParser;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
 import io.vertx.ext.stomp.lite.frame.Frames;
 import io.vertx.ext.stomp.lite.frame.Headers;
+import io.vertx.ext.stomp.lite.frame.InvalidConnectFrame;
+import io.vertx.ext.stomp.lite.frame.StompFrameParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLSession;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Created by Navid Mitchell on 2019-01-10.
@@ -48,81 +61,200 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
 
     private static final Logger log = LoggerFactory.getLogger(DefaultStompServerConnection.class);
 
-    private final ServerWebSocket serverWebSocket;
+    // the reasons for which reading from the client is paused, it resumes when there is none left
+    private static final int PAUSED_BY_APPLICATION = 1;
+    private static final int PAUSED_BY_BODY_STREAM = 2;
+    private static final int PAUSED_BY_HANDLERS = 4;
+    private static final int PAUSED_BY_ASYNC_HANDLERS = 8;
+
+    private final StompTransport transport;
     private final Vertx vertx;
+    private final Context context;
     private final StompServerOptions options;
     private final StompServerHandler stompServerHandler;
+    private final OutboundWriter outboundWriter;
+    private final FrameTemplate connectedTemplate;
+    private final HandlerDispatcher dispatcher;
+    private final AsyncStompServerHandler asyncHandler;
+    private final StompFrameParser parser;
+    private final AuthenticationCache authenticationCache;
+    private final AdmissionControl admissionControl;
+    private final TokenBucket frameLimiter;
+    private final TokenBucket byteLimiter;
 
     private boolean connected = false;
+    private boolean authenticating = false;
+    // frames received while the client is being authenticated, bounded by the max connect frame length
+    private final ArrayDeque<Frame> pipelinedFrames = new ArrayDeque<>();
+    private int preConnectLength = 0;
+    private Buffer preConnectData;
+    private boolean rateLimitExceeded = false;
     private boolean closed = false;
     private volatile long lastClientActivity;
     private volatile long lastServerActivity;
-    private long serverHeartbeat = -1;
-    private long clientHeartbeat = -1;
-
-
-    DefaultStompServerConnection(ServerWebSocket serverWebSocket,
+    private long serverHeartbeatPeriod = 0;
+    private long clientHeartbeatPeriod = 0;
+    private long lastPing;
+    private HeartbeatWheel heartbeatWheel;
+    private HeartbeatWheel.Timeout heartbeatTimeout;
+    private FrameBodyStream bodyStream;
+    private int pauseReasons = 0;
+    private int asyncFramesInFlight = 0;
+    private volatile String conflationKeyHeader;
+    private final Map<String, String> subscriptionConflationKeyHeaders = new ConcurrentHashMap<>();
+    private final List<Handler<Void>> closeHandlers = new ArrayList<>();
+
+
+    DefaultStompServerConnection(StompTransport transport,
                                  Vertx vertx,
                                  StompServerOptions options,
-                                 StompServerHandlerFactory factory) {
-        this.serverWebSocket = serverWebSocket;
+                                 StompServerHandlerFactory factory,
+                                 FrameTemplate connectedTemplate,
+                                 AuthenticationCache authenticationCache,
+                                 AdmissionControl admissionControl) {
+        this.transport = transport;
         this.vertx = vertx;
         this.options = options;
+        this.connectedTemplate = connectedTemplate;
+        this.authenticationCache = authenticationCache;
+        this.admissionControl = admissionControl;
+        this.frameLimiter = admissionControl.frameLimiter();
+        this.byteLimiter = admissionControl.byteLimiter();
+        this.context = vertx.getOrCreateContext();
+        this.outboundWriter = new OutboundWriter(vertx,
+                                                 context,
+                                                 options,
+                                                 transport);
+        this.outboundWriter.overflowHandler(v -> onOutboundOverflow());
+        this.dispatcher = new HandlerDispatcher(context,
+                                                options,
+                                                () -> pause(PAUSED_BY_HANDLERS),
+                                                () -> resume(PAUSED_BY_HANDLERS));
 
         // Create new handler to do the bulk of the work..
         this.stompServerHandler = factory.create(this);
+        this.asyncHandler = stompServerHandler instanceof AsyncStompServerHandler
+                ? (AsyncStompServerHandler) stompServerHandler : null;
+
+        this.parser = StompFrameParser.create(options);
+        this.parser.errorHandler(exception -> {
+            if (connected) {
+                clientCausedException(exception, false);
+            } else {
+                clientCausedException(new InvalidConnectFrame("Error parsing connect frame", exception, preConnectData), false);
+            }
+        }).bodyStreamHandler(this::handleBodyStream)
+          .handler(this);
 
         if(log.isDebugEnabled()){
-            log.debug("New Stomp Connection. Host: {}", serverWebSocket.remoteAddress().host());
+            log.debug("New Stomp Connection. Host: {}", transport.remoteAddress().host());
         }
     }
 
     @Override
     public String binaryHandlerID() {
-        return serverWebSocket.binaryHandlerID();
+        return transport.binaryHandlerID();
     }
 
     @Override
     public String textHandlerID() {
-        return serverWebSocket.textHandlerID();
+        return transport.textHandlerID();
+    }
+
+    @Override
+    public Context context() {
+        return context;
     }
 
     @Override
     public SSLSession sslSession() {
-        return serverWebSocket.sslSession();
+        return transport.sslSession();
     }
 
     @Override
     public SocketAddress remoteAddress() {
-        return serverWebSocket.remoteAddress();
+        return transport.remoteAddress();
     }
 
     @Override
     public SocketAddress localAddress() {
-        return serverWebSocket.localAddress();
+        return transport.localAddress();
     }
 
     @Override
     public boolean isSsl() {
-        return serverWebSocket.isSsl();
+        return transport.isSsl();
     }
 
     @Override
     public Future<Void> write(Frame frame) {
-        return write(frame.toBuffer(options.isTrailingLine()));
+        Object conflationKey = null;
+        if (frame.getCommand() == Frame.Command.MESSAGE) {
+            conflationKey = conflationKey(frame.getHeaders(), null);
+        }
+        onServerActivity();
+        return outboundWriter.write(frame.toBuffer(options.isTrailingLine()), conflationKey);
+    }
+
+    @Override
+    public Future<Void> write(FrameTemplate template, Map<String, String> headers) {
+        Object conflationKey = null;
+        if (template.getCommand() == Frame.Command.MESSAGE) {
+            conflationKey = conflationKey(headers, template);
+        }
+        onServerActivity();
+        return outboundWriter.write(template.toBuffer(headers, options.isTrailingLine()), conflationKey);
     }
 
     @Override
     public Future<Void> write(Buffer buffer) {
         onServerActivity();
-        return serverWebSocket.writeBinaryMessage(buffer);
+        return outboundWriter.write(buffer);
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return outboundWriter.writeQueueFull();
+    }
+
+    @Override
+    public StompServerConnection drainHandler(Handler<Void> handler) {
+        outboundWriter.drainHandler(handler);
+        return this;
+    }
+
+    @Override
+    public long outboundQueueBytes() {
+        return outboundWriter.queuedBytes();
+    }
+
+    @Override
+    public int outboundQueueDepth() {
+        return outboundWriter.queuedMessages();
+    }
+
+    @Override
+    public StompServerConnection conflate(String keyHeader) {
+        conflationKeyHeader = keyHeader;
+        return this;
+    }
+
+    @Override
+    public StompServerConnection conflate(String subscriptionId, String keyHeader) {
+        Objects.requireNonNull(subscriptionId, "The subscription id must not be null");
+        if (keyHeader != null) {
+            subscriptionConflationKeyHeaders.put(subscriptionId, keyHeader);
+        } else {
+            subscriptionConflationKeyHeaders.remove(subscriptionId);
+        }
+        return this;
     }
 
     @Override
     public Future<Void> sendReceiptIfNeeded(Frame frame) {
         String receipt = frame.getReceipt();
         if (receipt != null) {
-            return write(Frames.createReceiptFrame(receipt, Headers.create()));
+            return write(Frames.createReceiptBuffer(receipt, options.isTrailingLine()));
         }else{
             return Future.succeededFuture();
         }
@@ -136,7 +268,7 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
     @Override
     public Future<Void> sendErrorAndDisconnect(Throwable throwable) {
         if(log.isDebugEnabled()){
-            log.debug("Sending Error and disconnecting client. Host: {}", serverWebSocket.remoteAddress().host(), throwable);
+            log.debug("Sending Error and disconnecting client. Host: {}", transport.remoteAddress().host(), throwable);
         }
         Promise<Void> ret = Promise.promise();
         sendError(throwable)
@@ -158,11 +290,7 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
      * @param sendErrorFrame true if an ERROR frame should be sent to the client prior to closing it
      */
     public void clientCausedException(Throwable t, boolean sendErrorFrame){
-        try {
-            stompServerHandler.exception(t);
-        } catch (Exception e) {
-            log.error("StompServerHandler.exception handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-        }
+        dispatcher.dispatch("exception", () -> stompServerHandler.exception(t));
         if(sendErrorFrame) {
             logIfFailed(sendErrorAndDisconnect(t),
                         "Problem sending ERROR frame to client");
@@ -173,33 +301,55 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
 
     @Override
     public void pause() {
-        if(!closed) {
-            serverWebSocket.pause();
-        }
+        onContext(() -> pause(PAUSED_BY_APPLICATION));
     }
 
     @Override
     public void resume() {
+        onContext(() -> resume(PAUSED_BY_APPLICATION));
+    }
+
+    private void pause(int reason) {
         if(!closed) {
-            serverWebSocket.resume();
+            if (pauseReasons == 0) {
+                transport.pause();
+            }
+            pauseReasons |= reason;
+        }
+    }
+
+    private void resume(int reason) {
+        if(!closed && (pauseReasons & reason) != 0) {
+            pauseReasons &= ~reason;
+            if (pauseReasons == 0) {
+                transport.resume();
+            }
         }
     }
 
     @Override
     public void fetch(long amount) {
         if(!closed) {
-            serverWebSocket.fetch(amount);
+            transport.fetch(amount);
         }
     }
 
     @Override
     public void close() {
+        if (Vertx.currentContext() != context) {
+            context.runOnContext(v -> close());
+            return;
+        }
         if(!closed) {
             if(log.isDebugEnabled()) {
-                log.debug("Closing Stomp Connection. Host: {}", serverWebSocket.remoteAddress().host());
+                log.debug("Closing Stomp Connection. Host: {}", transport.remoteAddress().host());
             }
 
             connected = false;
+            authenticating = false;
+            pipelinedFrames.clear();
+            // the frames held after a streamed body must not be handled once the stream fails below
+            parser.close();
 
             try {
                 cancelHeartbeat();
@@ -207,24 +357,57 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
                 log.error("StompServerHandler unhandled error on cancelHeartbeat", e);
             }
 
-            try {
+            if (bodyStream != null) {
+                try {
+                    bodyStream.fail(new VertxException("Connection was closed", true));
+                } catch (Exception e) {
+                    log.error("Body stream exception handler threw an exception.", e);
+                }
+                bodyStream = null;
+            }
 
-                //*** This must be called under all circumstances so the Handler can clean up any client subscriptions ***
-                stompServerHandler.closed();
+            //*** This must be called under all circumstances so the Handler can clean up any client subscriptions ***
+            dispatcher.dispatch("closed", stompServerHandler::closed);
 
-            } catch (Exception e) {
-                log.error("StompServerHandler.disconnected() handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-            }
+            // pending frames, such as an ERROR frame, are written before the socket is closed
+            outboundWriter.close();
 
             try {
-                if(!serverWebSocket.isClosed()) {
-                    serverWebSocket.close();
-                }
+                transport.close();
             } catch (Exception e) {
-                // Ignore it, the web socket has already been closed.
-                log.warn("Error closing serverWebSocket.", e);
+                // Ignore it, the socket has already been closed.
+                log.warn("Error closing socket.", e);
             }
             closed = true;
+
+            // the close handlers update the state of the routers on the event loop, so they are not dispatched. They are
+            // called once closed is set, so a handler added by one of them is called right away
+            for (Handler<Void> closeHandler : closeHandlers) {
+                callCloseHandler(closeHandler);
+            }
+            closeHandlers.clear();
+        }
+    }
+
+
+    @Override
+    public StompServerConnection addCloseHandler(Handler<Void> handler) {
+        Objects.requireNonNull(handler, "The handler must not be null");
+        onContext(() -> {
+            if (closed) {
+                callCloseHandler(handler);
+            } else {
+                closeHandlers.add(handler);
+            }
+        });
+        return this;
+    }
+
+    private static void callCloseHandler(Handler<Void> handler) {
+        try {
+            handler.handle(null);
+        } catch (Exception e) {
+            log.error("Close handler threw an exception.. You should fix your handler not to throw exceptions.", e);
         }
     }
 
@@ -233,99 +416,127 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
      ****                                            Handler Logic                                              ****
      ****                                                                                                       ****/
 
+    /**
+     * Handles the data received from the client. Until the client is connected at most
+     * {@link StompServerOptions#getMaxConnectFrameLength()} bytes are accepted, this covers the CONNECT frame and the
+     * frames pipelined after it.
+     * @param buffer the data, a WebSocket message or fragment or a chunk of the TCP stream
+     */
+    public void handleData(Buffer buffer) {
+        if (closed || rateLimitExceeded) {
+            return;
+        }
+        if (byteLimiter != null && !byteLimiter.tryAcquire(buffer.length())) {
+            admissionControl.bytesRejected();
+            onRateLimitExceeded("Client sent too many bytes per second");
+            return;
+        }
+        if (!connected) {
+            preConnectLength += buffer.length();
+            preConnectData = buffer;
+            if (preConnectLength > options.getMaxConnectFrameLength()) {
+                log.debug("Client sent a frame larger than the maximum allowed connect frame");
+                clientCausedException(
+                        new InvalidConnectFrame("Client sent a frame larger than the maximum allowed connect frame", buffer), false);
+                return;
+            }
+        }
+        parser.handle(buffer);
+    }
+
     @Override
     public void handle(Frame frame) {
-        if(!closed) {
+        if (rateLimitExceeded) {
+            return;
+        }
+        // heartbeats are only limited by the bytes they take
+        if (frameLimiter != null && frame.getCommand() != Frame.Command.PING && !frameLimiter.tryAcquire(1)) {
+            admissionControl.frameRejected();
+            onRateLimitExceeded("Client sent too many frames per second");
+            return;
+        }
+        dispatch(frame);
+    }
+
+    /**
+     * Handles a frame already charged to the rate limits, pipelined frames are replayed through this method
+     */
+    private void dispatch(Frame frame) {
+        if(!closed && !rateLimitExceeded) {
+            if (!connected && frame.getCommand() != Frame.Command.CONNECT) {
+                if (authenticating) {
+                    // pipelined after the CONNECT frame, handled once the CONNECTED frame has been sent
+                    if (frame.getCommand() != Frame.Command.PING) {
+                        pipelinedFrames.add(frame);
+                    }
+                } else {
+                    log.debug("Initial frame does not contain a connect command");
+                    clientCausedException(
+                            new InvalidConnectFrame("Initial frame does not contain a connect command", preConnectData), false);
+                }
+                return;
+            }
             try {
                 switch (frame.getCommand()) {
                     case CONNECT:
-                        if(connected){
+                        if(connected || authenticating){
                             clientCausedException(new IllegalStateException("CONNECT has already been called."), true);
+                        } else {
+                            onConnect(frame);
                         }
-                        onConnect(frame);
                         break;
                     case SEND:
                         ensureConnected();
                         onClientActivity();
-                        try {
-                            stompServerHandler.send(frame);
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.send handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
+                        invoke("send", frame, stompServerHandler::send, f -> asyncHandler.sendAsync(f));
                         break;
                     case SUBSCRIBE:
                         ensureConnected();
                         onClientActivity();
-                        try {
-                            stompServerHandler.subscribe(frame);
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.subscribe handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
+                        invoke("subscribe", frame, stompServerHandler::subscribe, f -> asyncHandler.subscribeAsync(f));
                         break;
                     case UNSUBSCRIBE:
                         ensureConnected();
                         onClientActivity();
-                        try {
-                            stompServerHandler.unsubscribe(frame);
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.unsubscribe handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
+                        invoke("unsubscribe", frame, stompServerHandler::unsubscribe, f -> asyncHandler.unsubscribeAsync(f));
                         break;
                     case BEGIN:
                         ensureConnected();
                         onClientActivity();
-                        try {
-                            stompServerHandler.begin(frame);
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.begin handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
+                        invoke("begin", frame, stompServerHandler::begin, f -> asyncHandler.beginAsync(f));
                         break;
                     case ABORT:
                         ensureConnected();
                         onClientActivity();
-                        try {
-                            stompServerHandler.abort(frame);
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.abort handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
+                        invoke("abort", frame, stompServerHandler::abort, f -> asyncHandler.abortAsync(f));
                         break;
                     case COMMIT:
                         ensureConnected();
                         onClientActivity();
-                        try {
-                            stompServerHandler.commit(frame);
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.commit handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
+                        invoke("commit", frame, stompServerHandler::commit, f -> asyncHandler.commitAsync(f));
                         break;
                     case ACK:
                         ensureConnected();
                         onClientActivity();
-                        try {
-                            stompServerHandler.ack(frame);
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.ack handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
+                        invoke("ack", frame, stompServerHandler::ack, f -> asyncHandler.ackAsync(f));
                         break;
                     case NACK:
                         ensureConnected();
                         onClientActivity();
-                        try {
-                            stompServerHandler.nack(frame);
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.nack handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
+                        invoke("nack", frame, stompServerHandler::nack, f -> asyncHandler.nackAsync(f));
                         break;
                     case DISCONNECT:
                         ensureConnected();
                         onClientActivity();
-                        sendReceiptIfNeeded(frame);
-                        try {
-                            stompServerHandler.disconnected();
-                        } catch (Exception e) {
-                            log.error("StompServerHandler.disconnected handler threw an exception.. You should fix your handler not to throw exceptions.", e);
-                        }
-                        close();
+                        // the frames received before are handled first, so the receipt acknowledges all of them
+                        dispatcher.dispatch("disconnected", () -> {
+                            try {
+                                sendReceiptIfNeeded(frame);
+                                stompServerHandler.disconnected();
+                            } finally {
+                                close();
+                            }
+                        });
                         break;
                     case PING:
                         ensureConnected();
@@ -342,6 +553,100 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
         }
     }
 
+    /**
+     * Handles a SEND frame whose body is streamed
+     * @param stream the body stream, providing the frame head
+     */
+    public void handleBodyStream(FrameBodyStream stream) {
+        if (rateLimitExceeded) {
+            stream.fail(new VertxException("Connection was closed", true));
+            return;
+        }
+        if (frameLimiter != null && !frameLimiter.tryAcquire(1)) {
+            admissionControl.frameRejected();
+            stream.fail(new VertxException("Connection was closed", true));
+            onRateLimitExceeded("Client sent too many frames per second");
+            return;
+        }
+        if(!closed) {
+            try {
+                ensureConnected();
+                onClientActivity();
+                bodyStream = stream;
+                stream.context(context)
+                      .sourceControl(() -> pause(PAUSED_BY_BODY_STREAM), () -> resume(PAUSED_BY_BODY_STREAM))
+                      .idleTimeout(options.getBodyStreamingIdleTimeout(), () -> {
+                          log.warn("The body of a SEND frame was not read for {} ms, closing the connection",
+                                   options.getBodyStreamingIdleTimeout());
+                          close();
+                      });
+                if (asyncHandler != null) {
+                    invokeAsync("send", stream.head(), () -> asyncHandler.sendAsync(stream.head(), stream));
+                } else {
+                    dispatcher.dispatch("send", () -> stompServerHandler.send(stream.head(), stream));
+                }
+            } catch (Exception e) {
+                clientCausedException(e, false);
+            }
+        } else {
+            log.error("THIS SHOULD NEVER HAPPEN!! Frame Handler called after close.");
+        }
+    }
+
+    /**
+     * Calls the handler for the given frame
+     * @param name the name of the callback, used when logging
+     * @param frame the frame
+     * @param callback the callback of a {@link StompServerHandler}
+     * @param asyncCallback the callback of an {@link AsyncStompServerHandler}, used if the handler is asynchronous
+     */
+    private void invoke(String name,
+                        Frame frame,
+                        Consumer<Frame> callback,
+                        Function<Frame, Future<Void>> asyncCallback) {
+        if (asyncHandler != null) {
+            invokeAsync(name, frame, () -> asyncCallback.apply(frame));
+        } else {
+            dispatcher.dispatch(name, () -> callback.accept(frame));
+        }
+    }
+
+    /**
+     * Calls an {@link AsyncStompServerHandler} callback and tracks its future, pausing the client while too many frames
+     * are being processed
+     */
+    private void invokeAsync(String name, Frame frame, Supplier<Future<Void>> asyncCallback) {
+        asyncFramesInFlight++;
+        if (asyncFramesInFlight > options.getMaxFramesInFlight()) {
+            pause(PAUSED_BY_ASYNC_HANDLERS);
+        }
+        dispatcher.dispatch(name, () -> {
+            Future<Void> future;
+            try {
+                future = asyncCallback.get();
+            } catch (Exception e) {
+                log.error("StompServerHandler." + name + " handler threw an exception.. You should fix your handler not to throw exceptions.", e);
+                future = Future.failedFuture(e);
+            }
+            if (future == null) {
+                future = Future.succeededFuture();
+            }
+            future.onComplete(ar -> onContext(() -> {
+                asyncFramesInFlight--;
+                if (asyncFramesInFlight <= options.getMaxFramesInFlight() / 2) {
+                    resume(PAUSED_BY_ASYNC_HANDLERS);
+                }
+                if (!closed) {
+                    if (ar.succeeded()) {
+                        logIfFailed(sendReceiptIfNeeded(frame), "Problem sending RECEIPT frame to client");
+                    } else {
+                        clientCausedException(ar.cause(), true);
+                    }
+                }
+            }));
+        });
+    }
+
     private void ensureConnected() {
         if (!connected) {
             throw new IllegalStateException("Client must provide a connect frame before any other frames");
@@ -368,54 +673,94 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
             throw new IllegalStateException("Client protocol requirement does not mach versions supported by the server.");
         }
 
+        if (!admissionControl.acquireAuthentication()) {
+            log.debug("Too many pending authentications, rejecting client. Host: {}", transport.remoteAddress().host());
+            logIfFailed(sendErrorAndDisconnect(new IllegalStateException("Too many pending authentications, try again later")),
+                        "Problem Sending Authentication Error to client");
+            return;
+        }
+
+        authenticating = true;
+
         // Now authenticate client providing headers passed to CONNECT frame
-        stompServerHandler
-                .authenticate(frame.getHeaders())
-                .onComplete(authenticatePromise -> {
-
-                    if (authenticatePromise.succeeded()) {
-
-                        Headers headers = Headers.create(authenticatePromise.result());
-                        headers.add(Frame.VERSION,
-                                    version); // Spec says: The server will respond back with the highest version of the protocol -> version
-                        headers.add(Frame.HEARTBEAT, Frame.Heartbeat.create(options.getHeartbeat()).toString());
-
-                        write(new Frame(Frame.Command.CONNECTED, headers, null))
-                                .onComplete(ar -> {
-                                    if (ar.succeeded()) {
-                                        // now that we are connected Compute heartbeat, and register serverHeartbeat and clientHeartbeat
-                                        Frame.Heartbeat clientHeartbeat = Frame.Heartbeat.parse(frame.getHeader(Frame.HEARTBEAT));
-                                        Frame.Heartbeat serverHeartbeat = Frame.Heartbeat.create(options.getHeartbeat());
-                                        long clientHeartbeatPeriod = Frame.Heartbeat.computeClientHeartbeatPeriod(clientHeartbeat,
-                                                                                                                  serverHeartbeat);
-                                        long serverHeartbeatPeriod = Frame.Heartbeat.computeServerHeartbeatPeriod(clientHeartbeat,
-                                                                                                                  serverHeartbeat);
-
-                                        onClientActivity();
-
-                                        configureHeartbeat(clientHeartbeatPeriod, serverHeartbeatPeriod);
-
-                                        if (log.isDebugEnabled()) {
-                                            log.debug("Stomp client authenticated. Host: {}",
-                                                      serverWebSocket.remoteAddress().host());
-                                        }
-
-                                        connected = true;
-                                    } else {
-                                        if (log.isDebugEnabled()) {
-                                            log.debug("Could not send CONNECTED frame. Host: {}",
-                                                      serverWebSocket.remoteAddress().host(),
-                                                      ar.cause());
-                                        }
-                                        close(); // cleanup
-                                    }
-                                });
+        dispatcher.dispatch("authenticate", () -> {
+            Future<Map<String, String>> authentication;
+            try {
+                if (authenticationCache != null) {
+                    authentication = authenticationCache.authenticate(frame.getHeaders(), stompServerHandler::authenticate);
+                } else {
+                    authentication = stompServerHandler.authenticate(frame.getHeaders());
+                }
+            } catch (Exception e) {
+                admissionControl.releaseAuthentication();
+                onContext(() -> clientCausedException(e, false));
+                return;
+            }
+            // the authentication may complete on any thread
+            authentication.onComplete(authenticatePromise -> admissionControl.releaseAuthentication());
+            authentication.onComplete(authenticatePromise -> onContext(() -> {
 
-                    } else {
-                        logIfFailed(sendErrorAndDisconnect(authenticatePromise.cause()),
-                                    "Problem Sending Authentication Error to client");
+                if (authenticatePromise.succeeded()) {
+
+                    // Spec says: The server will respond back with the highest version of the protocol -> version
+                    FrameTemplate template = connectedTemplate;
+                    if (!version.equals(template.getHeader(Frame.VERSION))) {
+                        template = Frames.createConnectedTemplate(version, Frame.Heartbeat.create(options.getHeartbeat()));
                     }
-                });
+                    // The version and heart-beat headers of the template take precedence
+                    Map<String, String> headers = authenticatePromise.result();
+                    if (headers != null && (headers.containsKey(Frame.VERSION) || headers.containsKey(Frame.HEARTBEAT))) {
+                        headers = Headers.create(headers);
+                        headers.remove(Frame.VERSION);
+                        headers.remove(Frame.HEARTBEAT);
+                    }
+
+                    write(template, headers)
+                            .onComplete(ar -> {
+                                if (ar.succeeded()) {
+                                    // now that we are connected Compute heartbeat, and register serverHeartbeat and clientHeartbeat
+                                    Frame.Heartbeat clientHeartbeat = Frame.Heartbeat.parse(frame.getHeader(Frame.HEARTBEAT));
+                                    Frame.Heartbeat serverHeartbeat = Frame.Heartbeat.create(options.getHeartbeat());
+                                    long clientHeartbeatPeriod = Frame.Heartbeat.computeClientHeartbeatPeriod(clientHeartbeat,
+                                                                                                              serverHeartbeat);
+                                    long serverHeartbeatPeriod = Frame.Heartbeat.computeServerHeartbeatPeriod(clientHeartbeat,
+                                                                                                              serverHeartbeat);
+
+                                    onClientActivity();
+
+                                    configureHeartbeat(clientHeartbeatPeriod, serverHeartbeatPeriod);
+
+                                    if (log.isDebugEnabled()) {
+                                        log.debug("Stomp client authenticated. Host: {}",
+                                                  transport.remoteAddress().host());
+                                    }
+
+                                    connected = true;
+                                    authenticating = false;
+                                    preConnectData = null;
+
+                                    // the frames pipelined by the client are handled in the order they were received
+                                    Frame pipelined;
+                                    while (!closed && (pipelined = pipelinedFrames.poll()) != null) {
+                                        // already charged to the frame limiter when received
+                                        dispatch(pipelined);
+                                    }
+                                } else {
+                                    if (log.isDebugEnabled()) {
+                                        log.debug("Could not send CONNECTED frame. Host: {}",
+                                                  transport.remoteAddress().host(),
+                                                  ar.cause());
+                                    }
+                                    close(); // cleanup
+                                }
+                            });
+
+                } else {
+                    logIfFailed(sendErrorAndDisconnect(authenticatePromise.cause()),
+                                "Problem Sending Authentication Error to client");
+                }
+            }));
+        });
     }
 
     private String negotiate(List<String> accepted) {
@@ -429,14 +774,14 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
     }
 
     private void cancelHeartbeat() {
-        if (serverHeartbeat >= 0) {
-            vertx.cancelTimer(serverHeartbeat);
-            serverHeartbeat = -1;
-        }
-
-        if (clientHeartbeat >= 0) {
-            vertx.cancelTimer(clientHeartbeat);
-            clientHeartbeat = -1;
+        if (heartbeatTimeout != null) {
+            HeartbeatWheel.Timeout timeout = heartbeatTimeout;
+            heartbeatTimeout = null;
+            if (Vertx.currentContext() == context) {
+                heartbeatWheel.cancel(timeout);
+            } else {
+                context.runOnContext(v -> heartbeatWheel.cancel(timeout));
+            }
         }
     }
 
@@ -450,33 +795,136 @@ class DefaultStompServerConnection implements Handler<Frame>, StompServerConnect
 
     private void ping() {
         // we send directly so we do not increment serverActivity since we do not want pings to count towards that metric
-        serverWebSocket.writeBinaryMessage(Buffer.buffer(FrameParser.EOL));
+        transport.write(Frames.PING_BUFFER);
     }
 
     private void configureHeartbeat(long clientHeartbeatPeriod, long serverHeartbeatPeriod) {
-        if (serverHeartbeatPeriod > 0) {
-            serverHeartbeat = vertx.setPeriodic(serverHeartbeatPeriod, event -> {
-                long delta = System.nanoTime() - lastServerActivity;
-                final long deltaInMs = TimeUnit.MILLISECONDS.convert(delta, TimeUnit.NANOSECONDS);
-                if (deltaInMs >= serverHeartbeatPeriod) {
-                    ping();
-                }
-            });
+        this.clientHeartbeatPeriod = clientHeartbeatPeriod;
+        this.serverHeartbeatPeriod = serverHeartbeatPeriod;
+        if (serverHeartbeatPeriod > 0 || clientHeartbeatPeriod > 0) {
+            lastPing = System.nanoTime();
+            heartbeatWheel = HeartbeatWheel.get(vertx, context, options.getHeartbeatTick());
+            heartbeatTimeout = heartbeatWheel.schedule(nextHeartbeatCheck(), this::checkHeartbeat);
+        }
+    }
+
+    /**
+     * Called by the {@link HeartbeatWheel} when a heartbeat may be due
+     * @param now the current {@link System#nanoTime()}
+     * @return the time of the next check or {@link HeartbeatWheel.Check#STOP} if the connection was closed
+     */
+    private long checkHeartbeat(long now) {
+        if (closed) {
+            return HeartbeatWheel.Check.STOP;
         }
         if (clientHeartbeatPeriod > 0) {
-            clientHeartbeat = vertx.setPeriodic(clientHeartbeatPeriod, l -> {
-                long delta = System.nanoTime() - lastClientActivity;
-                final long deltaInMs = TimeUnit.MILLISECONDS.convert(delta, TimeUnit.NANOSECONDS);
-                if (deltaInMs > clientHeartbeatPeriod * 2) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Disconnecting client {} - no client activity in the last {} ms",
-                                  serverWebSocket.remoteAddress().host(),
-                                  deltaInMs);
-                    }
-                    close();
+            long deltaInMs = TimeUnit.MILLISECONDS.convert(now - lastClientActivity, TimeUnit.NANOSECONDS);
+            if (deltaInMs > clientHeartbeatPeriod * 2) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Disconnecting client {} - no client activity in the last {} ms",
+                              transport.remoteAddress().host(),
+                              deltaInMs);
                 }
-            });
+                close();
+                return HeartbeatWheel.Check.STOP;
+            }
+        }
+        if (serverHeartbeatPeriod > 0) {
+            // pings do not count as server activity, they are sent every period while the server is idle
+            long deltaInMs = TimeUnit.MILLISECONDS.convert(now - lastServerBeat(), TimeUnit.NANOSECONDS);
+            if (deltaInMs >= serverHeartbeatPeriod) {
+                ping();
+                lastPing = now;
+            }
+        }
+        return nextHeartbeatCheck();
+    }
+
+    private long lastServerBeat() {
+        // nano times must be compared through their difference
+        return lastPing - lastServerActivity > 0 ? lastPing : lastServerActivity;
+    }
+
+    private long nextHeartbeatCheck() {
+        long now = System.nanoTime();
+        long delay = Long.MAX_VALUE;
+        if (clientHeartbeatPeriod > 0) {
+            delay = lastClientActivity + TimeUnit.MILLISECONDS.toNanos(clientHeartbeatPeriod * 2) + 1 - now;
+        }
+        if (serverHeartbeatPeriod > 0) {
+            delay = Math.min(delay, lastServerBeat() + TimeUnit.MILLISECONDS.toNanos(serverHeartbeatPeriod) - now);
+        }
+        return now + delay;
+    }
+
+    /**
+     * Runs the given action on the context of this connection, immediately if already on it
+     */
+    private void onContext(Runnable action) {
+        if (Vertx.currentContext() == context) {
+            action.run();
+        } else {
+            context.runOnContext(v -> action.run());
+        }
+    }
+
+    /**
+     * Sends an ERROR frame and disconnects the client, the data it sends until then is ignored
+     */
+    private void onRateLimitExceeded(String message) {
+        if(log.isDebugEnabled()){
+            log.debug("Disconnecting client {} - {}", transport.remoteAddress().host(), message);
+        }
+        rateLimitExceeded = true;
+        transport.pause();
+        clientCausedException(new IllegalStateException(message), true);
+    }
+
+    private void onOutboundOverflow() {
+        if(log.isDebugEnabled()){
+            log.debug("Disconnecting client {} - outbound queue is full", transport.remoteAddress().host());
+        }
+        // the queue has been emptied, so the ERROR frame is written before the socket is closed
+        write(Frames.createErrorFrame(new IllegalStateException("Client does not consume frames fast enough"),
+                                      options.isDebugEnabled()));
+        close();
+    }
+
+    /**
+     * Computes the key identifying the MESSAGE frames replacing each other when conflation is enabled
+     * @param headers the headers of the frame, or the headers specific to this connection when a template is used
+     * @param template the template providing the other headers, may be null
+     * @return the key or null if the frame must not be conflated
+     */
+    private Object conflationKey(Map<String, String> headers, FrameTemplate template) {
+        String keyHeader = conflationKeyHeader;
+        if (keyHeader == null && subscriptionConflationKeyHeaders.isEmpty()) {
+            return null;
+        }
+        String subscription = header(headers, template, Frame.SUBSCRIPTION);
+        if (subscription != null) {
+            String subscriptionKeyHeader = subscriptionConflationKeyHeaders.get(subscription);
+            if (subscriptionKeyHeader != null) {
+                keyHeader = subscriptionKeyHeader;
+            }
+        }
+        if (keyHeader == null) {
+            return null;
+        }
+        String value = header(headers, template, keyHeader);
+        if (value == null) {
+            return null;
+        }
+        // frames of different subscriptions never replace each other
+        return subscription != null ? subscription + '\0' + value : value;
+    }
+
+    private static String header(Map<String, String> headers, FrameTemplate template, String name) {
+        String value = headers != null ? headers.get(name) : null;
+        if (value == null && template != null) {
+            value = template.getHeader(name);
         }
+        return value;
     }
 
     private void logIfFailed(Future<Void> future, String message){
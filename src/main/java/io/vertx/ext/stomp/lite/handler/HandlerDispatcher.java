@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Context;
+import io.vertx.ext.stomp.lite.HandlerExecutionMode;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the {@link io.vertx.ext.stomp.lite.StompServerHandler} callbacks of a connection according to the
+ * {@link HandlerExecutionMode}.
+ * <p></p>
+ * With {@link HandlerExecutionMode#EVENT_LOOP} the callbacks run immediately. With
+ * {@link HandlerExecutionMode#VIRTUAL_THREAD} they are queued and run one at a time by a virtual thread, which is
+ * started when the queue becomes non empty and ends when it is drained, so the callbacks of a connection keep the
+ * order of the frames. When more than {@link StompServerOptions#getMaxFramesInFlight()} callbacks are queued the
+ * source is paused, it is resumed once half of them have run.
+ * <p></p>
+ * {@link #dispatch(String, Runnable)} must be called from the context of the connection.
+ */
+class HandlerDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(HandlerDispatcher.class);
+
+    private final Context context;
+    private final boolean virtualThreads;
+    private final int maxInFlight;
+    private final Runnable pauseSource;
+    private final Runnable resumeSource;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean sourcePaused = false;
+
+    /**
+     * @param context      the context of the connection
+     * @param options      the options providing the execution mode
+     * @param pauseSource  pauses the reading of the connection, called on the context
+     * @param resumeSource resumes the reading of the connection, called on the context
+     */
+    HandlerDispatcher(Context context, StompServerOptions options, Runnable pauseSource, Runnable resumeSource) {
+        this.context = context;
+        this.virtualThreads = options.getHandlerExecutionMode() == HandlerExecutionMode.VIRTUAL_THREAD;
+        this.maxInFlight = Math.max(1, options.getMaxFramesInFlight());
+        this.pauseSource = pauseSource;
+        this.resumeSource = resumeSource;
+    }
+
+    /**
+     * Runs the given callback, exceptions are logged.
+     *
+     * @param name the name of the callback, used when logging
+     * @param task the callback
+     */
+    void dispatch(String name, Runnable task) {
+        if (!virtualThreads) {
+            run(name, task);
+            return;
+        }
+        tasks.add(() -> run(name, task));
+        if (inFlight.incrementAndGet() > maxInFlight && !sourcePaused) {
+            sourcePaused = true;
+            pauseSource.run();
+        }
+        if (running.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("stomp-handler").start(this::drain);
+        }
+    }
+
+    private void drain() {
+        do {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } finally {
+                    if (inFlight.decrementAndGet() <= maxInFlight / 2 && sourcePaused) {
+                        context.runOnContext(v -> resumeIfDrained());
+                    }
+                }
+            }
+            running.set(false);
+            // a task may have been queued after the poll but before running was reset
+        } while (!tasks.isEmpty() && running.compareAndSet(false, true));
+    }
+
+    private void resumeIfDrained() {
+        if (sourcePaused && inFlight.get() <= maxInFlight / 2) {
+            sourcePaused = false;
+            resumeSource.run();
+        }
+    }
+
+    private static void run(String name, Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("StompServerHandler." + name + " handler threw an exception.. You should fix your handler not to throw exceptions.", e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel checking the heartbeats of all the connections of a context with a single periodic timer.
+ * <p></p>
+ * Each connection registers one {@link Timeout} holding the time of its next check. The wheel has {@value #SLOTS}
+ * slots, each one spanning one tick, a timeout is placed in the slot of its deadline and counts the number of full
+ * rotations left before it expires. Every tick only the timeouts of one slot are looked at, so the cost of a tick
+ * depends on the number of checks due rather than on the number of connections.
+ * <p></p>
+ * One wheel is shared by all the connections of a context, see {@link #get(Vertx, Context, long)}. This class is
+ * <strong>NOT</strong> thread-safe, it must only be used from its context.
+ */
+class HeartbeatWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(HeartbeatWheel.class);
+
+    private static final int SLOTS = 512;
+    private static final int MASK = SLOTS - 1;
+
+    /**
+     * Checks the heartbeats of a connection
+     */
+    interface Check {
+
+        /**
+         * Returned by {@link #check(long)} to stop the checks. Nano times have an arbitrary origin and may be negative,
+         * so no sign can be used as a sentinel.
+         */
+        long STOP = Long.MIN_VALUE;
+
+        /**
+         * @param now the current {@link System#nanoTime()}
+         * @return the {@link System#nanoTime()} at which to check again, or {@link #STOP} to stop the checks
+         */
+        long check(long now);
+    }
+
+    private final Vertx vertx;
+    private final long tickNanos;
+    private final long tickMillis;
+    private final Timeout[] slots = new Timeout[SLOTS];
+    private long startTime;
+    private long tick = 0;
+    private int size = 0;
+    private long timer = -1;
+
+    private HeartbeatWheel(Vertx vertx, long tickMillis) {
+        this.vertx = vertx;
+        this.tickMillis = tickMillis;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    }
+
+    /**
+     * Gets the wheel of the given context, creating it if needed.
+     *
+     * @param vertx      the vertx instance
+     * @param context    the context of the connections
+     * @param tickMillis the duration of a tick, used when the wheel is created
+     * @return the wheel
+     */
+    static HeartbeatWheel get(Vertx vertx, Context context, long tickMillis) {
+        HeartbeatWheel wheel = context.get(HeartbeatWheel.class);
+        if (wheel == null) {
+            wheel = new HeartbeatWheel(vertx, tickMillis);
+            context.put(HeartbeatWheel.class, wheel);
+        }
+        return wheel;
+    }
+
+    /**
+     * Schedules a check.
+     *
+     * @param deadline the {@link System#nanoTime()} at which to run the check
+     * @param check    the check to run, it reschedules itself through its return value
+     * @return the timeout, used to cancel the checks
+     */
+    Timeout schedule(long deadline, Check check) {
+        Timeout timeout = new Timeout(check);
+        if (timer < 0) {
+            startTime = System.nanoTime();
+            tick = 0;
+            timer = vertx.setPeriodic(tickMillis, id -> onTick());
+        }
+        add(timeout, deadline);
+        return timeout;
+    }
+
+    /**
+     * Cancels the checks of the given timeout.
+     */
+    void cancel(Timeout timeout) {
+        // the timer is stopped by the next tick if the wheel is empty
+        if (timeout.slot >= 0) {
+            remove(timeout);
+        }
+        timeout.cancelled = true;
+    }
+
+    private void onTick() {
+        long now = System.nanoTime();
+        // Catches up when the event loop was busy, the ticks must follow the time elapsed
+        long target = (now - startTime) / tickNanos;
+        while (tick < target) {
+            tick++;
+            expire((int) (tick & MASK), now);
+        }
+        if (size == 0 && timer >= 0) {
+            vertx.cancelTimer(timer);
+            timer = -1;
+        }
+    }
+
+    private void expire(int slot, long now) {
+        // Detaches the expired timeouts first, the checks may schedule timeouts in the same slot
+        Timeout expired = null;
+        Timeout timeout = slots[slot];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                remove(timeout);
+                timeout.next = expired;
+                expired = timeout;
+            }
+            timeout = next;
+        }
+
+        while (expired != null) {
+            Timeout next = expired.next;
+            expired.next = null;
+            long deadline = Check.STOP;
+            try {
+                deadline = expired.check.check(now);
+            } catch (Exception e) {
+                log.error("Heartbeat check threw an exception.", e);
+            }
+            if (deadline != Check.STOP && !expired.cancelled) {
+                add(expired, deadline);
+            }
+            expired = next;
+        }
+    }
+
+    private void add(Timeout timeout, long deadline) {
+        // At least one tick ahead, the current slot has already been processed
+        long ticks = Math.max(1, (deadline - startTime + tickNanos - 1) / tickNanos - tick);
+        long target = tick + ticks;
+        timeout.rounds = (ticks - 1) / SLOTS;
+        timeout.slot = (int) (target & MASK);
+        timeout.prev = null;
+        timeout.next = slots[timeout.slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[timeout.slot] = timeout;
+        size++;
+    }
+
+    private void remove(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        size--;
+    }
+
+    /**
+     * The registration of a connection in the wheel
+     */
+    static final class Timeout {
+
+        private final Check check;
+        private long rounds;
+        private int slot = -1;
+        private boolean cancelled = false;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Check check) {
+            this.check = check;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.net.SocketAddress;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * STOMP over a raw TCP connection, the frames are written to the socket as is
+ */
+final class NetSocketTransport implements StompTransport {
+
+    private final NetSocket socket;
+    private boolean closed = false;
+
+    NetSocketTransport(NetSocket socket) {
+        this.socket = socket;
+    }
+
+    @Override
+    public Future<Void> write(Buffer buffer) {
+        return socket.write(buffer);
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return socket.writeQueueFull();
+    }
+
+    @Override
+    public void drainHandler(Handler<Void> handler) {
+        socket.drainHandler(handler);
+    }
+
+    @Override
+    public void pause() {
+        socket.pause();
+    }
+
+    @Override
+    public void resume() {
+        socket.resume();
+    }
+
+    @Override
+    public void fetch(long amount) {
+        socket.fetch(amount);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            socket.close();
+        }
+    }
+
+    /**
+     * A TCP connection only has a binary write handler, which is registered when
+     * {@link io.vertx.core.net.NetServerOptions#setRegisterWriteHandler(boolean)} is enabled
+     */
+    @Override
+    public String binaryHandlerID() {
+        return socket.writeHandlerID();
+    }
+
+    @Override
+    public String textHandlerID() {
+        return null;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return socket.remoteAddress();
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return socket.localAddress();
+    }
+
+    @Override
+    public boolean isSsl() {
+        return socket.isSsl();
+    }
+
+    @Override
+    public SSLSession sslSession() {
+        return socket.sslSession();
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.netty.channel.EventLoop;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxException;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.internal.ContextInternal;
+import io.vertx.ext.stomp.lite.OutboundOverflowPolicy;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+import io.vertx.ext.stomp.lite.frame.Buffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the outbound data of a connection to the underlying socket.
+ * <p></p>
+ * When write coalescing is enabled the buffers written during one event loop turn are gathered and flushed together
+ * as a single write, see {@link StompServerOptions#isWriteCoalescingEnabled()}. Each write still gets its own
+ * future, completed once the message holding it has been written.
+ * <p></p>
+ * While the write queue of the socket is full, messages are held in a bounded queue and written when the socket
+ * drains. Once the queue holds more than {@link StompServerOptions#getOutboundQueueHighWatermark()} bytes the
+ * {@link OutboundOverflowPolicy} applies, and the drain handler is called when it goes under
+ * {@link StompServerOptions#getOutboundQueueLowWatermark()} bytes. With {@link OutboundOverflowPolicy#BLOCK} the queue
+ * keeps growing up to {@link StompServerOptions#getOutboundQueueMaxBytes()}, past which the connection is closed. A message written with a conflation key replaces the
+ * queued message having the same key, so only the latest value per key waits for the socket.
+ * <p></p>
+ * All the work happens on the event loop of the connection, writes issued from another thread are handed over to its
+ * context. Writes issued on the same event loop from another context, such as a router delivering a message to all the
+ * connections of a loop, are done immediately.
+ * This class is <strong>NOT</strong> thread-safe except for {@link #write(Buffer)} and the queue getters.
+ */
+class OutboundWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundWriter.class);
+
+    private final Vertx vertx;
+    private final Context context;
+    private final EventLoop eventLoop;
+    private final StompTransport socket;
+    private final boolean coalescing;
+    private final int maxBytes;
+    private final long maxDelay;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final int maxQueueBytes;
+    private final OutboundOverflowPolicy overflowPolicy;
+
+    private final List<Buffer> pending = new ArrayList<>();
+    private final List<Promise<Void>> promises = new ArrayList<>();
+    private int pendingBytes = 0;
+    private boolean flushScheduled = false;
+    private long flushTimer = -1;
+
+    private final ArrayDeque<Message> queue = new ArrayDeque<>();
+    private final Map<Object, Message> conflated = new HashMap<>();
+    private volatile long queuedBytes = 0;
+    private volatile int queuedMessages = 0;
+    private boolean full = false;
+    private Handler<Void> drainHandler;
+    private Handler<Void> overflowHandler;
+
+    private boolean closed = false;
+
+    /**
+     * @param vertx   the vertx instance
+     * @param context the context of the connection
+     * @param options the server options providing the coalescing and queue configuration
+     * @param socket  the socket, each message is written with a single write
+     */
+    OutboundWriter(Vertx vertx, Context context, StompServerOptions options, StompTransport socket) {
+        this.vertx = vertx;
+        this.context = context;
+        this.eventLoop = ((ContextInternal) context).nettyEventLoop();
+        this.socket = socket;
+        this.coalescing = options.isWriteCoalescingEnabled();
+        this.maxBytes = options.getWriteCoalescingMaxBytes();
+        this.maxDelay = options.getWriteCoalescingMaxDelay();
+        this.highWatermark = options.getOutboundQueueHighWatermark();
+        this.lowWatermark = options.getOutboundQueueLowWatermark();
+        this.maxQueueBytes = Math.max(options.getOutboundQueueMaxBytes(), highWatermark);
+        this.overflowPolicy = options.getOutboundOverflowPolicy();
+        socket.drainHandler(v -> drain());
+    }
+
+    /**
+     * Sets the handler called when the queue goes under the low watermark after having been full.
+     */
+    void drainHandler(Handler<Void> drainHandler) {
+        this.drainHandler = drainHandler;
+    }
+
+    /**
+     * Sets the handler called when the queue is full and the policy is {@link OutboundOverflowPolicy#DISCONNECT}, or
+     * when it exceeds the max bytes with {@link OutboundOverflowPolicy#BLOCK}.
+     */
+    void overflowHandler(Handler<Void> overflowHandler) {
+        this.overflowHandler = overflowHandler;
+    }
+
+    /**
+     * @return true if the queue holds more than the high watermark
+     */
+    boolean writeQueueFull() {
+        return queuedBytes >= highWatermark;
+    }
+
+    /**
+     * @return the number of bytes waiting for the socket to drain
+     */
+    long queuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * @return the number of messages waiting for the socket to drain
+     */
+    int queuedMessages() {
+        return queuedMessages;
+    }
+
+    /**
+     * Writes the given buffer. Can be called from any thread.
+     *
+     * @param buffer the buffer
+     * @return a future completed once the buffer has been written to the socket
+     */
+    Future<Void> write(Buffer buffer) {
+        return write(buffer, null);
+    }
+
+    /**
+     * Writes the given buffer. Can be called from any thread.
+     *
+     * @param buffer        the buffer
+     * @param conflationKey if not {@code null} the buffer replaces a queued buffer having the same key
+     * @return a future completed once the buffer has been written to the socket, failed if the buffer is replaced
+     */
+    Future<Void> write(Buffer buffer, Object conflationKey) {
+        Promise<Void> promise = Promise.promise();
+        if (eventLoop.inEventLoop()) {
+            accept(buffer, promise, conflationKey);
+        } else {
+            context.runOnContext(v -> accept(buffer, promise, conflationKey));
+        }
+        return promise.future();
+    }
+
+    /**
+     * Writes the gathered buffers now.
+     */
+    void flush() {
+        flushScheduled = false;
+        if (flushTimer >= 0) {
+            vertx.cancelTimer(flushTimer);
+            flushTimer = -1;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Buffer message = pending.size() == 1 ? pending.get(0) : Buffers.composite(pending.toArray(new Buffer[0]));
+        List<Promise<Void>> completed = new ArrayList<>(promises);
+        pending.clear();
+        promises.clear();
+        pendingBytes = 0;
+
+        submit(new Message(message, completed, null));
+    }
+
+    /**
+     * Writes everything pending to the socket regardless of its write queue, the following writes fail.
+     */
+    void close() {
+        if (!closed) {
+            flush();
+            closed = true;
+            Message message;
+            while ((message = queue.poll()) != null) {
+                send(message);
+            }
+            conflated.clear();
+            queuedBytes = 0;
+            queuedMessages = 0;
+        }
+    }
+
+    private void accept(Buffer buffer, Promise<Void> promise, Object conflationKey) {
+        if (closed) {
+            promise.fail(new VertxException("Connection was closed", true));
+            return;
+        }
+        if (conflationKey != null && (!queue.isEmpty() || socket.writeQueueFull())) {
+            // backpressured, the frame is queued on its own so that it can be replaced
+            flush();
+            submit(new Message(buffer, Collections.singletonList(promise), conflationKey));
+            return;
+        }
+        if (!coalescing) {
+            submit(new Message(buffer, Collections.singletonList(promise), null));
+            return;
+        }
+        pending.add(buffer);
+        promises.add(promise);
+        pendingBytes += buffer.length();
+        if (pendingBytes >= maxBytes) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            if (maxDelay > 0) {
+                flushTimer = vertx.setTimer(maxDelay, id -> {
+                    flushTimer = -1;
+                    flush();
+                });
+            } else {
+                // runs once the tasks already queued on the event loop, such as the pending reads, are done
+                context.runOnContext(v -> flush());
+            }
+        }
+    }
+
+    private void submit(Message message) {
+        if (queue.isEmpty() && !socket.writeQueueFull()) {
+            send(message);
+            return;
+        }
+
+        int length = message.buffer.length();
+        if (message.conflationKey != null) {
+            Message previous = conflated.get(message.conflationKey);
+            if (previous != null) {
+                // keeps the position of the replaced message in the queue
+                previous.fail(new VertxException("Frame replaced by a newer one", true));
+                queuedBytes += length - previous.buffer.length();
+                previous.buffer = message.buffer;
+                previous.promises = message.promises;
+                if (!full && queuedBytes >= highWatermark) {
+                    full = true;
+                }
+                return;
+            }
+        }
+
+        if (!closed && queuedBytes + length > highWatermark) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    message.fail(new VertxException("Outbound queue is full, frame dropped", true));
+                    return;
+                case DROP_OLDEST:
+                    while (!queue.isEmpty() && queuedBytes + length > highWatermark) {
+                        dequeue().fail(new VertxException("Outbound queue is full, frame dropped", true));
+                    }
+                    break;
+                case DISCONNECT:
+                    overflow(message);
+                    return;
+                default:
+                    // BLOCK, producers are told through writeQueueFull(), those ignoring it are stopped at the max
+                    if (queuedBytes + length > maxQueueBytes) {
+                        overflow(message);
+                        return;
+                    }
+            }
+        }
+
+        queue.add(message);
+        if (message.conflationKey != null) {
+            conflated.put(message.conflationKey, message);
+        }
+        queuedBytes += length;
+        queuedMessages++;
+        if (!full && queuedBytes >= highWatermark) {
+            full = true;
+        }
+    }
+
+    /**
+     * Drops the given message and the queued ones, then notifies the overflow handler which closes the connection
+     */
+    private void overflow(Message message) {
+        message.fail(new VertxException("Outbound queue is full", true));
+        // the connection is closed, the drain handler must not be called
+        full = false;
+        Message dropped;
+        while ((dropped = dequeue()) != null) {
+            dropped.fail(new VertxException("Outbound queue is full", true));
+        }
+        if (overflowHandler != null) {
+            overflowHandler.handle(null);
+        }
+    }
+
+    private void drain() {
+        while (!queue.isEmpty() && !socket.writeQueueFull()) {
+            send(dequeue());
+        }
+    }
+
+    private Message dequeue() {
+        Message message = queue.poll();
+        if (message != null) {
+            if (message.conflationKey != null) {
+                conflated.remove(message.conflationKey);
+            }
+            queuedBytes -= message.buffer.length();
+            queuedMessages--;
+            if (full && queuedBytes <= lowWatermark) {
+                full = false;
+                if (drainHandler != null) {
+                    try {
+                        drainHandler.handle(null);
+                    } catch (Exception e) {
+                        log.error("Drain handler threw an exception.. You should fix your handler not to throw exceptions.", e);
+                    }
+                }
+            }
+        }
+        return message;
+    }
+
+    private void send(Message message) {
+        socket.write(message.buffer).onComplete(ar -> {
+            if (ar.succeeded()) {
+                message.complete();
+            } else {
+                message.fail(ar.cause());
+            }
+        });
+    }
+
+    /**
+     * A buffer written as a single message and the promises of the frames it holds
+     */
+    private static final class Message {
+
+        private final Object conflationKey;
+        private Buffer buffer;
+        private List<Promise<Void>> promises;
+
+        private Message(Buffer buffer, List<Promise<Void>> promises, Object conflationKey) {
+            this.buffer = buffer;
+            this.promises = promises;
+            this.conflationKey = conflationKey;
+        }
+
+        private void complete() {
+            for (Promise<Void> promise : promises) {
+                promise.complete();
+            }
+        }
+
+        private void fail(Throwable cause) {
+            for (Promise<Void> promise : promises) {
+                promise.fail(cause);
+            }
+        }
+    }
+}
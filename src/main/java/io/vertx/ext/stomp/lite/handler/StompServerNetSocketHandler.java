@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxException;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.stomp.lite.AdmissionStats;
+import io.vertx.ext.stomp.lite.StompServerHandlerFactory;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+import io.vertx.ext.stomp.lite.frame.Frames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handles STOMP clients connecting over raw TCP. The frames are parsed from the byte stream as it is received, so a
+ * frame may span several reads.
+ */
+public class StompServerNetSocketHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(StompServerNetSocketHandler.class);
+
+    private final Vertx vertx;
+    private final StompServerOptions options;
+    private final StompServerHandlerFactory factory;
+    private final FrameTemplate connectedTemplate;
+    private final AuthenticationCache authenticationCache;
+    private final AdmissionControl admissionControl;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    public StompServerNetSocketHandler(Vertx vertx,
+                                       StompServerOptions options,
+                                       StompServerHandlerFactory factory) {
+        this.vertx = vertx;
+        this.options = options;
+        this.factory = factory;
+        this.connectedTemplate = Frames.createConnectedTemplate("1.2", Frame.Heartbeat.create(options.getHeartbeat()));
+        this.authenticationCache = AuthenticationCache.get(vertx, options);
+        this.admissionControl = AdmissionControl.get(vertx, options);
+    }
+
+    /**
+     * @return the number of connections currently open through this handler
+     */
+    public int connectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return the counters of the connections and frames rejected by the admission control
+     */
+    public AdmissionStats admissionStats() {
+        return admissionControl;
+    }
+
+    /**
+     * Releases the state shared with the other verticle instances, called once the server has been closed
+     */
+    public void close() {
+        AuthenticationCache.release(vertx, options);
+        AdmissionControl.release(vertx, options);
+    }
+
+    public void onNetSocket(NetSocket socket) {
+        if (!admissionControl.acceptHandshake(socket.remoteAddress())) {
+            log.debug("Too many connections from {}. Rejecting connection", socket.remoteAddress());
+            socket.close();
+            return;
+        }
+
+        DefaultStompServerConnection defaultStompServerConnection = new DefaultStompServerConnection(StompTransport.netSocket(socket),
+                                                                                                     vertx,
+                                                                                                     options,
+                                                                                                     factory,
+                                                                                                     connectedTemplate,
+                                                                                                     authenticationCache,
+                                                                                                     admissionControl);
+        socket.exceptionHandler((exception) -> {
+            boolean skip = exception instanceof VertxException && "Connection was closed".equals(exception.getMessage());
+            if (!skip) {
+                log.debug("The STOMP server caught a TCP error - closing connection", exception);
+                defaultStompServerConnection.clientCausedException(exception, false);
+            }
+        });
+
+        connectionCount.incrementAndGet();
+        socket.closeHandler( v -> {
+            connectionCount.decrementAndGet();
+            defaultStompServerConnection.close();
+        });
+
+        socket.handler(defaultStompServerConnection::handleData);
+    }
+}
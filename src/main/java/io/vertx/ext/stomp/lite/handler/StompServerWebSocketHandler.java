@@ -20,13 +20,17 @@ import io.vertx.core.Vertx;
 import io.vertx.core.VertxException;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.http.ServerWebSocketHandshake;
+import io.vertx.ext.stomp.lite.AdmissionStats;
 import io.vertx.ext.stomp.lite.StompServerHandlerFactory;
 import io.vertx.ext.stomp.lite.StompServerOptions;
-import io.vertx.ext.stomp.lite.frame.FrameParser;
-import io.vertx.ext.stomp.lite.frame.InvalidConnectFrame;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+import io.vertx.ext.stomp.lite.frame.Frames;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  *
  * Created by Navid Mitchell on 2019-02-04.
@@ -38,6 +42,10 @@ public class StompServerWebSocketHandler {
     private final Vertx vertx;
     private final StompServerOptions options;
     private final StompServerHandlerFactory factory;
+    private final FrameTemplate connectedTemplate;
+    private final AuthenticationCache authenticationCache;
+    private final AdmissionControl admissionControl;
+    private final AtomicInteger connectionCount = new AtomicInteger();
 
     public StompServerWebSocketHandler(Vertx vertx,
                                        StompServerOptions options,
@@ -45,6 +53,31 @@ public class StompServerWebSocketHandler {
         this.vertx = vertx;
         this.options = options;
         this.factory = factory;
+        this.connectedTemplate = Frames.createConnectedTemplate("1.2", Frame.Heartbeat.create(options.getHeartbeat()));
+        this.authenticationCache = AuthenticationCache.get(vertx, options);
+        this.admissionControl = AdmissionControl.get(vertx, options);
+    }
+
+    /**
+     * @return the number of connections currently open through this handler
+     */
+    public int connectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return the counters of the connections and frames rejected by the admission control
+     */
+    public AdmissionStats admissionStats() {
+        return admissionControl;
+    }
+
+    /**
+     * Releases the state shared with the other verticle instances, called once the server has been closed
+     */
+    public void close() {
+        AuthenticationCache.release(vertx, options);
+        AdmissionControl.release(vertx, options);
     }
 
     public void onServerWebSocketHandshake(ServerWebSocketHandshake handshake) {
@@ -54,16 +87,23 @@ public class StompServerWebSocketHandler {
             log.error(error);
 
             handshake.reject();
+        }else if(!admissionControl.acceptHandshake(handshake.remoteAddress())){
+            log.debug("Too many connections from {}. Rejecting connection", handshake.remoteAddress());
+
+            handshake.reject(429);
         }else{
             handshake.accept();
         }
     }
 
     public void onServerWebSocket(ServerWebSocket socket) {
-        DefaultStompServerConnection defaultStompServerConnection = new DefaultStompServerConnection(socket,
+        DefaultStompServerConnection defaultStompServerConnection = new DefaultStompServerConnection(StompTransport.webSocket(socket),
                                                                                                      vertx,
                                                                                                      options,
-                                                                                                     factory);
+                                                                                                     factory,
+                                                                                                     connectedTemplate,
+                                                                                                     authenticationCache,
+                                                                                                     admissionControl);
         socket.exceptionHandler((exception) -> {
             boolean skip = exception instanceof VertxException && exception.getMessage().equals("Connection was closed");
             if (!skip) {
@@ -72,48 +112,21 @@ public class StompServerWebSocketHandler {
             }
         });
 
-        socket.closeHandler( v -> defaultStompServerConnection.close());
-
-        FrameParser parser = new FrameParser(options);
-        parser.errorHandler(exception -> defaultStompServerConnection.clientCausedException(exception, false))
-              .handler(defaultStompServerConnection);
-
-        socket.handler(buffer -> {
-            // Additional check to make sure that we don't parse a bunch of data when the client has not successfully authenticated
-            if(!defaultStompServerConnection.isConnected()) {
-                // client has not connected yet make ensure the client is sending a connect frame without parsing it completely
-                if(buffer.length() > options.getMaxConnectFrameLength()){
-
-                    log.debug("Client sent a frame larger than the maximum allowed connect frame");
-                    // frame is incomplete
-                    defaultStompServerConnection.clientCausedException(
-                            new InvalidConnectFrame("Client sent a frame larger than the maximum allowed connect frame", buffer), false);
-
-                }else if (buffer.length() > 7){
-
-                    String possibleConnectCommand = new String(buffer.getBytes(0, 7));
-                    if(possibleConnectCommand.equals("CONNECT")){
-                        // initial frame looks like a connect frame try to parse
-                        FrameParser connectParser = new FrameParser(options);
-                        connectParser.errorHandler(exception -> defaultStompServerConnection.clientCausedException(new InvalidConnectFrame("Error parsing connect frame", exception, buffer), false))
-                                     .handler(defaultStompServerConnection);
-                        connectParser.handle(buffer);
-                    }else{
-                        log.debug("Initial frame does not contain a connect command");
-                        // frame is incorrect
-                        defaultStompServerConnection.clientCausedException(
-                                new InvalidConnectFrame("Initial frame does not contain a connect command", buffer), false);
-                    }
-
-                }else{
-                    log.debug("Client sent an incomplete connect frame");
-                    // frame is incomplete
-                    defaultStompServerConnection.clientCausedException(
-                            new InvalidConnectFrame("Client sent an incomplete connect frame", buffer), false);
-                }
-            }else{
-                parser.handle(buffer);
-            }
+        connectionCount.incrementAndGet();
+        socket.closeHandler( v -> {
+            connectionCount.decrementAndGet();
+            defaultStompServerConnection.close();
         });
+
+        if (options.isWebsocketFrameStreamingEnabled()) {
+            socket.frameHandler(frame -> {
+                // ping, pong and close frames are handled by vert.x
+                if (frame.isBinary() || frame.isText() || frame.isContinuation()) {
+                    defaultStompServerConnection.handleData(frame.binaryData());
+                }
+            });
+        } else {
+            socket.handler(defaultStompServerConnection::handleData);
+        }
     }
 }
@@ -0,0 +1,85 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.net.SocketAddress;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * The socket a STOMP client is connected through, as used by {@link DefaultStompServerConnection}. This hides whether
+ * the frames are carried by WebSocket messages or written directly to a TCP connection.
+ */
+interface StompTransport {
+
+    static StompTransport webSocket(ServerWebSocket socket) {
+        return new WebSocketTransport(socket);
+    }
+
+    static StompTransport netSocket(NetSocket socket) {
+        return new NetSocketTransport(socket);
+    }
+
+    /**
+     * Writes the given data, a WebSocket sends it as a single binary message
+     *
+     * @param buffer the data
+     * @return a future completed once the data has been written
+     */
+    Future<Void> write(Buffer buffer);
+
+    boolean writeQueueFull();
+
+    void drainHandler(Handler<Void> handler);
+
+    void pause();
+
+    void resume();
+
+    void fetch(long amount);
+
+    /**
+     * Closes the socket, does nothing if it is already closed
+     */
+    void close();
+
+    /**
+     * @return the id of the event bus handler writing binary data to the socket, or null if there is none
+     */
+    String binaryHandlerID();
+
+    /**
+     * @return the id of the event bus handler writing text to the socket, or null if there is none
+     */
+    String textHandlerID();
+
+    SocketAddress remoteAddress();
+
+    SocketAddress localAddress();
+
+    boolean isSsl();
+
+    SSLSession sslSession();
+
+}
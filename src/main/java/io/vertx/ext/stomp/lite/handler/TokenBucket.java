@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket refilled at a fixed rate and holding at most one second worth of tokens.
+ * <p></p>
+ * The bucket is implemented as a virtual scheduling algorithm, the only state is the time at which the bucket would be
+ * full again. Acquiring tokens pushes this time forward, they are granted as long as it stays within one second of
+ * now. A single acquisition larger than the capacity is granted if the bucket is full, the following ones are then
+ * rejected until the debt has been paid back. This class is thread-safe.
+ */
+final class TokenBucket {
+
+    private static final long CAPACITY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double nanosPerToken;
+    // the time at which the bucket is full again, relative to System.nanoTime()
+    private final AtomicLong fullAt;
+
+    /**
+     * @param tokensPerSecond the refill rate, which is also the capacity of the bucket
+     */
+    TokenBucket(long tokensPerSecond) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive");
+        }
+        this.nanosPerToken = (double) CAPACITY_NANOS / tokensPerSecond;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Acquires the given number of tokens
+     *
+     * @param tokens the number of tokens
+     * @return false if there are not enough tokens left, nothing is acquired then
+     */
+    boolean tryAcquire(long tokens) {
+        long cost = (long) Math.ceil(tokens * nanosPerToken);
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long start = current - now > 0 ? current : now;
+            if (start - now >= CAPACITY_NANOS) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, start + cost)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param now the current {@link System#nanoTime()}
+     * @return true if the bucket is full, it then behaves as a new bucket
+     */
+    boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
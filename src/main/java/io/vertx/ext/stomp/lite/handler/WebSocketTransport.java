@@ -0,0 +1,106 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.net.SocketAddress;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * STOMP over WebSocket, each write is sent as one binary message
+ */
+final class WebSocketTransport implements StompTransport {
+
+    private final ServerWebSocket socket;
+
+    WebSocketTransport(ServerWebSocket socket) {
+        this.socket = socket;
+    }
+
+    @Override
+    public Future<Void> write(Buffer buffer) {
+        return socket.writeBinaryMessage(buffer);
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return socket.writeQueueFull();
+    }
+
+    @Override
+    public void drainHandler(Handler<Void> handler) {
+        socket.drainHandler(handler);
+    }
+
+    @Override
+    public void pause() {
+        socket.pause();
+    }
+
+    @Override
+    public void resume() {
+        socket.resume();
+    }
+
+    @Override
+    public void fetch(long amount) {
+        socket.fetch(amount);
+    }
+
+    @Override
+    public void close() {
+        if (!socket.isClosed()) {
+            socket.close();
+        }
+    }
+
+    @Override
+    public String binaryHandlerID() {
+        return socket.binaryHandlerID();
+    }
+
+    @Override
+    public String textHandlerID() {
+        return socket.textHandlerID();
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return socket.remoteAddress();
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return socket.localAddress();
+    }
+
+    @Override
+    public boolean isSsl() {
+        return socket.isSsl();
+    }
+
+    @Override
+    public SSLSession sslSession() {
+        return socket.sslSession();
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.stomp.lite.StompServerConnection;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+import io.vertx.ext.stomp.lite.frame.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Delivers the messages published on any node of a cluster to the subscribers connected to all the nodes, over the
+ * Vert.x event bus. The subscriptions of the local connections are kept in a {@link ShardedDestinationRouter}, see
+ * {@link #local()}.
+ * <p></p>
+ * Each node shares a summary of its interest, the set of destination patterns its local connections subscribed to.
+ * The changes are published as deltas at the end of the event loop turn they happen in, and every
+ * {@link #DEFAULT_SNAPSHOT_INTERVAL} milliseconds each node publishes its whole summary, which repairs lost deltas and
+ * tells the other nodes it is alive. A node is forgotten when it leaves or once three snapshots have been missed.
+ * <p></p>
+ * A message published on a node is delivered to its local subscribers and forwarded only to the nodes having an
+ * interest matching its destination. The messages forwarded to a node during one event loop turn are sent as a single
+ * event bus message.
+ * <p></p>
+ * The nodes are identified by a random id, so several routers using the same address on one Vert.x instance, or on
+ * several clustered Vert.x instances in one JVM, behave as separate nodes. The routers sharing an address must use the
+ * same separator. This class is thread-safe, its state is kept on the context it is created on.
+ */
+public class ClusteredDestinationRouter {
+
+    public static final String DEFAULT_ADDRESS = "io.vertx.ext.stomp.lite.cluster";
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 5000;
+
+    private static final Logger log = LoggerFactory.getLogger(ClusteredDestinationRouter.class);
+
+    // the forwarded messages of a node are flushed once its batch reaches this size, otherwise at the end of the turn
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+    private static final int MISSED_SNAPSHOTS = 3;
+
+    private final Vertx vertx;
+    private final Context context;
+    private final String address;
+    private final long snapshotInterval;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ShardedDestinationRouter local;
+
+    // the number of local subscriptions per pattern
+    private final Map<String, Integer> localInterest = new HashMap<>();
+    private final Set<String> addedInterest = new LinkedHashSet<>();
+    private final Set<String> removedInterest = new LinkedHashSet<>();
+    private boolean interestFlushScheduled = false;
+    private long sequence = 0;
+
+    private final Map<String, RemoteNode> remoteNodes = new HashMap<>();
+    private final DestinationTrie<String> remoteInterest;
+
+    private final Map<String, Buffer> batches = new HashMap<>();
+    private boolean batchFlushScheduled = false;
+
+    private MessageConsumer<JsonObject> interestConsumer;
+    private MessageConsumer<Buffer> nodeConsumer;
+    private long snapshotTimer = -1;
+    private boolean started = false;
+
+    /**
+     * Creates a router using the {@link #DEFAULT_ADDRESS}, {@code /} as the segment separator and the
+     * {@link #DEFAULT_SNAPSHOT_INTERVAL}
+     */
+    public ClusteredDestinationRouter(Vertx vertx) {
+        this(vertx, DEFAULT_ADDRESS, '/', DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Creates a router
+     *
+     * @param vertx            the vertx instance, clustered to reach the other nodes
+     * @param address          the prefix of the event bus addresses used by the nodes
+     * @param separator        the character separating the segments of the destinations
+     * @param snapshotInterval the interval in milliseconds at which the whole interest of the node is published
+     */
+    public ClusteredDestinationRouter(Vertx vertx, String address, char separator, long snapshotInterval) {
+        this.vertx = Objects.requireNonNull(vertx, "The vertx instance must be set");
+        this.address = Objects.requireNonNull(address, "The address must be set");
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("The snapshot interval must be positive");
+        }
+        this.snapshotInterval = snapshotInterval;
+        this.context = vertx.getOrCreateContext();
+        this.local = new ShardedDestinationRouter(separator);
+        this.remoteInterest = new DestinationTrie<>(separator);
+        this.local.listener(new ShardedDestinationRouter.SubscriptionListener() {
+            @Override
+            public void added(Subscription subscription) {
+                onContext(() -> addInterest(subscription.destination()));
+            }
+
+            @Override
+            public void removed(Subscription subscription) {
+                onContext(() -> removeInterest(subscription.destination()));
+            }
+        });
+    }
+
+    /**
+     * Joins the cluster, the other nodes then send their interest
+     *
+     * @return a future completed once the event bus consumers are registered
+     */
+    public Future<Void> start() {
+        return Future.<Void>future(promise -> onContext(() -> {
+            if (started) {
+                promise.complete();
+                return;
+            }
+            started = true;
+            interestConsumer = vertx.eventBus().consumer(address + ".interest", this::onInterest);
+            nodeConsumer = vertx.eventBus().consumer(nodeAddress(nodeId), this::onForwarded);
+            Future.all(List.of(interestConsumer.completion(), nodeConsumer.completion()))
+                  .onComplete(ar -> {
+                      if (ar.succeeded()) {
+                          publishInterest(new JsonObject().put("type", "join"));
+                          publishSnapshot();
+                          snapshotTimer = vertx.setPeriodic(snapshotInterval, id -> onSnapshotTick());
+                          promise.complete();
+                      } else {
+                          promise.fail(ar.cause());
+                      }
+                  });
+        }));
+    }
+
+    /**
+     * Leaves the cluster, the other nodes stop forwarding messages to this node
+     *
+     * @return a future completed once the event bus consumers are unregistered
+     */
+    public Future<Void> close() {
+        return Future.<Void>future(promise -> onContext(() -> {
+            if (!started) {
+                promise.complete();
+                return;
+            }
+            started = false;
+            flushBatches();
+            publishInterest(new JsonObject().put("type", "leave"));
+            vertx.cancelTimer(snapshotTimer);
+            snapshotTimer = -1;
+            remoteNodes.clear();
+            Future.all(List.of(interestConsumer.unregister(), nodeConsumer.unregister()))
+                  .<Void>mapEmpty()
+                  .onComplete(promise);
+        }));
+    }
+
+    /**
+     * @return the id of this node
+     */
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the router holding the subscriptions of the local connections
+     */
+    public ShardedDestinationRouter local() {
+        return local;
+    }
+
+    /**
+     * Registers the subscription requested by the given SUBSCRIBE frame, see
+     * {@link ShardedDestinationRouter#subscribe(StompServerConnection, Frame)}
+     */
+    public Future<Subscription> subscribe(StompServerConnection connection, Frame frame) {
+        return local.subscribe(connection, frame);
+    }
+
+    /**
+     * Removes a subscription, see {@link ShardedDestinationRouter#unsubscribe(StompServerConnection, String)}
+     */
+    public Future<Subscription> unsubscribe(StompServerConnection connection, String id) {
+        return local.unsubscribe(connection, id);
+    }
+
+    /**
+     * Publishes a message to the subscribers of all the nodes. The {@code subscription} header, and the
+     * {@code message-id} header if the message has none, are set for each subscriber by the node it is connected to.
+     *
+     * @param destination the destination of the message, wildcards are not interpreted
+     * @param message     the MESSAGE frame
+     */
+    public void publish(String destination, Frame message) {
+        Objects.requireNonNull(destination, "The destination must not be null");
+        Objects.requireNonNull(message, "The message must not be null");
+        local.publish(destination, FrameTemplate.create(message));
+        onContext(() -> forward(destination, message));
+    }
+
+    /**
+     * Gets the nodes having an interest in a destination, this node excluded
+     *
+     * @return a future completed with the ids of the nodes
+     */
+    public Future<Set<String>> interestedNodes(String destination) {
+        return Future.future(promise -> onContext(() -> promise.complete(matchNodes(destination))));
+    }
+
+    /****                                                                                                       ****
+     ****                                            Interest                                                   ****
+     ****                                                                                                       ****/
+
+    private void addInterest(String pattern) {
+        if (localInterest.merge(pattern, 1, Integer::sum) == 1) {
+            if (!removedInterest.remove(pattern)) {
+                addedInterest.add(pattern);
+            }
+            scheduleInterestFlush();
+        }
+    }
+
+    private void removeInterest(String pattern) {
+        Integer count = localInterest.get(pattern);
+        if (count == null) {
+            return;
+        }
+        if (count == 1) {
+            localInterest.remove(pattern);
+            if (!addedInterest.remove(pattern)) {
+                removedInterest.add(pattern);
+            }
+            scheduleInterestFlush();
+        } else {
+            localInterest.put(pattern, count - 1);
+        }
+    }
+
+    private void scheduleInterestFlush() {
+        if (!interestFlushScheduled) {
+            interestFlushScheduled = true;
+            context.runOnContext(v -> flushInterest());
+        }
+    }
+
+    private void flushInterest() {
+        interestFlushScheduled = false;
+        if (started && (!addedInterest.isEmpty() || !removedInterest.isEmpty())) {
+            publishInterest(new JsonObject().put("type", "delta")
+                                            .put("added", new JsonArray(new ArrayList<>(addedInterest)))
+                                            .put("removed", new JsonArray(new ArrayList<>(removedInterest))));
+        }
+        addedInterest.clear();
+        removedInterest.clear();
+    }
+
+    private void publishSnapshot() {
+        // the pending deltas are part of the snapshot
+        addedInterest.clear();
+        removedInterest.clear();
+        publishInterest(new JsonObject().put("type", "snapshot")
+                                        .put("patterns", new JsonArray(new ArrayList<>(localInterest.keySet()))));
+    }
+
+    private void publishInterest(JsonObject message) {
+        vertx.eventBus().publish(address + ".interest", message.put("node", nodeId).put("seq", sequence++));
+    }
+
+    private void onSnapshotTick() {
+        publishSnapshot();
+        long expiration = System.currentTimeMillis() - MISSED_SNAPSHOTS * snapshotInterval;
+        Iterator<RemoteNode> it = remoteNodes.values().iterator();
+        while (it.hasNext()) {
+            RemoteNode node = it.next();
+            if (node.lastSeen < expiration) {
+                log.debug("Node {} missed its snapshots, forgetting it", node.id);
+                it.remove();
+                node.clear();
+            }
+        }
+    }
+
+    private void onInterest(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String node = body.getString("node");
+        if (node == null || node.equals(nodeId)) {
+            return;
+        }
+        String type = body.getString("type", "");
+        if (type.equals("leave")) {
+            RemoteNode remote = remoteNodes.remove(node);
+            if (remote != null) {
+                remote.clear();
+            }
+            batches.remove(node);
+            return;
+        }
+
+        RemoteNode remote = remoteNodes.computeIfAbsent(node, RemoteNode::new);
+        long seq = body.getLong("seq", -1L);
+        if (seq <= remote.sequence) {
+            // published before a message already applied
+            return;
+        }
+        remote.sequence = seq;
+        remote.lastSeen = System.currentTimeMillis();
+        switch (type) {
+            case "join":
+                // a new node does not know the interest of this one yet
+                publishSnapshot();
+                break;
+            case "snapshot":
+                remote.replace(strings(body.getJsonArray("patterns")));
+                break;
+            case "delta":
+                for (String pattern : strings(body.getJsonArray("added"))) {
+                    remote.add(pattern);
+                }
+                for (String pattern : strings(body.getJsonArray("removed"))) {
+                    remote.remove(pattern);
+                }
+                break;
+            default:
+                log.debug("Unknown interest message type {} from node {}", type, node);
+        }
+    }
+
+    private static List<String> strings(JsonArray array) {
+        List<String> strings = new ArrayList<>();
+        if (array != null) {
+            for (int i = 0; i < array.size(); i++) {
+                strings.add(array.getString(i));
+            }
+        }
+        return strings;
+    }
+
+    /****                                                                                                       ****
+     ****                                            Forwarding                                                 ****
+     ****                                                                                                       ****/
+
+    private Set<String> matchNodes(String destination) {
+        Set<String> nodes = new HashSet<>();
+        remoteInterest.match(destination, nodes::add);
+        return nodes;
+    }
+
+    private void forward(String destination, Frame message) {
+        if (!started || remoteNodes.isEmpty()) {
+            return;
+        }
+        Set<String> nodes = matchNodes(destination);
+        if (nodes.isEmpty()) {
+            return;
+        }
+        Buffer encoded = encode(destination, message);
+        for (String node : nodes) {
+            Buffer batch = batches.computeIfAbsent(node, k -> Buffer.buffer());
+            batch.appendBuffer(encoded);
+            if (batch.length() >= MAX_BATCH_BYTES) {
+                batches.remove(node);
+                vertx.eventBus().send(nodeAddress(node), batch);
+            }
+        }
+        if (!batchFlushScheduled && !batches.isEmpty()) {
+            batchFlushScheduled = true;
+            context.runOnContext(v -> flushBatches());
+        }
+    }
+
+    private void flushBatches() {
+        batchFlushScheduled = false;
+        for (Map.Entry<String, Buffer> batch : batches.entrySet()) {
+            vertx.eventBus().send(nodeAddress(batch.getKey()), batch.getValue());
+        }
+        batches.clear();
+    }
+
+    private void onForwarded(Message<Buffer> message) {
+        Buffer batch = message.body();
+        int position = 0;
+        try {
+            while (position < batch.length()) {
+                int length = batch.getInt(position);
+                String destination = batch.getString(position + 4, position + 4 + length);
+                position += 4 + length;
+
+                int count = batch.getInt(position);
+                position += 4;
+                Map<String, String> headers = Headers.create();
+                for (int i = 0; i < count; i++) {
+                    length = batch.getInt(position);
+                    String name = batch.getString(position + 4, position + 4 + length);
+                    position += 4 + length;
+                    length = batch.getInt(position);
+                    String value = batch.getString(position + 4, position + 4 + length);
+                    position += 4 + length;
+                    headers.put(name, value);
+                }
+
+                length = batch.getInt(position);
+                Buffer body = batch.getBuffer(position + 4, position + 4 + length);
+                position += 4 + length;
+
+                local.publish(destination, FrameTemplate.create(new Frame(Frame.Command.MESSAGE, headers, body)));
+            }
+        } catch (RuntimeException e) {
+            log.error("Invalid batch of messages received from another node", e);
+        }
+    }
+
+    /**
+     * Encodes a message as its destination, its headers and its body, each string and the body prefixed by its length
+     */
+    private static Buffer encode(String destination, Frame message) {
+        Buffer buffer = Buffer.buffer();
+        appendString(buffer, destination);
+        Map<String, String> headers = message.getHeaders();
+        buffer.appendInt(headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            appendString(buffer, header.getKey());
+            appendString(buffer, header.getValue());
+        }
+        Buffer body = message.getBody();
+        buffer.appendInt(body != null ? body.length() : 0);
+        if (body != null) {
+            buffer.appendBuffer(body);
+        }
+        return buffer;
+    }
+
+    private static void appendString(Buffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.appendInt(bytes.length);
+        buffer.appendBytes(bytes);
+    }
+
+    private String nodeAddress(String node) {
+        return address + ".node." + node;
+    }
+
+    private void onContext(Runnable action) {
+        if (Vertx.currentContext() == context) {
+            action.run();
+        } else {
+            context.runOnContext(v -> action.run());
+        }
+    }
+
+    /**
+     * The interest of another node
+     */
+    private final class RemoteNode {
+
+        private final String id;
+        private final Set<String> patterns = new HashSet<>();
+        private long sequence = -1;
+        private long lastSeen = System.currentTimeMillis();
+
+        private RemoteNode(String id) {
+            this.id = id;
+        }
+
+        private void add(String pattern) {
+            if (patterns.add(pattern)) {
+                remoteInterest.add(pattern, id);
+            }
+        }
+
+        private void remove(String pattern) {
+            if (patterns.remove(pattern)) {
+                remoteInterest.remove(pattern, id);
+            }
+        }
+
+        private void replace(List<String> snapshot) {
+            Set<String> retained = new HashSet<>(snapshot);
+            for (String pattern : new ArrayList<>(patterns)) {
+                if (!retained.contains(pattern)) {
+                    remove(pattern);
+                }
+            }
+            for (String pattern : snapshot) {
+                add(pattern);
+            }
+        }
+
+        private void clear() {
+            for (String pattern : patterns) {
+                remoteInterest.remove(pattern, id);
+            }
+            patterns.clear();
+        }
+    }
+}
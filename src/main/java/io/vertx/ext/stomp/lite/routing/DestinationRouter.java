@@ -0,0 +1,217 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import io.vertx.ext.stomp.lite.StompServerConnection;
+import io.vertx.ext.stomp.lite.frame.Frame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Routes the destinations of SEND frames to the subscriptions of the connected clients. It can be shared by the
+ * {@link io.vertx.ext.stomp.lite.StompServerHandler}s of all the connections instead of each handler keeping its own
+ * subscription map.
+ * <p></p>
+ * The SUBSCRIBE destinations are indexed in a trie of segments, separated by {@code /} unless another separator is
+ * given. A {@code *} segment matches exactly one segment and a {@code #} segment matches zero or more segments, so
+ * {@code /topic/*}{@code /price} matches {@code /topic/eur/price} and {@code /topic/#} matches every destination under
+ * {@code /topic}. Resolving a destination costs time proportional to its depth, not to the number of subscriptions.
+ * <p></p>
+ * The subscriptions of a connection are removed once it is closed. This class is thread-safe, routing can happen
+ * concurrently from all the event loops.
+ */
+public class DestinationRouter {
+
+    private final DestinationTrie<Subscription> trie;
+    private final Map<StompServerConnection, Map<String, Subscription>> connections = new IdentityHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Creates a router using {@code /} as the segment separator
+     */
+    public DestinationRouter() {
+        this('/');
+    }
+
+    /**
+     * Creates a router
+     *
+     * @param separator the character separating the segments of the destinations, such as {@code /} or {@code .}
+     */
+    public DestinationRouter(char separator) {
+        this.trie = new DestinationTrie<>(separator);
+    }
+
+    /**
+     * Registers the subscription requested by the given SUBSCRIBE frame
+     *
+     * @param connection the connection of the client
+     * @param frame      the SUBSCRIBE frame, providing the {@code id}, {@code destination} and {@code ack} headers
+     * @return the subscription
+     * @throws IllegalArgumentException if the frame has no {@code id} or {@code destination}
+     * @throws IllegalStateException    if the connection already has a subscription with the same id
+     * @throws UnsupportedOperationException if the connection does not implement
+     *                                       {@link StompServerConnection#addCloseHandler(io.vertx.core.Handler)}
+     */
+    public Subscription subscribe(StompServerConnection connection, Frame frame) {
+        return subscribe(Subscription.of(connection, frame));
+    }
+
+    /**
+     * Registers a subscription
+     *
+     * @param connection  the connection of the client
+     * @param id          the subscription id, unique for the connection
+     * @param destination the destination pattern, which may contain wildcards
+     * @param ack         the ack mode, {@code null} for {@code auto}
+     * @return the subscription
+     * @throws IllegalStateException if the connection already has a subscription with the same id
+     * @throws UnsupportedOperationException if the connection does not implement
+     *                                       {@link StompServerConnection#addCloseHandler(io.vertx.core.Handler)}
+     */
+    public Subscription subscribe(StompServerConnection connection, String id, String destination, String ack) {
+        return subscribe(new Subscription(connection, id, destination, ack));
+    }
+
+    private Subscription subscribe(Subscription subscription) {
+        StompServerConnection connection = subscription.connection();
+        String id = subscription.id();
+        boolean first;
+        lock.writeLock().lock();
+        try {
+            Map<String, Subscription> subscriptions = connections.get(connection);
+            first = subscriptions == null;
+            if (first) {
+                subscriptions = new HashMap<>();
+                connections.put(connection, subscriptions);
+            } else if (subscriptions.containsKey(id)) {
+                throw new IllegalStateException("The subscription id " + id + " is already used by this connection");
+            }
+            subscriptions.put(id, subscription);
+            trie.add(subscription.destination(), subscription);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (first) {
+            try {
+                connection.addCloseHandler(v -> unsubscribeAll(connection));
+            } catch (RuntimeException e) {
+                // nothing would remove the subscription of a connection that can not report when it is closed
+                unsubscribeAll(connection);
+                throw e;
+            }
+        }
+        return subscription;
+    }
+
+    /**
+     * Removes a subscription
+     *
+     * @param connection the connection of the client
+     * @param id         the subscription id
+     * @return the removed subscription, or null if there was none
+     */
+    public Subscription unsubscribe(StompServerConnection connection, String id) {
+        lock.writeLock().lock();
+        try {
+            Map<String, Subscription> subscriptions = connections.get(connection);
+            if (subscriptions == null) {
+                return null;
+            }
+            Subscription subscription = subscriptions.remove(id);
+            if (subscription != null) {
+                trie.remove(subscription.destination(), subscription);
+            }
+            // the entry is kept, the close handler is already registered
+            return subscription;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all the subscriptions of a connection, this is done automatically when the connection is closed
+     *
+     * @param connection the connection of the client
+     * @return the removed subscriptions
+     */
+    public List<Subscription> unsubscribeAll(StompServerConnection connection) {
+        lock.writeLock().lock();
+        try {
+            Map<String, Subscription> subscriptions = connections.remove(connection);
+            if (subscriptions == null) {
+                return Collections.emptyList();
+            }
+            for (Subscription subscription : subscriptions.values()) {
+                trie.remove(subscription.destination(), subscription);
+            }
+            return new ArrayList<>(subscriptions.values());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the subscriptions matching a destination
+     *
+     * @param destination the destination of a SEND frame, wildcards are not interpreted
+     * @return the matching subscriptions, each subscription is listed once
+     */
+    public List<Subscription> route(String destination) {
+        List<Subscription> matched = new ArrayList<>();
+        route(destination, matched::add);
+        return matched;
+    }
+
+    /**
+     * Calls the given consumer with the subscriptions matching a destination. The consumer is called while the router
+     * is locked for reading, it must not subscribe or unsubscribe.
+     *
+     * @param destination the destination of a SEND frame, wildcards are not interpreted
+     * @param consumer    called once per matching subscription
+     */
+    public void route(String destination, Consumer<Subscription> consumer) {
+        lock.readLock().lock();
+        try {
+            trie.match(destination, consumer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of subscriptions
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return trie.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
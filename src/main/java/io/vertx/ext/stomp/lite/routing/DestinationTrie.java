@@ -0,0 +1,221 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A trie of destination patterns split in segments. A {@code *} segment matches exactly one segment of a destination
+ * and a {@code #} segment matches zero or more segments, the other segments must be equal. Matching a destination
+ * walks one branch per segment, plus the wildcard branches, so the cost depends on the depth of the destination
+ * rather than on the number of patterns.
+ * <p></p>
+ * This class is <strong>NOT</strong> thread-safe.
+ *
+ * @param <T> the type of the values stored for the patterns
+ */
+final class DestinationTrie<T> {
+
+    static final String SINGLE_WILDCARD = "*";
+    static final String MULTI_WILDCARD = "#";
+
+    private final char separator;
+    private final Node<T> root = new Node<>();
+    private int size = 0;
+    // the patterns having several # segments, which can match a destination through several branches
+    private int ambiguous = 0;
+
+    /**
+     * @param separator the character separating the segments of the destinations
+     */
+    DestinationTrie(char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Adds a value for the given pattern
+     */
+    void add(String pattern, T value) {
+        Node<T> node = root;
+        for (String segment : split(pattern)) {
+            node = node.child(segment, true);
+        }
+        node.values.add(value);
+        size++;
+        if (isAmbiguous(pattern)) {
+            ambiguous++;
+        }
+    }
+
+    /**
+     * Removes a value added for the given pattern
+     *
+     * @return true if the value was found
+     */
+    boolean remove(String pattern, T value) {
+        List<String> segments = split(pattern);
+        if (remove(root, segments, 0, value)) {
+            size--;
+            if (isAmbiguous(pattern)) {
+                ambiguous--;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Calls the given consumer once with each value whose pattern matches the destination
+     */
+    void match(String destination, Consumer<T> consumer) {
+        if (ambiguous > 0) {
+            Set<T> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+            match(root, split(destination), 0, value -> {
+                if (matched.add(value)) {
+                    consumer.accept(value);
+                }
+            });
+        } else {
+            match(root, split(destination), 0, consumer);
+        }
+    }
+
+    /**
+     * @return the number of values in the trie
+     */
+    int size() {
+        return size;
+    }
+
+    private boolean remove(Node<T> node, List<String> segments, int index, T value) {
+        if (index == segments.size()) {
+            return node.values.remove(value);
+        }
+        Node<T> child = node.child(segments.get(index), false);
+        if (child == null || !remove(child, segments, index + 1, value)) {
+            return false;
+        }
+        if (child.isEmpty()) {
+            node.removeChild(segments.get(index));
+        }
+        return true;
+    }
+
+    private void match(Node<T> node, List<String> segments, int index, Consumer<T> consumer) {
+        if (node.multi != null) {
+            // # matches the remaining segments from zero to all of them
+            for (int i = index; i <= segments.size(); i++) {
+                match(node.multi, segments, i, consumer);
+            }
+        }
+        if (index == segments.size()) {
+            node.values.forEach(consumer);
+            return;
+        }
+        if (node.children != null) {
+            Node<T> child = node.children.get(segments.get(index));
+            if (child != null) {
+                match(child, segments, index + 1, consumer);
+            }
+        }
+        if (node.single != null) {
+            match(node.single, segments, index + 1, consumer);
+        }
+    }
+
+    private boolean isAmbiguous(String pattern) {
+        int count = 0;
+        for (String segment : split(pattern)) {
+            if (segment.equals(MULTI_WILDCARD) && ++count > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<String> split(String destination) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = destination.indexOf(separator, start)) >= 0) {
+            segments.add(destination.substring(start, end));
+            start = end + 1;
+        }
+        segments.add(destination.substring(start));
+        return segments;
+    }
+
+    private static final class Node<T> {
+
+        private Map<String, Node<T>> children;
+        private Node<T> single;
+        private Node<T> multi;
+        private final List<T> values = new ArrayList<>(1);
+
+        private Node<T> child(String segment, boolean create) {
+            switch (segment) {
+                case SINGLE_WILDCARD:
+                    if (single == null && create) {
+                        single = new Node<>();
+                    }
+                    return single;
+                case MULTI_WILDCARD:
+                    if (multi == null && create) {
+                        multi = new Node<>();
+                    }
+                    return multi;
+                default:
+                    if (children == null) {
+                        if (!create) {
+                            return null;
+                        }
+                        children = new HashMap<>();
+                    }
+                    return create ? children.computeIfAbsent(segment, k -> new Node<>()) : children.get(segment);
+            }
+        }
+
+        private void removeChild(String segment) {
+            switch (segment) {
+                case SINGLE_WILDCARD:
+                    single = null;
+                    break;
+                case MULTI_WILDCARD:
+                    multi = null;
+                    break;
+                default:
+                    children.remove(segment);
+                    if (children.isEmpty()) {
+                        children = null;
+                    }
+            }
+        }
+
+        private boolean isEmpty() {
+            return values.isEmpty() && single == null && multi == null && (children == null || children.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import io.netty.channel.EventLoop;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.internal.ContextInternal;
+import io.vertx.ext.stomp.lite.StompServerConnection;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+import io.vertx.ext.stomp.lite.frame.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A subscription registry sharded per event loop. The subscriptions of a connection are kept in the shard of the
+ * event loop of the connection context, so the connections of all the verticles running on one event loop, over
+ * WebSocket or TCP, share a shard even though each one has its own duplicated context. A shard is only ever accessed
+ * from its own event loop, so subscribing and unsubscribing take no lock.
+ * <p></p>
+ * Publishing hands the destination over to each event loop having subscriptions, with a single task per event loop.
+ * The subscriptions are then resolved and the frames written on the event loop of the subscribers, so no write has to
+ * hop to another thread. The shards use the same wildcards as the {@link DestinationRouter}.
+ * <p></p>
+ * This class is thread-safe. The changes made from another thread than the one of the connection are applied
+ * asynchronously, in the order they are made.
+ */
+public class ShardedDestinationRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedDestinationRouter.class);
+
+    private final char separator;
+    private final ConcurrentHashMap<EventLoop, Shard> shards = new ConcurrentHashMap<>();
+    private final AtomicInteger shardCount = new AtomicInteger();
+    private volatile SubscriptionListener listener;
+
+    /**
+     * Creates a router using {@code /} as the segment separator
+     */
+    public ShardedDestinationRouter() {
+        this('/');
+    }
+
+    /**
+     * Creates a router
+     *
+     * @param separator the character separating the segments of the destinations, such as {@code /} or {@code .}
+     */
+    public ShardedDestinationRouter(char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Registers the subscription requested by the given SUBSCRIBE frame, see
+     * {@link DestinationRouter#subscribe(StompServerConnection, Frame)}.
+     *
+     * @param connection the connection of the client
+     * @param frame      the SUBSCRIBE frame, providing the {@code id}, {@code destination} and {@code ack} headers
+     * @return a future completed with the subscription once it is registered, failed if the connection already has a
+     *         subscription with the same id or does not implement
+     *         {@link StompServerConnection#addCloseHandler(io.vertx.core.Handler)}
+     * @throws IllegalArgumentException      if the frame has no {@code id} or {@code destination}
+     * @throws UnsupportedOperationException if the connection does not implement {@link StompServerConnection#context()}
+     */
+    public Future<Subscription> subscribe(StompServerConnection connection, Frame frame) {
+        return subscribe(Subscription.of(connection, frame));
+    }
+
+    /**
+     * Registers a subscription
+     *
+     * @param connection  the connection of the client
+     * @param id          the subscription id, unique for the connection
+     * @param destination the destination pattern, which may contain wildcards
+     * @param ack         the ack mode, {@code null} for {@code auto}
+     * @return a future completed with the subscription once it is registered, failed if the connection already has a
+     *         subscription with the same id or does not implement
+     *         {@link StompServerConnection#addCloseHandler(io.vertx.core.Handler)}
+     * @throws UnsupportedOperationException if the connection does not implement {@link StompServerConnection#context()}
+     */
+    public Future<Subscription> subscribe(StompServerConnection connection, String id, String destination, String ack) {
+        return subscribe(new Subscription(connection, id, destination, ack));
+    }
+
+    /**
+     * Removes a subscription
+     *
+     * @param connection the connection of the client
+     * @param id         the subscription id
+     * @return a future completed with the removed subscription, or null if there was none
+     */
+    public Future<Subscription> unsubscribe(StompServerConnection connection, String id) {
+        ContextInternal context = context(connection);
+        EventLoop eventLoop = context.nettyEventLoop();
+        Promise<Subscription> promise = Promise.promise();
+        execute(eventLoop, context, () -> {
+            Shard shard = shards.get(eventLoop);
+            promise.complete(shard != null ? shard.unsubscribe(connection, id) : null);
+        });
+        return promise.future();
+    }
+
+    /**
+     * Removes all the subscriptions of a connection, this is done automatically when the connection is closed
+     *
+     * @param connection the connection of the client
+     */
+    public void unsubscribeAll(StompServerConnection connection) {
+        ContextInternal context = context(connection);
+        EventLoop eventLoop = context.nettyEventLoop();
+        execute(eventLoop, context, () -> {
+            Shard shard = shards.get(eventLoop);
+            if (shard != null) {
+                shard.unsubscribeAll(connection);
+            }
+        });
+    }
+
+    /**
+     * Delivers a message to the subscriptions matching a destination. The given delivery is called on the event loop
+     * of each matching subscription, once per subscription, it typically writes a frame to the
+     * {@link Subscription#connection()}.
+     *
+     * @param destination the destination of a SEND frame, wildcards are not interpreted
+     * @param delivery    called with each matching subscription
+     */
+    public void publish(String destination, Consumer<Subscription> delivery) {
+        Objects.requireNonNull(destination, "The destination must not be null");
+        Objects.requireNonNull(delivery, "The delivery must not be null");
+        for (Shard shard : shards.values()) {
+            // a shard without subscriptions is not worth a hop
+            if (shard.size > 0) {
+                execute(shard.eventLoop, shard.context, () -> shard.deliver(destination, delivery));
+            }
+        }
+    }
+
+    /**
+     * Writes a MESSAGE frame created from the given template to the subscriptions matching a destination, setting the
+     * {@code subscription} header of each frame. If the template has no {@code message-id} header, a unique one is
+     * added to each frame.
+     *
+     * @param destination the destination of a SEND frame, wildcards are not interpreted
+     * @param message     the template of the MESSAGE frames
+     */
+    public void publish(String destination, FrameTemplate message) {
+        Objects.requireNonNull(destination, "The destination must not be null");
+        Objects.requireNonNull(message, "The message must not be null");
+        boolean generateMessageId = message.getHeader(Frame.MESSAGE_ID) == null;
+        for (Shard shard : shards.values()) {
+            if (shard.size > 0) {
+                execute(shard.eventLoop, shard.context, () -> shard.deliver(destination, subscription -> {
+                    Map<String, String> headers = Headers.create();
+                    headers.put(Frame.SUBSCRIPTION, subscription.id());
+                    if (generateMessageId) {
+                        headers.put(Frame.MESSAGE_ID, shard.nextMessageId());
+                    }
+                    subscription.connection().write(message, headers);
+                }));
+            }
+        }
+    }
+
+    /**
+     * Sets the listener notified of the subscriptions added and removed, on the event loop of their connection
+     */
+    void listener(SubscriptionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the number of subscriptions, it may not reflect the changes still being applied
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards.values()) {
+            size += shard.size;
+        }
+        return size;
+    }
+
+    private Future<Subscription> subscribe(Subscription subscription) {
+        ContextInternal context = context(subscription.connection());
+        EventLoop eventLoop = context.nettyEventLoop();
+        Promise<Subscription> promise = Promise.promise();
+        execute(eventLoop, context, () -> {
+            Shard shard = shards.computeIfAbsent(eventLoop, l -> new Shard(l, context.unwrap(), shardCount.getAndIncrement()));
+            try {
+                if (shard.subscribe(subscription)) {
+                    promise.complete(subscription);
+                } else {
+                    promise.fail(new IllegalStateException("The subscription id " + subscription.id()
+                                                                   + " is already used by this connection"));
+                }
+            } catch (RuntimeException e) {
+                promise.fail(e);
+            }
+        });
+        return promise.future();
+    }
+
+    /**
+     * Notified of the changes of the subscriptions
+     */
+    interface SubscriptionListener {
+
+        void added(Subscription subscription);
+
+        void removed(Subscription subscription);
+
+    }
+
+    /**
+     * @return the number of shards, one per event loop having connections with subscriptions
+     */
+    int shardCount() {
+        return shards.size();
+    }
+
+    private static ContextInternal context(StompServerConnection connection) {
+        return (ContextInternal) Objects.requireNonNull(connection.context(), "The connection has no context");
+    }
+
+    /**
+     * Runs the given action on the event loop, immediately if already on it whatever the current context
+     */
+    private static void execute(EventLoop eventLoop, Context context, Runnable action) {
+        if (eventLoop.inEventLoop()) {
+            action.run();
+        } else {
+            context.runOnContext(v -> action.run());
+        }
+    }
+
+    /**
+     * The subscriptions of the connections of one event loop. All the fields but {@link #size} are only accessed from
+     * the event loop, which is also the only one adding or removing its shard.
+     */
+    private final class Shard {
+
+        private final EventLoop eventLoop;
+        // the root context of the connection which created the shard, used to hand the deliveries over to the loop
+        private final Context context;
+        private final String messageIdPrefix;
+        private final DestinationTrie<Subscription> trie = new DestinationTrie<>(separator);
+        private final Map<StompServerConnection, Map<String, Subscription>> connections = new IdentityHashMap<>();
+        private long messageIds = 0;
+        private volatile int size = 0;
+
+        private Shard(EventLoop eventLoop, Context context, int index) {
+            this.eventLoop = eventLoop;
+            this.context = context;
+            this.messageIdPrefix = index + "-";
+        }
+
+        private boolean subscribe(Subscription subscription) {
+            StompServerConnection connection = subscription.connection();
+            Map<String, Subscription> subscriptions = connections.get(connection);
+            boolean first = subscriptions == null;
+            if (first) {
+                subscriptions = new HashMap<>();
+                connections.put(connection, subscriptions);
+            } else if (subscriptions.containsKey(subscription.id())) {
+                return false;
+            }
+            subscriptions.put(subscription.id(), subscription);
+            trie.add(subscription.destination(), subscription);
+            size = trie.size();
+            SubscriptionListener listener = ShardedDestinationRouter.this.listener;
+            if (listener != null) {
+                listener.added(subscription);
+            }
+            if (first) {
+                // registered once the subscription is added, the handler runs right away if the connection is already
+                // closed. It goes through the router so that it runs on the event loop whatever thread calls it
+                try {
+                    connection.addCloseHandler(v -> ShardedDestinationRouter.this.unsubscribeAll(connection));
+                } catch (RuntimeException e) {
+                    // nothing would remove the subscription of a connection that can not report when it is closed
+                    unsubscribeAll(connection);
+                    throw e;
+                }
+            }
+            return true;
+        }
+
+        private Subscription unsubscribe(StompServerConnection connection, String id) {
+            Map<String, Subscription> subscriptions = connections.get(connection);
+            if (subscriptions == null) {
+                return null;
+            }
+            Subscription subscription = subscriptions.remove(id);
+            if (subscription != null) {
+                trie.remove(subscription.destination(), subscription);
+                size = trie.size();
+                SubscriptionListener listener = ShardedDestinationRouter.this.listener;
+                if (listener != null) {
+                    listener.removed(subscription);
+                }
+            }
+            // the entry is kept, the close handler is already registered
+            return subscription;
+        }
+
+        private void unsubscribeAll(StompServerConnection connection) {
+            Map<String, Subscription> subscriptions = connections.remove(connection);
+            if (subscriptions != null) {
+                SubscriptionListener listener = ShardedDestinationRouter.this.listener;
+                for (Subscription subscription : subscriptions.values()) {
+                    trie.remove(subscription.destination(), subscription);
+                    if (listener != null) {
+                        listener.removed(subscription);
+                    }
+                }
+                size = trie.size();
+                removeIfEmpty();
+            }
+        }
+
+        /**
+         * Removes the shard once it has no connection left, so that the shards of undeployed verticles do not stay.
+         * The connections are removed when they are closed.
+         */
+        private void removeIfEmpty() {
+            if (connections.isEmpty()) {
+                shards.remove(eventLoop, this);
+            }
+        }
+
+        private void deliver(String destination, Consumer<Subscription> delivery) {
+            trie.match(destination, subscription -> {
+                try {
+                    delivery.accept(subscription);
+                } catch (Exception e) {
+                    log.error("Delivery to subscription " + subscription.id() + " failed", e);
+                }
+            });
+        }
+
+        private String nextMessageId() {
+            return messageIdPrefix + (messageIds++);
+        }
+    }
+}
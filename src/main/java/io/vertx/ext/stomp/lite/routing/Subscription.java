@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import io.vertx.ext.stomp.lite.StompServerConnection;
+import io.vertx.ext.stomp.lite.frame.Frame;
+
+import java.util.Objects;
+
+/**
+ * A subscription of a connection to the destinations matching a pattern, as registered in a {@link DestinationRouter}.
+ */
+public final class Subscription {
+
+    private final StompServerConnection connection;
+    private final String id;
+    private final String destination;
+    private final String ack;
+
+    Subscription(StompServerConnection connection, String id, String destination, String ack) {
+        this.connection = Objects.requireNonNull(connection, "The connection must not be null");
+        this.id = Objects.requireNonNull(id, "The subscription id must not be null");
+        this.destination = Objects.requireNonNull(destination, "The destination must not be null");
+        this.ack = ack != null ? ack : "auto";
+    }
+
+    /**
+     * Creates the subscription requested by a SUBSCRIBE frame
+     * @throws IllegalArgumentException if the frame has no {@code id} or {@code destination}
+     */
+    static Subscription of(StompServerConnection connection, Frame frame) {
+        String id = frame.getId();
+        String destination = frame.getDestination();
+        if (id == null) {
+            throw new IllegalArgumentException("The SUBSCRIBE frame must have an id header");
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("The SUBSCRIBE frame must have a destination header");
+        }
+        return new Subscription(connection, id, destination, frame.getAck());
+    }
+
+    /**
+     * @return the connection of the client
+     */
+    public StompServerConnection connection() {
+        return connection;
+    }
+
+    /**
+     * @return the subscription id, to set as the {@code subscription} header of the MESSAGE frames
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the destination pattern, which may contain wildcards
+     */
+    public String destination() {
+        return destination;
+    }
+
+    /**
+     * @return the ack mode of the subscription, {@code auto} if the client did not provide one
+     */
+    public String ack() {
+        return ack;
+    }
+
+    @Override
+    public String toString() {
+        return "Subscription{id='" + id + "', destination='" + destination + "', ack='" + ack + "'}";
+    }
+}
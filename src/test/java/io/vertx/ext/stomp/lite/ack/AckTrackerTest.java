@@ -0,0 +1,287 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.vertx.ext.stomp.lite.ack;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameException;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+import io.vertx.ext.stomp.lite.frame.Headers;
+import io.vertx.ext.stomp.lite.routing.TestConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AckTrackerTest {
+
+    private Vertx vertx;
+    private Context context;
+    private TestConnection connection;
+    private AckTracker tracker;
+    private final List<Delivery> released = new CopyOnWriteArrayList<>();
+    private final List<Delivery> deadLettered = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        connection = new TestConnection(context);
+        tracker = new AckTracker(connection).releaseHandler(released::add).deadLetterHandler(deadLettered::add);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        await(vertx.close());
+    }
+
+    @Test
+    public void clientAckIsCumulative() throws Exception {
+        tracker.subscribe("sub-0", "client", 0);
+        deliver("sub-0", 3);
+        await(barrier());
+        assertEquals(List.of("1", "2", "3"), headers(Frame.ACK));
+        assertEquals(3, tracker.inflight());
+
+        await(tracker.ack(ack("2")));
+        assertEquals(1, tracker.inflight());
+        await(tracker.ack(ack("3")));
+        assertEquals(0, tracker.inflight());
+        assertNotAcknowledged(tracker.ack(ack("1")));
+    }
+
+    @Test
+    public void clientIndividualAckOnlyAcknowledgesOneMessage() throws Exception {
+        tracker.subscribe("sub-0", "client-individual", 0);
+        deliver("sub-0", 3);
+
+        await(tracker.ack(ack("2")));
+        assertEquals(2, tracker.inflight());
+        assertNotAcknowledged(tracker.ack(ack("2")));
+        await(tracker.ack(ack("1")));
+        await(tracker.ack(ack("3")));
+        assertEquals(0, tracker.inflight());
+    }
+
+    @Test
+    public void nackedMessagesAreDeliveredAgain() throws Exception {
+        tracker.subscribe("sub-0", "client", 0);
+        deliver("sub-0", 2);
+
+        await(tracker.nack(nack("2")));
+        List<TestConnection.Message> messages = connection.messages();
+        assertEquals(4, messages.size());
+        // delivered again in their original order, with new ack ids and their first message ids
+        assertEquals("true", messages.get(2).header(AckTracker.REDELIVERED));
+        assertEquals("true", messages.get(3).header(AckTracker.REDELIVERED));
+        assertEquals(List.of("1", "2", "1", "2"), headers(Frame.MESSAGE_ID));
+        assertEquals(List.of("1", "2", "3", "4"), headers(Frame.ACK));
+        assertEquals(2, tracker.inflight());
+        assertTrue(deadLettered.isEmpty());
+    }
+
+    @Test
+    public void messagesRejectedTooManyTimesAreDeadLettered() throws Exception {
+        tracker.maxRedeliveries(1);
+        tracker.subscribe("sub-0", "client-individual", 0);
+        deliver("sub-0", 1);
+
+        await(tracker.nack(nack("1")));
+        assertEquals(2, connection.messages().size());
+        assertTrue(deadLettered.isEmpty());
+
+        await(tracker.nack(nack("2")));
+        assertEquals(2, connection.messages().size());
+        assertEquals(1, deadLettered.size());
+        assertEquals(2, deadLettered.get(0).deliveryCount());
+        assertEquals(0, tracker.inflight());
+    }
+
+    @Test
+    public void prefetchWindowHoldsMessagesBack() throws Exception {
+        tracker.subscribe(subscribe("sub-0", "client-individual", "2"));
+        deliver("sub-0", 4);
+        await(barrier());
+        assertEquals(2, connection.messages().size());
+        assertEquals(2, tracker.inflight());
+        assertEquals(2, tracker.backlog());
+
+        // the acknowledgement makes room for a message held back
+        await(tracker.ack(ack("1")));
+        assertEquals(3, connection.messages().size());
+        assertEquals(List.of("body-0", "body-1", "body-2"), bodies());
+        assertEquals(2, tracker.inflight());
+        assertEquals(1, tracker.backlog());
+    }
+
+    @Test
+    public void messagesArrivingWhileTheBacklogIsFullAreDeadLettered() throws Exception {
+        tracker.maxBacklog(1);
+        tracker.subscribe("sub-0", "client", 1);
+        deliver("sub-0", 3);
+        await(barrier());
+        assertEquals(1, connection.messages().size());
+        assertEquals(1, tracker.backlog());
+        assertEquals(1, deadLettered.size());
+        assertEquals("body-2", body(deadLettered.get(0).message()));
+    }
+
+    @Test
+    public void pendingMessagesAreReleasedOnUnsubscribe() throws Exception {
+        tracker.subscribe("sub-0", "client", 2);
+        tracker.subscribe("sub-1", "client", 2);
+        deliver("sub-0", 3);
+        deliver("sub-1", 1);
+        await(barrier());
+
+        tracker.unsubscribe("sub-0");
+        await(barrier());
+        // the messages written first, then the ones held back
+        assertEquals(3, released.size());
+        assertEquals(List.of(1, 1, 0), deliveryCounts(released));
+        assertEquals(1, tracker.inflight());
+        assertEquals(0, tracker.backlog());
+        assertNotAcknowledged(tracker.ack(ack("1")));
+    }
+
+    @Test
+    public void pendingMessagesAreReleasedOnClose() throws Exception {
+        tracker.subscribe("sub-0", "client-individual", 1);
+        deliver("sub-0", 2);
+        await(barrier());
+
+        connection.close();
+        await(barrier());
+        assertEquals(2, released.size());
+        assertEquals(0, tracker.inflight());
+        assertEquals(0, tracker.backlog());
+
+        // the messages delivered afterwards are released right away
+        deliver("sub-0", 1);
+        await(barrier());
+        assertEquals(3, released.size());
+        assertEquals(1, connection.messages().size());
+    }
+
+    @Test
+    public void untrackedMessagesHaveAMessageId() throws Exception {
+        tracker.subscribe("sub-0", "auto", 0);
+        deliver("sub-0", 2);
+        Headers headers = Headers.create(Frame.MESSAGE_ID, "given");
+        tracker.deliver("sub-1", message(0), headers);
+        await(barrier());
+
+        List<TestConnection.Message> messages = connection.messages();
+        assertEquals(3, messages.size());
+        assertNotNull(messages.get(0).header(Frame.MESSAGE_ID));
+        assertNotEquals(messages.get(0).header(Frame.MESSAGE_ID), messages.get(1).header(Frame.MESSAGE_ID));
+        assertEquals("given", messages.get(2).header(Frame.MESSAGE_ID));
+        assertEquals("sub-1", messages.get(2).header(Frame.SUBSCRIPTION));
+        assertNull(messages.get(0).header(Frame.ACK));
+        assertEquals(0, tracker.inflight());
+    }
+
+    private void deliver(String subscriptionId, int count) {
+        for (int i = 0; i < count; i++) {
+            tracker.deliver(subscriptionId, message(i), null);
+        }
+    }
+
+    private static FrameTemplate message(int index) {
+        return FrameTemplate.create(new Frame(Frame.Command.MESSAGE,
+                                              Headers.create(Frame.DESTINATION, "/queue/orders"),
+                                              Buffer.buffer("body-" + index)));
+    }
+
+    private static Frame subscribe(String id, String ack, String prefetch) {
+        return new Frame(Frame.Command.SUBSCRIBE,
+                         Headers.create(Frame.ID, id, Frame.DESTINATION, "/queue/orders", Frame.ACK, ack,
+                                        AckTracker.PREFETCH_COUNT, prefetch),
+                         null);
+    }
+
+    private static Frame ack(String id) {
+        return new Frame(Frame.Command.ACK, Headers.create(Frame.ID, id), null);
+    }
+
+    private static Frame nack(String id) {
+        return new Frame(Frame.Command.NACK, Headers.create(Frame.ID, id), null);
+    }
+
+    private List<String> headers(String name) {
+        List<String> values = new ArrayList<>();
+        connection.messages().forEach(message -> values.add(message.header(name)));
+        return values;
+    }
+
+    private List<String> bodies() {
+        List<String> bodies = new ArrayList<>();
+        connection.messages().forEach(message -> bodies.add(body(message.template())));
+        return bodies;
+    }
+
+    private static String body(FrameTemplate message) {
+        String frame = message.toBuffer((Map<String, String>) null, false).toString();
+        // the body follows the empty line and ends with the NULL octet
+        return frame.substring(frame.indexOf("\n\n") + 2, frame.length() - 1);
+    }
+
+    private static List<Integer> deliveryCounts(List<Delivery> deliveries) {
+        List<Integer> counts = new ArrayList<>();
+        deliveries.forEach(delivery -> counts.add(delivery.deliveryCount()));
+        return counts;
+    }
+
+    private static void assertNotAcknowledged(Future<Void> acknowledgement) throws Exception {
+        try {
+            await(acknowledgement);
+            fail("The acknowledgement should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FrameException);
+        }
+    }
+
+    /**
+     * @return a future completed once the tasks already submitted to the context have run
+     */
+    private Future<Void> barrier() {
+        return Future.future(promise -> context.runOnContext(v -> promise.complete()));
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+}
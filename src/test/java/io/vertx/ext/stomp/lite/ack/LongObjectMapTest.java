@@ -0,0 +1,108 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.ack;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void putGetAndRemove() {
+        LongObjectMap<String> map = new LongObjectMap<>(4);
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(-7, "b"));
+        assertEquals("a", map.put(1, "c"));
+        assertEquals("c", map.get(1));
+        assertEquals("b", map.get(-7));
+        assertNull(map.get(2));
+        assertEquals("c", map.remove(1));
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertEquals(1, count(map));
+    }
+
+    @Test
+    public void growsPastTheExpectedSize() {
+        LongObjectMap<Long> map = new LongObjectMap<>(2);
+        for (long key = 0; key < 10_000; key++) {
+            map.put(key * 31, key);
+        }
+        assertEquals(10_000, count(map));
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(key, (long) map.get(key * 31));
+        }
+    }
+
+    @Test
+    public void removalKeepsTheFollowingEntriesReachable() {
+        // dense keys in a small table make long clusters, the removals shift the following entries back
+        LongObjectMap<Long> map = new LongObjectMap<>(1024);
+        for (long key = 0; key < 500; key++) {
+            map.put(key, key);
+        }
+        for (long key = 0; key < 500; key += 2) {
+            assertEquals(key, (long) map.remove(key));
+        }
+        for (long key = 0; key < 500; key++) {
+            if (key % 2 == 0) {
+                assertNull(map.get(key));
+            } else {
+                assertEquals(key, (long) map.get(key));
+            }
+        }
+        assertEquals(250, count(map));
+    }
+
+    @Test
+    public void behavesLikeAHashMap() {
+        Random random = new Random(42);
+        LongObjectMap<Long> map = new LongObjectMap<>(8);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // a small key space so that the same keys are added and removed many times
+            long key = random.nextInt(2048) * 1024L;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+            }
+        }
+        assertEquals(expected.size(), count(map));
+        map.clear();
+        assertEquals(0, count(map));
+    }
+
+    private static int count(LongObjectMap<?> map) {
+        int[] count = {0};
+        map.forEachValue(value -> count[0]++);
+        return count[0];
+    }
+}
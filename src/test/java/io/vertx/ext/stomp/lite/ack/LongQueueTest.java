@@ -0,0 +1,55 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.ack;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LongQueueTest {
+
+    @Test
+    public void keepsTheOrderWhileGrowingAndWrapping() {
+        Random random = new Random(42);
+        LongQueue queue = new LongQueue(2);
+        ArrayDeque<Long> expected = new ArrayDeque<>();
+        for (int i = 0; i < 100_000; i++) {
+            if (random.nextInt(3) > 0) {
+                queue.addLast(i);
+                expected.addLast((long) i);
+            } else if (!expected.isEmpty()) {
+                assertEquals((long) expected.peekFirst(), queue.peekFirst());
+                assertEquals((long) expected.pollFirst(), queue.pollFirst());
+            }
+            assertEquals(expected.isEmpty(), queue.isEmpty());
+        }
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void pollingAnEmptyQueueFails() {
+        new LongQueue(4).pollFirst();
+    }
+}
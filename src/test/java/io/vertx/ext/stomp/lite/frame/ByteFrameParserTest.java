@@ -0,0 +1,305 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.frame;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxException;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ByteFrameParserTest {
+
+    private static final String FRAMES = "CONNECT\naccept-version:1.2\nhost:localhost\n\n\0"
+            + "SEND\ndestination:/queue/a\ncontent-type:text/plain\n\nhello\0\n"
+            + "SEND\ndestination:/queue/b\ncontent-length:5\n\nwo\0ld\0"
+            + "\n"
+            + "SUBSCRIBE\r\nid:0\r\ndestination:/topic/a\\cb\r\nack:client\r\n\r\n\0";
+
+    private final List<Frame> frames = new ArrayList<>();
+    private final List<FrameException> errors = new ArrayList<>();
+
+    @Test
+    public void parsesFramesReceivedAtOnce() {
+        parser(new StompServerOptions()).handle(buffer(FRAMES));
+        assertFrames();
+    }
+
+    @Test
+    public void parsesFramesSplitAtEveryPosition() {
+        byte[] bytes = FRAMES.getBytes(StandardCharsets.UTF_8);
+        for (int split = 1; split < bytes.length; split++) {
+            frames.clear();
+            ByteFrameParser parser = parser(new StompServerOptions());
+            parser.handle(Buffer.buffer(bytes).getBuffer(0, split));
+            parser.handle(Buffer.buffer(bytes).getBuffer(split, bytes.length));
+            assertFrames();
+        }
+    }
+
+    @Test
+    public void parsesFramesReceivedByteByByte() {
+        ByteFrameParser parser = parser(new StompServerOptions());
+        byte[] bytes = FRAMES.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            parser.handle(Buffer.buffer(new byte[]{b}));
+        }
+        assertFrames();
+    }
+
+    @Test
+    public void emitsTheSameFramesAsFrameParser() {
+        List<Frame> expected = new ArrayList<>();
+        new FrameParser(new StompServerOptions()).handler(expected::add).handle(buffer(FRAMES));
+        parser(new StompServerOptions()).handle(buffer(FRAMES));
+        assertEquals(expected.size(), frames.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getCommand(), frames.get(i).getCommand());
+            assertEquals(expected.get(i).getHeaders(), frames.get(i).getHeaders());
+            assertEquals(body(expected.get(i)), body(frames.get(i)));
+        }
+    }
+
+    @Test
+    public void keepsTheFirstValueOfRepeatedHeaders() {
+        parser(new StompServerOptions()).handle(buffer("SEND\ndestination:/a\ndestination:/b\n\n\0"));
+        assertEquals("/a", frames.get(0).getHeader(Frame.DESTINATION));
+    }
+
+    @Test
+    public void doesNotDecodeConnectHeaders() {
+        parser(new StompServerOptions()).handle(buffer("CONNECT\nlogin:a\\cb\n\n\0"));
+        assertEquals("a\\cb", frames.get(0).getHeader("login"));
+    }
+
+    @Test
+    public void emitsPings() {
+        parser(new StompServerOptions()).handle(buffer("\n\r\n"));
+        assertEquals(2, frames.size());
+        assertEquals(Frame.Command.PING, frames.get(0).getCommand());
+    }
+
+    @Test
+    public void reportsIllegalEscapes() {
+        parser(new StompServerOptions()).handle(buffer("SEND\ndestination:/a\\t\n\n\0"));
+        assertEquals(0, frames.size());
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void reportsInvalidContentLength() {
+        parser(new StompServerOptions()).handle(buffer("SEND\ncontent-length:-1\n\n\0"));
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void enforcesTheLimits() {
+        parser(new StompServerOptions().setMaxHeaderLength(8)).handle(buffer("SEND\ndestination:/a/long/destination\n\n\0"));
+        assertEquals(List.of("Header length exceeded"), messages());
+
+        errors.clear();
+        parser(new StompServerOptions().setMaxHeaders(2)).handle(buffer("SEND\na:1\nb:2\nc:3\n\n\0"));
+        assertEquals(List.of("Number of headers exceeded"), messages());
+
+        errors.clear();
+        parser(new StompServerOptions().setMaxBodyLength(4)).handle(buffer("SEND\n\nhello\0"));
+        assertEquals(List.of("Body size exceeded"), messages());
+
+        errors.clear();
+        parser(new StompServerOptions().setMaxBodyLength(4)).handle(buffer("SEND\ncontent-length:5\n\nhello\0"));
+        assertEquals(List.of("Body size exceeded"), messages());
+    }
+
+    @Test
+    public void throwsWithoutErrorHandler() {
+        ByteFrameParser parser = new ByteFrameParser(new StompServerOptions()).handler(frames::add);
+        assertThrows(FrameException.class, () -> parser.handle(buffer("SEND\nno header separator\n\n\0")));
+    }
+
+    @Test
+    public void streamsLargeBodies() {
+        StompServerOptions options = new StompServerOptions().setBodyStreamingEnabled(true).setBodyStreamingThreshold(4);
+        List<FrameBodyStream> streams = new ArrayList<>();
+        ByteFrameParser parser = parser(options).bodyStreamHandler(streams::add);
+        parser.handle(buffer("SEND\ndestination:/a\ncontent-length:10\n\nhello"));
+        assertEquals(1, streams.size());
+        assertNull(streams.get(0).head().getBody());
+
+        StringBuilder body = new StringBuilder();
+        List<String> events = new ArrayList<>();
+        streams.get(0).handler(chunk -> body.append(chunk.toString()))
+                      .endHandler(v -> events.add("end"));
+        parser.handle(buffer(" worl"));
+        assertEquals("hello worl", body.toString());
+        assertEquals(List.of("end"), events);
+        assertEquals(0, frames.size());
+    }
+
+    @Test
+    public void handlesTheFramesFollowingAStreamedBodyOnceItHasEnded() {
+        StompServerOptions options = new StompServerOptions().setBodyStreamingEnabled(true).setBodyStreamingThreshold(4);
+        List<FrameBodyStream> streams = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        ByteFrameParser parser = parser(options).bodyStreamHandler(streams::add);
+        parser.handler(frame -> events.add(frame.getCommand().name()));
+        parser.handle(buffer("SEND\ndestination:/a\ncontent-length:5\n\nhello\0COMMIT\ntransaction:t\n\n\0"));
+        parser.handle(buffer("SEND\ndestination:/b\n\nx\0"));
+        // the body has not been read yet
+        assertTrue(events.isEmpty());
+
+        FrameBodyStream stream = streams.get(0);
+        stream.endHandler(v -> events.add("end"));
+        assertTrue(events.isEmpty());
+        stream.handler(chunk -> events.add("chunk"));
+        assertEquals(List.of("chunk", "end", "COMMIT", "SEND"), events);
+    }
+
+    @Test
+    public void handlesTheFramesFollowingAStreamedBodyWithoutEndHandler() {
+        StompServerOptions options = new StompServerOptions().setBodyStreamingEnabled(true).setBodyStreamingThreshold(4);
+        List<FrameBodyStream> streams = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        ByteFrameParser parser = parser(options).bodyStreamHandler(streams::add);
+        parser.handler(frame -> events.add(frame.getCommand().name()));
+        parser.handle(buffer("SEND\ndestination:/a\ncontent-length:5\n\nhello\0COMMIT\ntransaction:t\n\n\0"));
+
+        FrameBodyStream stream = streams.get(0);
+        stream.handler(chunk -> events.add("chunk"));
+        assertEquals(List.of("chunk", "COMMIT"), events);
+        // an end handler set late is still called
+        stream.endHandler(v -> events.add("end"));
+        assertEquals(List.of("chunk", "COMMIT", "end"), events);
+    }
+
+    @Test
+    public void handlesTheFramesFollowingAFailedStream() {
+        StompServerOptions options = new StompServerOptions().setBodyStreamingEnabled(true).setBodyStreamingThreshold(4);
+        List<FrameBodyStream> streams = new ArrayList<>();
+        ByteFrameParser parser = parser(options).bodyStreamHandler(streams::add);
+        parser.handle(buffer("SEND\ndestination:/a\ncontent-length:5\n\nhello\0COMMIT\ntransaction:t\n\n\0"));
+        assertEquals(0, frames.size());
+
+        List<Throwable> failures = new ArrayList<>();
+        streams.get(0).exceptionHandler(failures::add).fail(new IllegalStateException());
+        assertEquals(1, failures.size());
+        assertEquals(1, frames.size());
+        assertEquals(Frame.Command.COMMIT, frames.get(0).getCommand());
+    }
+
+    @Test
+    public void closedParserDoesNotHandleTheFramesFollowingAStreamedBody() {
+        StompServerOptions options = new StompServerOptions().setBodyStreamingEnabled(true).setBodyStreamingThreshold(4);
+        List<FrameBodyStream> streams = new ArrayList<>();
+        ByteFrameParser parser = parser(options).bodyStreamHandler(streams::add);
+        parser.handle(buffer("SEND\ndestination:/a\ncontent-length:5\n\nhello\0COMMIT\ntransaction:t\n\n\0"));
+
+        // as done when the connection is closed
+        parser.close();
+        streams.get(0).fail(new IllegalStateException("Connection was closed"));
+        parser.handle(buffer("SEND\ndestination:/b\n\nx\0"));
+        assertEquals(0, frames.size());
+    }
+
+    @Test
+    public void failsAStreamNotReadWithinTheIdleTimeout() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            Context context = vertx.getOrCreateContext();
+            StompServerOptions options = new StompServerOptions().setBodyStreamingEnabled(true).setBodyStreamingThreshold(4);
+            AtomicBoolean sourcePaused = new AtomicBoolean();
+            AtomicBoolean timedOut = new AtomicBoolean();
+            CompletableFuture<Throwable> failure = new CompletableFuture<>();
+            context.runOnContext(v -> {
+                ByteFrameParser parser = parser(options).bodyStreamHandler(
+                        stream -> stream.context(context)
+                                        .sourceControl(() -> sourcePaused.set(true), () -> sourcePaused.set(false))
+                                        .idleTimeout(100, () -> timedOut.set(true))
+                                        .exceptionHandler(failure::complete));
+                // the body is never read
+                parser.handle(buffer("SEND\ndestination:/a\ncontent-length:5\n\nhello\0COMMIT\ntransaction:t\n\n\0"));
+            });
+
+            assertTrue(failure.get(5, TimeUnit.SECONDS) instanceof VertxException);
+            assertTrue(timedOut.get());
+            CompletableFuture<List<Frame>> handled = new CompletableFuture<>();
+            context.runOnContext(v -> handled.complete(new ArrayList<>(frames)));
+            assertEquals(1, handled.get(5, TimeUnit.SECONDS).size());
+            assertFalse(sourcePaused.get());
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private ByteFrameParser parser(StompServerOptions options) {
+        return new ByteFrameParser(options).handler(frames::add).errorHandler(errors::add);
+    }
+
+    private void assertFrames() {
+        assertEquals(List.of(), errors);
+        assertEquals(6, frames.size());
+
+        assertEquals(Frame.Command.CONNECT, frames.get(0).getCommand());
+        assertEquals("localhost", frames.get(0).getHeader("host"));
+
+        assertEquals(Frame.Command.SEND, frames.get(1).getCommand());
+        assertEquals("/queue/a", frames.get(1).getHeader(Frame.DESTINATION));
+        assertEquals("hello", body(frames.get(1)));
+
+        // the new lines between the frames are heart-beats
+        assertEquals(Frame.Command.PING, frames.get(2).getCommand());
+        assertEquals(Frame.Command.PING, frames.get(4).getCommand());
+
+        // the body contains a NULL octet, its length is given by the content-length
+        assertEquals(Frame.Command.SEND, frames.get(3).getCommand());
+        assertEquals("wo\0ld", body(frames.get(3)));
+
+        assertEquals(Frame.Command.SUBSCRIBE, frames.get(5).getCommand());
+        assertEquals("/topic/a:b", frames.get(5).getHeader(Frame.DESTINATION));
+        assertEquals("client", frames.get(5).getAck());
+        assertEquals(3, frames.get(5).getHeaders().size());
+    }
+
+    private List<String> messages() {
+        List<String> messages = new ArrayList<>();
+        errors.forEach(error -> messages.add(error.getMessage()));
+        return messages;
+    }
+
+    private static String body(Frame frame) {
+        return frame.getBody() != null ? frame.getBody().toString(StandardCharsets.UTF_8) : null;
+    }
+
+    private static Buffer buffer(String data) {
+        return Buffer.buffer(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.frame;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class HeadersTest {
+
+    @Test
+    public void keepsTheInsertionOrder() {
+        Headers headers = Headers.create("b", "1", "a", "2", "c", "3");
+        headers.remove("a");
+        headers.put("d", "4");
+        assertEquals(List.of("b", "c", "d"), new ArrayList<>(headers.keySet()));
+        assertEquals(List.of("1", "3", "4"), new ArrayList<>(headers.values()));
+    }
+
+    @Test
+    public void putIfAbsentKeepsTheFirstValue() {
+        Headers headers = Headers.create();
+        assertNull(headers.putIfAbsent("id", "1"));
+        assertEquals("1", headers.putIfAbsent("id", "2"));
+        assertEquals("1", headers.get("id"));
+    }
+
+    @Test
+    public void looksUpManyHeaders() {
+        // past the threshold an index is used for the lookups
+        Headers headers = Headers.create();
+        for (int i = 0; i < 100; i++) {
+            headers.put("header-" + i, Integer.toString(i));
+        }
+        for (int i = 0; i < 100; i += 3) {
+            assertEquals(Integer.toString(i), headers.remove("header-" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 3 == 0 ? null : Integer.toString(i), headers.get("header-" + i));
+        }
+        assertEquals(66, headers.size());
+        assertNull(headers.get(null));
+    }
+
+    @Test
+    public void entriesCanBeRemovedWhileIterating() {
+        Headers headers = Headers.create("a", "1", "b", "2", "c", "3");
+        Iterator<Map.Entry<String, String>> it = headers.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey().equals("b")) {
+                it.remove();
+            }
+        }
+        assertEquals(Map.of("a", "1", "c", "3"), headers);
+    }
+
+    @Test
+    public void rejectsNullNames() {
+        assertThrows(NullPointerException.class, () -> Headers.create().put(null, "value"));
+    }
+
+    @Test
+    public void decodesRawValuesWhenRead() {
+        LazyHeaders headers = rawHeaders("destination:/a\\cb\nid:1\n");
+        assertEquals("/a:b", headers.get("destination"));
+        assertEquals("1", headers.get("id"));
+    }
+
+    @Test
+    public void rawValuesAreNotReturnedAfterClear() {
+        LazyHeaders headers = rawHeaders("destination:/a\nid:1\n");
+        headers.clear();
+        headers.put("destination", "/b");
+        headers.put("id", "2");
+        assertEquals("/b", headers.get("destination"));
+        assertEquals("2", headers.get("id"));
+    }
+
+    @Test
+    public void setHeadersReplacesTheParsedValues() {
+        Frame frame = new Frame(Frame.Command.SEND, rawHeaders("destination:/a\nid:1\n"), null);
+        frame.setHeaders(Map.of("destination", "/b"));
+        assertEquals("/b", frame.getHeader("destination"));
+        assertFalse(frame.getHeaders().containsKey("id"));
+    }
+
+    @Test
+    public void replacingARawValueReturnsItDecoded() {
+        LazyHeaders headers = rawHeaders("destination:/a\\nb\n");
+        assertEquals("/a\nb", headers.put("destination", "/c"));
+        assertEquals("/c", headers.get("destination"));
+        assertTrue(headers.containsKey("destination"));
+    }
+
+    /**
+     * Creates headers holding the raw values of the given header lines
+     */
+    private static LazyHeaders rawHeaders(String lines) {
+        byte[] raw = lines.getBytes(StandardCharsets.UTF_8);
+        LazyHeaders headers = new LazyHeaders(false);
+        headers.raw(raw);
+        int start = 0;
+        for (int i = 0; i < raw.length; i++) {
+            if (raw[i] == '\n') {
+                int colon = start;
+                while (raw[colon] != ':') {
+                    colon++;
+                }
+                headers.addRaw(new String(raw, start, colon - start, StandardCharsets.UTF_8), colon + 1, i);
+                start = i + 1;
+            }
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class AuthenticationCacheTest {
+
+    private Vertx vertx;
+    private StompServerOptions options;
+    // the promises of the authentications requested to the identity service
+    private List<Promise<Map<String, String>>> authentications;
+    private Function<Map<String, String>, Future<Map<String, String>>> authenticator;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        options = new StompServerOptions().setAuthCacheEnabled(true);
+        authentications = new ArrayList<>();
+        authenticator = headers -> {
+            Promise<Map<String, String>> promise = Promise.promise();
+            authentications.add(promise);
+            return promise.future();
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        await(vertx.close());
+    }
+
+    @Test
+    public void connectionsWaitForTheAuthenticationInProgress() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(options);
+        Future<Map<String, String>> first = cache.authenticate(credentials("alice", "secret"), authenticator);
+        Future<Map<String, String>> second = cache.authenticate(credentials("alice", "secret"), authenticator);
+        assertEquals(1, authentications.size());
+
+        authentications.get(0).complete(Map.of("user-id", "alice"));
+        assertEquals("alice", await(first).get("user-id"));
+        assertEquals("alice", await(second).get("user-id"));
+    }
+
+    @Test
+    public void successfulAuthenticationsAreCachedUntilTheirTtl() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(options.setAuthCacheTtl(100));
+        Future<Map<String, String>> first = cache.authenticate(credentials("alice", "secret"), authenticator);
+        authentications.get(0).complete(Map.of("user-id", "alice"));
+        await(first);
+
+        assertEquals("alice", await(cache.authenticate(credentials("alice", "secret"), authenticator)).get("user-id"));
+        assertEquals(1, authentications.size());
+
+        Thread.sleep(150);
+        cache.authenticate(credentials("alice", "secret"), authenticator);
+        assertEquals(2, authentications.size());
+    }
+
+    @Test
+    public void failedAuthenticationsAreNotCached() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(options);
+        Future<Map<String, String>> first = cache.authenticate(credentials("alice", "wrong"), authenticator);
+        Future<Map<String, String>> second = cache.authenticate(credentials("alice", "wrong"), authenticator);
+        authentications.get(0).fail(new SecurityException("Invalid credentials"));
+        assertThrows(ExecutionException.class, () -> await(first));
+        assertThrows(ExecutionException.class, () -> await(second));
+        assertEquals(0, cache.size());
+
+        cache.authenticate(credentials("alice", "wrong"), authenticator);
+        assertEquals(2, authentications.size());
+    }
+
+    @Test
+    public void authenticatorExceptionsAreNotCached() {
+        AuthenticationCache cache = new AuthenticationCache(options);
+        assertThrows(IllegalStateException.class, () -> cache.authenticate(credentials("alice", "secret"), headers -> {
+            throw new IllegalStateException("The identity service is down");
+        }));
+        assertEquals(0, cache.size());
+
+        cache.authenticate(credentials("alice", "secret"), authenticator);
+        assertEquals(1, authentications.size());
+    }
+
+    @Test
+    public void eachCredentialsHaveTheirOwnEntry() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(options);
+        cache.authenticate(credentials("alice", "secret"), authenticator);
+        cache.authenticate(credentials("alice", "other"), authenticator);
+        // the length prefix keeps the values apart
+        cache.authenticate(credentials("alicesecret", ""), authenticator);
+        cache.authenticate(credentials("alice", null), authenticator);
+        assertEquals(4, authentications.size());
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(options.setAuthCacheMaxSize(2));
+        for (String login : List.of("alice", "bob")) {
+            cache.authenticate(credentials(login, "secret"), authenticator);
+        }
+        authentications.forEach(promise -> promise.complete(null));
+        // alice is used again, so bob is the least recently used
+        cache.authenticate(credentials("alice", "secret"), authenticator);
+        cache.authenticate(credentials("carol", "secret"), authenticator);
+        assertEquals(3, authentications.size());
+        authentications.get(2).complete(null);
+        assertEquals(2, cache.size());
+
+        cache.authenticate(credentials("alice", "secret"), authenticator);
+        assertEquals(3, authentications.size());
+        cache.authenticate(credentials("bob", "secret"), authenticator);
+        assertEquals(4, authentications.size());
+    }
+
+    @Test
+    public void authenticationsInProgressAreNotEvicted() {
+        AuthenticationCache cache = new AuthenticationCache(options.setAuthCacheMaxSize(1));
+        cache.authenticate(credentials("alice", "secret"), authenticator);
+        cache.authenticate(credentials("bob", "secret"), authenticator);
+        assertEquals(2, cache.size());
+
+        cache.authenticate(credentials("alice", "secret"), authenticator);
+        assertEquals(2, authentications.size());
+    }
+
+    @Test
+    public void cacheIsSharedUntilReleased() {
+        assertNull(AuthenticationCache.get(vertx, new StompServerOptions()));
+
+        AuthenticationCache cache = AuthenticationCache.get(vertx, options);
+        assertSame(cache, AuthenticationCache.get(vertx, options));
+        AuthenticationCache.release(vertx, options);
+        assertSame(cache, AuthenticationCache.get(vertx, options));
+
+        AuthenticationCache.release(vertx, options);
+        AuthenticationCache.release(vertx, options);
+        assertNotSame(cache, AuthenticationCache.get(vertx, options));
+        AuthenticationCache.release(vertx, options);
+    }
+
+    private static Map<String, String> credentials(String login, String passcode) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(Frame.LOGIN, login);
+        if (passcode != null) {
+            headers.put(Frame.PASSCODE, passcode);
+        }
+        return headers;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+}
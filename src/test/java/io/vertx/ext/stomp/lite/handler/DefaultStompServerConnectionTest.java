@@ -0,0 +1,235 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.lite.StompServerHandler;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.Frames;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultStompServerConnectionTest {
+
+    private static final String CONNECT = "CONNECT\naccept-version:1.2\nhost:localhost\n\n\0";
+    private static final String SUBSCRIBE = "SUBSCRIBE\nid:0\ndestination:/topic/prices\n\n\0";
+    private static final String SEND = "SEND\ndestination:/queue/orders\n\nbuy\0";
+
+    private Vertx vertx;
+    private Context context;
+    private TestTransport transport;
+    private Promise<Map<String, String>> authentication;
+    // the frames handled by the handler, in order
+    private List<String> handled;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        transport = new TestTransport();
+        authentication = Promise.promise();
+        handled = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void framesPipelinedAfterConnectAreHandledOnceAuthenticated() throws Exception {
+        onContext(() -> {
+            connection(new StompServerOptions()).handleData(Buffer.buffer(CONNECT + SUBSCRIBE + "\n" + SEND));
+            return null;
+        });
+        assertTrue(handled.isEmpty());
+
+        authentication.complete();
+        barrier();
+        assertTrue(transport.writtenData().startsWith("CONNECTED\n"));
+        assertEquals(List.of("subscribe /topic/prices", "send /queue/orders"), handled);
+    }
+
+    @Test
+    public void framesReceivedWhileAuthenticatingFollowThePipelinedOnes() throws Exception {
+        DefaultStompServerConnection connection = onContext(() -> {
+            DefaultStompServerConnection created = connection(new StompServerOptions());
+            created.handleData(Buffer.buffer(CONNECT + SUBSCRIBE));
+            return created;
+        });
+        onContext(() -> {
+            connection.handleData(Buffer.buffer(SEND));
+            return null;
+        });
+        assertTrue(handled.isEmpty());
+
+        authentication.complete();
+        barrier();
+        assertEquals(List.of("subscribe /topic/prices", "send /queue/orders"), handled);
+    }
+
+    @Test
+    public void pipelinedFramesAreDroppedWhenTheAuthenticationFails() throws Exception {
+        onContext(() -> {
+            connection(new StompServerOptions()).handleData(Buffer.buffer(CONNECT + SUBSCRIBE + SEND));
+            return null;
+        });
+
+        authentication.fail(new SecurityException("Invalid credentials"));
+        barrier();
+        assertTrue(transport.writtenData().startsWith("ERROR\n"));
+        assertTrue(handled.isEmpty());
+    }
+
+    @Test
+    public void pipelinedFramesAreBoundedByTheMaxConnectFrameLength() throws Exception {
+        StompServerOptions options = new StompServerOptions().setMaxConnectFrameLength(CONNECT.length() + SUBSCRIBE.length());
+        onContext(() -> {
+            DefaultStompServerConnection connection = connection(options);
+            connection.handleData(Buffer.buffer(CONNECT + SUBSCRIBE));
+            connection.handleData(Buffer.buffer(SEND));
+            return null;
+        });
+        assertTrue(transport.isClosed());
+
+        authentication.complete();
+        barrier();
+        assertTrue(transport.written().isEmpty());
+        assertTrue(handled.isEmpty());
+    }
+
+    /**
+     * Creates a connection on the current context, authenticated once {@link #authentication} completes
+     */
+    private DefaultStompServerConnection connection(StompServerOptions options) {
+        return new DefaultStompServerConnection(transport,
+                                                vertx,
+                                                options,
+                                                connection -> new RecordingHandler(),
+                                                Frames.createConnectedTemplate("1.2", Frame.Heartbeat.create(options.getHeartbeat())),
+                                                null,
+                                                new AdmissionControl(options));
+    }
+
+    /**
+     * Waits until the tasks already submitted to the context have run
+     */
+    private void barrier() throws Exception {
+        onContext(() -> null);
+    }
+
+    /**
+     * Runs the given action on the context of the connection, the connection must be used from it
+     */
+    private <T> T onContext(Callable<T> action) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            try {
+                result.complete(action.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records the frames it handles
+     */
+    private class RecordingHandler implements StompServerHandler {
+
+        @Override
+        public Future<Map<String, String>> authenticate(Map<String, String> connectHeaders) {
+            return authentication.future();
+        }
+
+        @Override
+        public void send(Frame frame) {
+            record(frame);
+        }
+
+        @Override
+        public void subscribe(Frame frame) {
+            record(frame);
+        }
+
+        @Override
+        public void unsubscribe(Frame frame) {
+            record(frame);
+        }
+
+        @Override
+        public void begin(Frame frame) {
+            record(frame);
+        }
+
+        @Override
+        public void abort(Frame frame) {
+            record(frame);
+        }
+
+        @Override
+        public void commit(Frame frame) {
+            record(frame);
+        }
+
+        @Override
+        public void ack(Frame frame) {
+            record(frame);
+        }
+
+        @Override
+        public void nack(Frame frame) {
+            record(frame);
+        }
+
+        @Override
+        public void exception(Throwable t) {
+        }
+
+        @Override
+        public void disconnected() {
+        }
+
+        @Override
+        public void closed() {
+        }
+
+        private void record(Frame frame) {
+            handled.add(frame.getCommand().name().toLowerCase() + " " + frame.getDestination());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HeartbeatWheelTest {
+
+    private static final long TICK = 10;
+
+    private Vertx vertx;
+    private Context context;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void wheelIsSharedByTheConnectionsOfAContext() throws Exception {
+        Context otherContext = vertx.getOrCreateContext();
+        HeartbeatWheel wheel = onContext(context, () -> HeartbeatWheel.get(vertx, context, TICK));
+        assertSame(wheel, onContext(context, () -> HeartbeatWheel.get(vertx, context, TICK)));
+        assertNotSame(wheel, onContext(otherContext, () -> HeartbeatWheel.get(vertx, otherContext, TICK)));
+    }
+
+    @Test
+    public void checksRunOnceTheirDeadlineIsReached() throws Exception {
+        List<Long> lateness = new CopyOnWriteArrayList<>();
+        CountDownLatch checked = new CountDownLatch(3);
+        onContext(context, () -> {
+            // 1 ms ticks, the wheel rotates in 512 ms
+            HeartbeatWheel wheel = HeartbeatWheel.get(vertx, context, 1);
+            long now = System.nanoTime();
+            // the last one is more than a rotation of the wheel away
+            for (long delay : List.of(1L, 50L, 600L)) {
+                long deadline = now + TimeUnit.MILLISECONDS.toNanos(delay);
+                wheel.schedule(deadline, time -> {
+                    lateness.add(time - deadline);
+                    checked.countDown();
+                    return HeartbeatWheel.Check.STOP;
+                });
+            }
+            return null;
+        });
+        assertTrue(checked.await(10, TimeUnit.SECONDS));
+        for (long late : lateness) {
+            assertTrue(late >= 0);
+        }
+    }
+
+    @Test
+    public void checksAreRescheduledByTheirResult() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CountDownLatch stopped = new CountDownLatch(1);
+        onContext(context, () -> HeartbeatWheel.get(vertx, context, TICK).schedule(System.nanoTime(), now -> {
+            if (checks.incrementAndGet() < 3) {
+                return now + TimeUnit.MILLISECONDS.toNanos(TICK * 2);
+            }
+            stopped.countDown();
+            return HeartbeatWheel.Check.STOP;
+        }));
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        Thread.sleep(TICK * 5);
+        assertEquals(3, checks.get());
+    }
+
+    @Test
+    public void cancelledChecksDoNotRun() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        CountDownLatch checked = new CountDownLatch(1);
+        onContext(context, () -> {
+            HeartbeatWheel wheel = HeartbeatWheel.get(vertx, context, TICK);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TICK * 3);
+            HeartbeatWheel.Timeout cancelled = wheel.schedule(deadline, now -> {
+                checks.incrementAndGet();
+                return now + TimeUnit.MILLISECONDS.toNanos(TICK);
+            });
+            wheel.schedule(deadline, now -> {
+                checked.countDown();
+                return HeartbeatWheel.Check.STOP;
+            });
+            wheel.cancel(cancelled);
+            return null;
+        });
+        assertTrue(checked.await(5, TimeUnit.SECONDS));
+        assertEquals(0, checks.get());
+    }
+
+    @Test
+    public void checksCancelledWhileRunningAreNotRescheduled() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        HeartbeatWheel wheel = onContext(context, () -> HeartbeatWheel.get(vertx, context, TICK));
+        HeartbeatWheel.Timeout[] timeout = new HeartbeatWheel.Timeout[1];
+        onContext(context, () -> timeout[0] = wheel.schedule(System.nanoTime(), now -> {
+            checks.incrementAndGet();
+            wheel.cancel(timeout[0]);
+            return now + TimeUnit.MILLISECONDS.toNanos(TICK);
+        }));
+        Thread.sleep(TICK * 10);
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    public void failingChecksAreStoppedWithoutAffectingTheOthers() throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch checked = new CountDownLatch(3);
+        onContext(context, () -> {
+            HeartbeatWheel wheel = HeartbeatWheel.get(vertx, context, TICK);
+            long now = System.nanoTime();
+            wheel.schedule(now, time -> {
+                failures.incrementAndGet();
+                throw new IllegalStateException("check failed");
+            });
+            wheel.schedule(now, time -> {
+                checked.countDown();
+                return checked.getCount() > 0 ? time + TimeUnit.MILLISECONDS.toNanos(TICK) : HeartbeatWheel.Check.STOP;
+            });
+            return null;
+        });
+        assertTrue(checked.await(5, TimeUnit.SECONDS));
+        assertEquals(1, failures.get());
+    }
+
+    /**
+     * Runs the given action on the given context, the wheel must be used from it
+     */
+    private static <T> T onContext(Context context, Callable<T> action) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            try {
+                result.complete(action.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.lite.OutboundOverflowPolicy;
+import io.vertx.ext.stomp.lite.StompServerOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundWriterTest {
+
+    private static final Buffer TEN_BYTES = Buffer.buffer("0123456789");
+
+    private Vertx vertx;
+    private Context context;
+    private TestTransport transport;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        transport = new TestTransport();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void writesOfOneTurnAreCoalesced() throws Exception {
+        StompServerOptions options = new StompServerOptions().setWriteCoalescingEnabled(true);
+        List<Future<Void>> writes = onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (String frame : List.of("a", "b", "c")) {
+                futures.add(writer.write(Buffer.buffer(frame)));
+            }
+            assertTrue(transport.written().isEmpty());
+            return futures;
+        });
+        // the flush runs once the current turn is done
+        barrier();
+        assertEquals(1, transport.written().size());
+        assertEquals("abc", transport.writtenData());
+        for (Future<Void> write : writes) {
+            assertTrue(write.succeeded());
+        }
+    }
+
+    @Test
+    public void coalescedWritesAreFlushedAtTheMaxBytes() throws Exception {
+        StompServerOptions options = new StompServerOptions().setWriteCoalescingEnabled(true)
+                                                             .setWriteCoalescingMaxBytes(20);
+        onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            writer.write(TEN_BYTES);
+            writer.write(TEN_BYTES);
+            assertEquals(1, transport.written().size());
+            writer.write(Buffer.buffer("x"));
+            return null;
+        });
+        barrier();
+        assertEquals(2, transport.written().size());
+        assertEquals("x", transport.written().get(1).toString());
+    }
+
+    @Test
+    public void coalescedWritesWaitForTheMaxDelay() throws Exception {
+        StompServerOptions options = new StompServerOptions().setWriteCoalescingEnabled(true)
+                                                             .setWriteCoalescingMaxDelay(50);
+        onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            writer.write(Buffer.buffer("a"));
+            return null;
+        });
+        barrier();
+        assertTrue(transport.written().isEmpty());
+
+        Thread.sleep(100);
+        barrier();
+        assertEquals("a", transport.writtenData());
+    }
+
+    @Test
+    public void writesAreSentRightAwayWithoutCoalescing() throws Exception {
+        onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, new StompServerOptions(), transport);
+            writer.write(Buffer.buffer("a"));
+            writer.write(Buffer.buffer("b"));
+            assertEquals(2, transport.written().size());
+            return null;
+        });
+    }
+
+    @Test
+    public void framesAreQueuedUntilTheSocketDrains() throws Exception {
+        AtomicInteger drains = new AtomicInteger();
+        List<Future<Void>> writes = onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, watermarks(), transport);
+            writer.drainHandler(v -> drains.incrementAndGet());
+            transport.writeQueueFull(true);
+            List<Future<Void>> futures = List.of(writer.write(Buffer.buffer("a")), writer.write(Buffer.buffer("b")));
+            assertEquals(2, writer.queuedMessages());
+            assertEquals(2, writer.queuedBytes());
+            assertFalse(writer.writeQueueFull());
+            return futures;
+        });
+        assertTrue(transport.written().isEmpty());
+
+        onContext(() -> {
+            transport.writeQueueFull(false);
+            return null;
+        });
+        assertEquals("ab", transport.writtenData());
+        assertTrue(writes.get(0).succeeded());
+        assertTrue(writes.get(1).succeeded());
+        // the queue never reached the high watermark
+        assertEquals(0, drains.get());
+    }
+
+    @Test
+    public void drainHandlerIsCalledUnderTheLowWatermark() throws Exception {
+        AtomicInteger drains = new AtomicInteger();
+        OutboundWriter writer = onContext(() -> {
+            OutboundWriter created = new OutboundWriter(vertx, context, watermarks(), transport);
+            created.drainHandler(v -> drains.incrementAndGet());
+            transport.writeQueueFull(true);
+            created.write(TEN_BYTES);
+            return created;
+        });
+        assertTrue(writer.writeQueueFull());
+
+        onContext(() -> {
+            transport.writeQueueFull(false);
+            return null;
+        });
+        assertFalse(writer.writeQueueFull());
+        assertEquals(0, writer.queuedBytes());
+        assertEquals(1, drains.get());
+    }
+
+    @Test
+    public void dropNewestPolicyDropsTheFramesOverTheHighWatermark() throws Exception {
+        StompServerOptions options = watermarks().setOutboundOverflowPolicy(OutboundOverflowPolicy.DROP_NEWEST);
+        List<Future<Void>> writes = onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            transport.writeQueueFull(true);
+            List<Future<Void>> futures = List.of(writer.write(TEN_BYTES), writer.write(Buffer.buffer("x")));
+            assertEquals(10, writer.queuedBytes());
+            transport.writeQueueFull(false);
+            return futures;
+        });
+        assertTrue(writes.get(0).succeeded());
+        assertTrue(writes.get(1).failed());
+        assertEquals(TEN_BYTES.toString(), transport.writtenData());
+    }
+
+    @Test
+    public void dropOldestPolicyDropsTheQueuedFrames() throws Exception {
+        StompServerOptions options = watermarks().setOutboundOverflowPolicy(OutboundOverflowPolicy.DROP_OLDEST);
+        List<Future<Void>> writes = onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            transport.writeQueueFull(true);
+            List<Future<Void>> futures = List.of(writer.write(TEN_BYTES), writer.write(Buffer.buffer("x")));
+            assertEquals(1, writer.queuedBytes());
+            transport.writeQueueFull(false);
+            return futures;
+        });
+        assertTrue(writes.get(0).failed());
+        assertTrue(writes.get(1).succeeded());
+        assertEquals("x", transport.writtenData());
+    }
+
+    @Test
+    public void disconnectPolicyDropsEverythingAndNotifiesTheOverflow() throws Exception {
+        StompServerOptions options = watermarks().setOutboundOverflowPolicy(OutboundOverflowPolicy.DISCONNECT);
+        AtomicInteger overflows = new AtomicInteger();
+        AtomicInteger drains = new AtomicInteger();
+        List<Future<Void>> writes = onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            writer.overflowHandler(v -> overflows.incrementAndGet());
+            writer.drainHandler(v -> drains.incrementAndGet());
+            transport.writeQueueFull(true);
+            List<Future<Void>> futures = List.of(writer.write(TEN_BYTES), writer.write(Buffer.buffer("x")));
+            assertEquals(0, writer.queuedBytes());
+            assertEquals(0, writer.queuedMessages());
+            return futures;
+        });
+        assertEquals(1, overflows.get());
+        // the connection is being closed
+        assertEquals(0, drains.get());
+        assertTrue(writes.get(0).failed());
+        assertTrue(writes.get(1).failed());
+    }
+
+    @Test
+    public void conflatedFramesAreReplacedInPlace() throws Exception {
+        List<Future<Void>> writes = onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, watermarks(), transport);
+            transport.writeQueueFull(true);
+            List<Future<Void>> futures = List.of(writer.write(Buffer.buffer("a1"), "a"),
+                                                 writer.write(Buffer.buffer("b1"), "b"),
+                                                 writer.write(Buffer.buffer("a2"), "a"));
+            assertEquals(2, writer.queuedMessages());
+            assertEquals(4, writer.queuedBytes());
+            assertTrue(futures.get(0).failed());
+            transport.writeQueueFull(false);
+            return futures;
+        });
+        // the newer frame takes the place of the one it replaced
+        assertEquals("a2b1", transport.writtenData());
+        assertTrue(writes.get(1).succeeded());
+        assertTrue(writes.get(2).succeeded());
+    }
+
+    @Test
+    public void conflatedFramesAreSentRightAwayWhenTheSocketIsNotFull() throws Exception {
+        List<Future<Void>> writes = onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, watermarks(), transport);
+            return List.of(writer.write(Buffer.buffer("a1"), "a"), writer.write(Buffer.buffer("a2"), "a"));
+        });
+        assertEquals("a1a2", transport.writtenData());
+        assertTrue(writes.get(0).succeeded());
+        assertTrue(writes.get(1).succeeded());
+    }
+
+    @Test
+    public void conflationKeepsTheQueueUnderTheHighWatermark() throws Exception {
+        StompServerOptions options = watermarks().setOutboundOverflowPolicy(OutboundOverflowPolicy.DISCONNECT);
+        AtomicInteger overflows = new AtomicInteger();
+        onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            writer.overflowHandler(v -> overflows.incrementAndGet());
+            transport.writeQueueFull(true);
+            for (int i = 0; i < 100; i++) {
+                writer.write(Buffer.buffer("price-" + (i % 10)), "price");
+            }
+            assertEquals(1, writer.queuedMessages());
+            assertFalse(writer.writeQueueFull());
+            transport.writeQueueFull(false);
+            return null;
+        });
+        assertEquals(0, overflows.get());
+        assertEquals("price-9", transport.writtenData());
+    }
+
+    @Test
+    public void blockPolicyClosesTheConnectionPastTheMaxBytes() throws Exception {
+        StompServerOptions options = watermarks().setOutboundQueueMaxBytes(30);
+        AtomicInteger overflows = new AtomicInteger();
+        List<Future<Void>> writes = new ArrayList<>();
+        onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            writer.overflowHandler(v -> overflows.incrementAndGet());
+            transport.writeQueueFull(true);
+            for (int i = 0; i < 3; i++) {
+                writes.add(writer.write(TEN_BYTES));
+            }
+            // the producers are told to stop, but the frames are still queued
+            assertTrue(writer.writeQueueFull());
+            assertEquals(30, writer.queuedBytes());
+            assertEquals(0, overflows.get());
+
+            writes.add(writer.write(Buffer.buffer("x")));
+            assertEquals(1, overflows.get());
+            assertEquals(0, writer.queuedBytes());
+            return null;
+        });
+        for (Future<Void> write : writes) {
+            assertTrue(write.failed());
+        }
+        assertTrue(transport.written().isEmpty());
+    }
+
+    @Test
+    public void maxBytesLowerThanTheHighWatermarkIsRaisedToIt() throws Exception {
+        StompServerOptions options = watermarks().setOutboundQueueMaxBytes(0);
+        AtomicInteger overflows = new AtomicInteger();
+        onContext(() -> {
+            OutboundWriter writer = new OutboundWriter(vertx, context, options, transport);
+            writer.overflowHandler(v -> overflows.incrementAndGet());
+            transport.writeQueueFull(true);
+            writer.write(TEN_BYTES);
+            assertEquals(0, overflows.get());
+            assertEquals(10, writer.queuedBytes());
+            return null;
+        });
+    }
+
+    /**
+     * @return options with a queue full at 10 bytes and drained under 5 bytes
+     */
+    private static StompServerOptions watermarks() {
+        return new StompServerOptions().setOutboundQueueHighWatermark(10)
+                                       .setOutboundQueueLowWatermark(5)
+                                       .setOutboundOverflowPolicy(OutboundOverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Waits until the tasks already submitted to the context have run
+     */
+    private void barrier() throws Exception {
+        onContext(() -> null);
+    }
+
+    /**
+     * Runs the given action on the context of the connection, the writer must be used from it
+     */
+    private <T> T onContext(Callable<T> action) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        context.runOnContext(v -> {
+            try {
+                result.complete(action.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        try {
+            return result.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
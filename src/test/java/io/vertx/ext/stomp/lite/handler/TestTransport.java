@@ -0,0 +1,169 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.SocketAddress;
+
+import javax.net.ssl.SSLSession;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transport recording the data written to it, its write queue is full while {@link #writeQueueFull(boolean)} is set.
+ * It must be used from the context of the connection.
+ */
+class TestTransport implements StompTransport {
+
+    private final List<Buffer> written = new ArrayList<>();
+    private final List<Promise<Void>> writes = new ArrayList<>();
+    private Handler<Void> drainHandler;
+    private boolean writeQueueFull = false;
+    private boolean completeWrites = true;
+    private boolean paused = false;
+    private boolean closed = false;
+
+    /**
+     * @return the buffers written to the socket, in order
+     */
+    List<Buffer> written() {
+        return written;
+    }
+
+    /**
+     * @return the written data, as a string
+     */
+    String writtenData() {
+        StringBuilder data = new StringBuilder();
+        written.forEach(buffer -> data.append(buffer.toString()));
+        return data.toString();
+    }
+
+    /**
+     * Sets whether the write queue is full, the drain handler is called when it is no longer full
+     */
+    void writeQueueFull(boolean writeQueueFull) {
+        this.writeQueueFull = writeQueueFull;
+        if (!writeQueueFull && drainHandler != null) {
+            drainHandler.handle(null);
+        }
+    }
+
+    /**
+     * Sets whether the writes are completed right away, otherwise they are completed by {@link #completeWrites()}
+     */
+    void completeWrites(boolean completeWrites) {
+        this.completeWrites = completeWrites;
+    }
+
+    /**
+     * Completes the writes not completed yet
+     */
+    void completeWrites() {
+        List<Promise<Void>> pending = new ArrayList<>(writes);
+        writes.clear();
+        pending.forEach(Promise::complete);
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public Future<Void> write(Buffer buffer) {
+        if (closed) {
+            return Future.failedFuture("Connection was closed");
+        }
+        written.add(buffer);
+        if (completeWrites) {
+            return Future.succeededFuture();
+        }
+        Promise<Void> promise = Promise.promise();
+        writes.add(promise);
+        return promise.future();
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return writeQueueFull;
+    }
+
+    @Override
+    public void drainHandler(Handler<Void> handler) {
+        this.drainHandler = handler;
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+    }
+
+    @Override
+    public void resume() {
+        paused = false;
+    }
+
+    @Override
+    public void fetch(long amount) {
+        paused = false;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public String binaryHandlerID() {
+        return null;
+    }
+
+    @Override
+    public String textHandlerID() {
+        return null;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return SocketAddress.inetSocketAddress(61613, "127.0.0.1");
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return SocketAddress.inetSocketAddress(61613, "127.0.0.1");
+    }
+
+    @Override
+    public boolean isSsl() {
+        return false;
+    }
+
+    @Override
+    public SSLSession sslSession() {
+        return null;
+    }
+}
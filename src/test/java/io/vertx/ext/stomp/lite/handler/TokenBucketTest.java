@@ -0,0 +1,102 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.handler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void allowsABurstOfOneSecond() {
+        // a low rate so that nothing is refilled while the test runs
+        TokenBucket bucket = new TokenBucket(10);
+        int granted = 0;
+        for (int i = 0; i < 20; i++) {
+            if (bucket.tryAcquire(1)) {
+                granted++;
+            }
+        }
+        // the time elapsed while acquiring may leave room for one more
+        assertTrue("granted " + granted, granted == 10 || granted == 11);
+        assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void refillsAtTheGivenRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(10);
+        while (bucket.tryAcquire(1)) {
+            // empties the bucket
+        }
+        Thread.sleep(350);
+        assertTrue(bucket.tryAcquire(1));
+        assertTrue(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void grantsALargeAcquisitionWhenFull() {
+        TokenBucket bucket = new TokenBucket(10);
+        assertTrue(bucket.isFull(System.nanoTime()));
+        assertTrue(bucket.tryAcquire(50));
+        assertFalse(bucket.isFull(System.nanoTime()));
+        // the debt of four seconds must be paid back first
+        assertFalse(bucket.tryAcquire(1));
+        assertFalse(bucket.tryAcquire(50));
+    }
+
+    @Test
+    public void limitsConcurrentAcquisitions() throws Exception {
+        int rate = 1000;
+        TokenBucket bucket = new TokenBucket(rate);
+        AtomicInteger granted = new AtomicInteger();
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    if (bucket.tryAcquire(1)) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // the burst plus what was refilled meanwhile
+        assertTrue("granted " + granted.get(), granted.get() <= rate + 1 + elapsedMillis * rate / 1000 + 1);
+        assertTrue("granted " + granted.get(), granted.get() >= rate);
+    }
+
+    @Test
+    public void rejectsANonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0));
+    }
+}
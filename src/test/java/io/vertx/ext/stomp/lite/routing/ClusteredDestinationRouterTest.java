@@ -0,0 +1,188 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import com.hazelcast.config.Config;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.eventbus.EventBusOptions;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.Headers;
+import io.vertx.spi.cluster.hazelcast.ConfigUtil;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClusteredDestinationRouterTest {
+
+    private static final int NODES = 3;
+    private static final long SNAPSHOT_INTERVAL = 200;
+
+    private final List<Vertx> nodes = new ArrayList<>();
+    private final List<ClusteredDestinationRouter> routers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        // a cluster of its own for each test, reached over the loopback interface only
+        String clusterName = UUID.randomUUID().toString();
+        String address = "test." + clusterName;
+        for (int i = 0; i < NODES; i++) {
+            Config config = ConfigUtil.loadConfig().setClusterName(clusterName);
+            config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+            config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+            config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+
+            Vertx vertx = await(Vertx.builder()
+                                     .with(new VertxOptions().setEventBusOptions(new EventBusOptions().setHost("127.0.0.1")))
+                                     .withClusterManager(new HazelcastClusterManager(config))
+                                     .buildClustered());
+            nodes.add(vertx);
+            ClusteredDestinationRouter router = new ClusteredDestinationRouter(vertx, address, '/', SNAPSHOT_INTERVAL);
+            await(router.start());
+            routers.add(router);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (ClusteredDestinationRouter router : routers) {
+            await(router.close());
+        }
+        for (Vertx vertx : nodes) {
+            await(vertx.close());
+        }
+    }
+
+    @Test
+    public void forwardsOnlyToInterestedNodes() throws Exception {
+        TestConnection prices = new TestConnection(nodes.get(1).getOrCreateContext());
+        TestConnection orders = new TestConnection(nodes.get(2).getOrCreateContext());
+        await(routers.get(1).subscribe(prices, subscribe("sub-0", "/topic/prices/*")));
+        await(routers.get(2).subscribe(orders, subscribe("sub-1", "/queue/orders")));
+
+        ClusteredDestinationRouter publisher = routers.get(0);
+        awaitInterest(publisher, "/topic/prices/eur", Set.of(routers.get(1).nodeId()));
+        awaitInterest(publisher, "/queue/orders", Set.of(routers.get(2).nodeId()));
+        awaitInterest(publisher, "/topic/news", Set.of());
+
+        publisher.publish("/topic/prices/eur", message("/topic/prices/eur"));
+        publisher.publish("/topic/news", message("/topic/news"));
+        awaitCondition(() -> prices.messages().size() == 1);
+        assertEquals("sub-0", prices.messages().get(0).header(Frame.SUBSCRIPTION));
+        assertEquals("/topic/prices/eur", prices.messages().get(0).header(Frame.DESTINATION));
+
+        // the messages sent by a node to another arrive in order, a message forwarded by mistake would be received first
+        publisher.publish("/queue/orders", message("/queue/orders"));
+        awaitCondition(() -> orders.messages().size() == 1);
+        assertEquals("/queue/orders", orders.messages().get(0).header(Frame.DESTINATION));
+        assertEquals(1, prices.messages().size());
+    }
+
+    @Test
+    public void interestIsRemovedOnUnsubscribe() throws Exception {
+        TestConnection connection = new TestConnection(nodes.get(1).getOrCreateContext());
+        ClusteredDestinationRouter router = routers.get(1);
+        await(router.subscribe(connection, subscribe("sub-0", "/topic/prices")));
+        await(router.subscribe(connection, subscribe("sub-1", "/topic/prices")));
+        awaitInterest(routers.get(0), "/topic/prices", Set.of(router.nodeId()));
+        awaitInterest(routers.get(2), "/topic/prices", Set.of(router.nodeId()));
+
+        // the node keeps its interest while a local subscription uses the pattern
+        await(router.unsubscribe(connection, "sub-0"));
+        Thread.sleep(SNAPSHOT_INTERVAL * 2);
+        assertEquals(Set.of(router.nodeId()), await(routers.get(0).interestedNodes("/topic/prices")));
+
+        await(router.unsubscribe(connection, "sub-1"));
+        awaitInterest(routers.get(0), "/topic/prices", Set.of());
+        awaitInterest(routers.get(2), "/topic/prices", Set.of());
+    }
+
+    @Test
+    public void interestIsRemovedWhenTheConnectionIsClosed() throws Exception {
+        TestConnection connection = new TestConnection(nodes.get(1).getOrCreateContext());
+        await(routers.get(1).subscribe(connection, subscribe("sub-0", "/topic/prices")));
+        awaitInterest(routers.get(0), "/topic/prices", Set.of(routers.get(1).nodeId()));
+
+        connection.close();
+        awaitInterest(routers.get(0), "/topic/prices", Set.of());
+    }
+
+    @Test
+    public void interestIsRemovedWhenTheRouterIsClosed() throws Exception {
+        TestConnection first = new TestConnection(nodes.get(1).getOrCreateContext());
+        TestConnection second = new TestConnection(nodes.get(2).getOrCreateContext());
+        await(routers.get(1).subscribe(first, subscribe("sub-0", "/topic/prices")));
+        await(routers.get(2).subscribe(second, subscribe("sub-0", "/topic/prices")));
+        awaitInterest(routers.get(0), "/topic/prices", Set.of(routers.get(1).nodeId(), routers.get(2).nodeId()));
+
+        await(routers.get(1).close());
+        awaitInterest(routers.get(0), "/topic/prices", Set.of(routers.get(2).nodeId()));
+
+        routers.get(0).publish("/topic/prices", message("/topic/prices"));
+        awaitCondition(() -> second.messages().size() == 1);
+        assertTrue(first.messages().isEmpty());
+    }
+
+    private static Frame subscribe(String id, String destination) {
+        return new Frame(Frame.Command.SUBSCRIBE, Headers.create(Frame.ID, id, Frame.DESTINATION, destination), null);
+    }
+
+    private static Frame message(String destination) {
+        return new Frame(Frame.Command.MESSAGE, Headers.create(Frame.DESTINATION, destination), null);
+    }
+
+    /**
+     * Waits for the interest published by the other nodes to reach the given router
+     */
+    private static void awaitInterest(ClusteredDestinationRouter router, String destination, Set<String> expected)
+            throws Exception {
+        awaitCondition(() -> {
+            try {
+                return expected.equals(await(router.interestedNodes(destination)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void awaitCondition(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.get() && System.nanoTime() - deadline < 0) {
+            Thread.sleep(20);
+        }
+        assertTrue("Timed out waiting for the condition", condition.get());
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+}
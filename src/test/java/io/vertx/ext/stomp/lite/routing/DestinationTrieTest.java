@@ -0,0 +1,169 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DestinationTrieTest {
+
+    @Test
+    public void matchesExactDestinations() {
+        DestinationTrie<String> trie = new DestinationTrie<>('/');
+        trie.add("/topic/prices", "prices");
+        trie.add("/topic/orders", "orders");
+        assertEquals(List.of("prices"), match(trie, "/topic/prices"));
+        assertEquals(List.of(), match(trie, "/topic"));
+        assertEquals(List.of(), match(trie, "/topic/prices/eur"));
+    }
+
+    @Test
+    public void singleWildcardMatchesOneSegment() {
+        DestinationTrie<String> trie = new DestinationTrie<>('/');
+        trie.add("/topic/*/price", "price");
+        assertEquals(List.of("price"), match(trie, "/topic/eur/price"));
+        assertEquals(List.of(), match(trie, "/topic/price"));
+        assertEquals(List.of(), match(trie, "/topic/eur/usd/price"));
+    }
+
+    @Test
+    public void multiWildcardMatchesZeroOrMoreSegments() {
+        DestinationTrie<String> trie = new DestinationTrie<>('.');
+        trie.add("market.#", "market");
+        assertEquals(List.of("market"), match(trie, "market"));
+        assertEquals(List.of("market"), match(trie, "market.eur"));
+        assertEquals(List.of("market"), match(trie, "market.eur.usd"));
+        assertEquals(List.of(), match(trie, "news.eur"));
+    }
+
+    @Test
+    public void patternsWithSeveralMultiWildcardsMatchOnce() {
+        DestinationTrie<String> trie = new DestinationTrie<>('.');
+        trie.add("#.eur.#", "eur");
+        // the pattern matches this destination in several ways
+        assertEquals(List.of("eur"), match(trie, "eur.eur.eur"));
+    }
+
+    @Test
+    public void removeOnlyRemovesTheGivenValue() {
+        DestinationTrie<String> trie = new DestinationTrie<>('/');
+        trie.add("/topic/#", "first");
+        trie.add("/topic/#", "second");
+        assertTrue(trie.remove("/topic/#", "first"));
+        assertFalse(trie.remove("/topic/#", "first"));
+        assertFalse(trie.remove("/queue/#", "second"));
+        assertEquals(List.of("second"), match(trie, "/topic/a"));
+        assertTrue(trie.remove("/topic/#", "second"));
+        assertEquals(0, trie.size());
+    }
+
+    @Test
+    public void matchesLikeABruteForceMatcher() {
+        Random random = new Random(42);
+        String[] segments = {"a", "b", "c", "*", "#", ""};
+        for (int round = 0; round < 500; round++) {
+            DestinationTrie<Integer> trie = new DestinationTrie<>('/');
+            List<String> patterns = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                String pattern = randomDestination(random, segments, segments.length, 4);
+                patterns.add(pattern);
+                trie.add(pattern, i);
+            }
+            Set<Integer> removed = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                int value = random.nextInt(patterns.size());
+                if (removed.add(value)) {
+                    assertTrue(trie.remove(patterns.get(value), value));
+                }
+            }
+            assertEquals(patterns.size() - removed.size(), trie.size());
+
+            for (int i = 0; i < 50; i++) {
+                // destinations have no wildcard
+                String destination = randomDestination(random, segments, 3, 5);
+                List<Integer> expected = new ArrayList<>();
+                for (int value = 0; value < patterns.size(); value++) {
+                    if (!removed.contains(value) && matches(patterns.get(value), destination)) {
+                        expected.add(value);
+                    }
+                }
+                List<Integer> matched = match(trie, destination);
+                Collections.sort(matched);
+                assertEquals(destination, expected, matched);
+            }
+
+            for (int value = 0; value < patterns.size(); value++) {
+                if (!removed.contains(value)) {
+                    trie.remove(patterns.get(value), value);
+                }
+            }
+            assertEquals(0, trie.size());
+        }
+    }
+
+    private static String randomDestination(Random random, String[] segments, int choices, int maxSegments) {
+        StringBuilder destination = new StringBuilder();
+        int count = 1 + random.nextInt(maxSegments);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                destination.append('/');
+            }
+            destination.append(segments[random.nextInt(choices)]);
+        }
+        return destination.toString();
+    }
+
+    private static boolean matches(String pattern, String destination) {
+        return matches(pattern.split("/", -1), 0, destination.split("/", -1), 0);
+    }
+
+    private static boolean matches(String[] pattern, int i, String[] destination, int j) {
+        if (i == pattern.length) {
+            return j == destination.length;
+        }
+        if (pattern[i].equals("#")) {
+            for (int k = j; k <= destination.length; k++) {
+                if (matches(pattern, i + 1, destination, k)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (j == destination.length) {
+            return false;
+        }
+        return (pattern[i].equals("*") || pattern[i].equals(destination[j])) && matches(pattern, i + 1, destination, j + 1);
+    }
+
+    private static <T> List<T> match(DestinationTrie<T> trie, String destination) {
+        List<T> matched = new ArrayList<>();
+        trie.match(destination, matched::add);
+        return matched;
+    }
+}
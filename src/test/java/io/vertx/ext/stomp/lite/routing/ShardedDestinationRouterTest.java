@@ -0,0 +1,204 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.internal.ContextInternal;
+import io.vertx.ext.stomp.lite.StompServerConnection;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+import io.vertx.ext.stomp.lite.frame.Headers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedDestinationRouterTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        // a single event loop, so every context runs on it
+        vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        await(vertx.close());
+    }
+
+    @Test
+    public void connectionsOfOneEventLoopShareAShard() throws Exception {
+        ShardedDestinationRouter router = new ShardedDestinationRouter();
+        List<TestConnection> connections = connectionsOnOneEventLoop();
+        for (int i = 0; i < connections.size(); i++) {
+            await(router.subscribe(connections.get(i), "sub-" + i, "/topic/prices", null));
+        }
+        assertEquals(1, router.shardCount());
+        assertEquals(connections.size(), router.size());
+
+        // a single task delivers to all the subscriptions of the loop
+        Set<Context> deliveryContexts = ConcurrentHashMap.newKeySet();
+        CountDownLatch delivered = new CountDownLatch(connections.size());
+        router.publish("/topic/prices", subscription -> {
+            deliveryContexts.add(Vertx.currentContext());
+            delivered.countDown();
+        });
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, deliveryContexts.size());
+    }
+
+    @Test
+    public void publishWritesOneFramePerSubscription() throws Exception {
+        ShardedDestinationRouter router = new ShardedDestinationRouter();
+        List<TestConnection> connections = connectionsOnOneEventLoop();
+        for (int i = 0; i < connections.size(); i++) {
+            await(router.subscribe(connections.get(i), "sub-" + i, "/topic/*", null));
+        }
+        await(router.subscribe(connections.get(0), "other", "/queue/orders", null));
+
+        Frame message = new Frame(Frame.Command.MESSAGE, Headers.create(Frame.DESTINATION, "/topic/prices"), null);
+        router.publish("/topic/prices", FrameTemplate.create(message));
+        await(barrier(connections.get(0)));
+
+        for (int i = 0; i < connections.size(); i++) {
+            List<TestConnection.Message> messages = connections.get(i).messages();
+            assertEquals(1, messages.size());
+            assertEquals("sub-" + i, messages.get(0).header(Frame.SUBSCRIPTION));
+        }
+    }
+
+    @Test
+    public void shardIsRemovedOnceItsConnectionsAreClosed() throws Exception {
+        ShardedDestinationRouter router = new ShardedDestinationRouter();
+        List<TestConnection> connections = connectionsOnOneEventLoop();
+        for (int i = 0; i < connections.size(); i++) {
+            await(router.subscribe(connections.get(i), "sub-" + i, "/topic/prices", null));
+        }
+
+        connections.get(0).close();
+        await(barrier(connections.get(0)));
+        assertEquals(connections.size() - 1, router.size());
+        assertEquals(1, router.shardCount());
+
+        connections.forEach(TestConnection::close);
+        await(barrier(connections.get(0)));
+        assertEquals(0, router.size());
+        assertEquals(0, router.shardCount());
+    }
+
+    @Test
+    public void subscriptionOfAClosedConnectionIsRemoved() throws Exception {
+        ShardedDestinationRouter router = new ShardedDestinationRouter();
+        AtomicInteger subscriptions = new AtomicInteger();
+        router.listener(new ShardedDestinationRouter.SubscriptionListener() {
+            @Override
+            public void added(Subscription subscription) {
+                subscriptions.incrementAndGet();
+            }
+
+            @Override
+            public void removed(Subscription subscription) {
+                subscriptions.decrementAndGet();
+            }
+        });
+        TestConnection connection = connectionsOnOneEventLoop().get(0);
+        connection.close();
+        await(barrier(connection));
+
+        // subscribing from the context of the connection, its close handler is called right away
+        await(Future.<Subscription>future(promise -> connection.context().runOnContext(
+                v -> router.subscribe(connection, "sub-0", "/topic/prices", null).onComplete(promise))));
+        await(barrier(connection));
+        assertEquals(0, router.size());
+        assertEquals(0, router.shardCount());
+        // the interest published by the clustered router follows the listener
+        assertEquals(0, subscriptions.get());
+
+        router.publish("/topic/prices", FrameTemplate.create(
+                new Frame(Frame.Command.MESSAGE, Headers.create(Frame.DESTINATION, "/topic/prices"), null)));
+        await(barrier(connection));
+        assertTrue(connection.messages().isEmpty());
+    }
+
+    @Test
+    public void connectionsWithoutContextOrCloseHandlersAreRejected() throws Exception {
+        ShardedDestinationRouter router = new ShardedDestinationRouter();
+        ContextInternal context = ((ContextInternal) vertx.getOrCreateContext()).duplicate();
+        TestConnection noContext = new TestConnection(context) {
+            @Override
+            public Context context() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        assertThrows(UnsupportedOperationException.class,
+                     () -> router.subscribe(noContext, "sub-0", "/topic/prices", null));
+
+        TestConnection noCloseHandlers = new TestConnection(context) {
+            @Override
+            public StompServerConnection addCloseHandler(Handler<Void> handler) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        Future<Subscription> subscribed = router.subscribe(noCloseHandlers, "sub-0", "/topic/prices", null);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> await(subscribed));
+        assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        assertEquals(0, router.size());
+        assertEquals(0, router.shardCount());
+    }
+
+    /**
+     * Creates connections having their own duplicated context, as the WebSocket and TCP connections do, on two verticle
+     * contexts sharing the event loop
+     */
+    private List<TestConnection> connectionsOnOneEventLoop() {
+        ContextInternal verticle = (ContextInternal) vertx.getOrCreateContext();
+        ContextInternal otherVerticle = (ContextInternal) vertx.getOrCreateContext();
+        return List.of(new TestConnection(verticle.duplicate()),
+                       new TestConnection(verticle.duplicate()),
+                       new TestConnection(otherVerticle.duplicate()));
+    }
+
+    /**
+     * @return a future completed once the tasks already submitted to the event loop of the connection have run
+     */
+    private static Future<Void> barrier(TestConnection connection) {
+        return Future.future(promise -> connection.context().runOnContext(v -> promise.complete()));
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ * Copyright 2008-2021 Kinotic and the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.vertx.ext.stomp.lite.routing;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.stomp.lite.StompServerConnection;
+import io.vertx.ext.stomp.lite.frame.Frame;
+import io.vertx.ext.stomp.lite.frame.FrameTemplate;
+
+import javax.net.ssl.SSLSession;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A connection recording the messages written to it, running on the given context. Its close handlers are called on
+ * that context
+ */
+public class TestConnection implements StompServerConnection {
+
+    private final Context context;
+    private final List<Handler<Void>> closeHandlers = new ArrayList<>();
+    private final List<Message> messages = new CopyOnWriteArrayList<>();
+    private boolean closed = false;
+
+    public TestConnection(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * @return the messages written to the connection
+     */
+    public List<Message> messages() {
+        return messages;
+    }
+
+    @Override
+    public Context context() {
+        return context;
+    }
+
+    @Override
+    public Future<Void> write(FrameTemplate template, Map<String, String> headers) {
+        // copied as the frame would be encoded right away
+        messages.add(new Message(template, headers != null ? new HashMap<>(headers) : null));
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public Future<Void> write(Frame frame) {
+        return write(FrameTemplate.create(frame), null);
+    }
+
+    @Override
+    public Future<Void> write(Buffer buffer) {
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public StompServerConnection addCloseHandler(Handler<Void> handler) {
+        onContext(() -> {
+            if (closed) {
+                handler.handle(null);
+            } else {
+                closeHandlers.add(handler);
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public void close() {
+        onContext(() -> {
+            if (!closed) {
+                closed = true;
+                closeHandlers.forEach(handler -> handler.handle(null));
+                closeHandlers.clear();
+            }
+        });
+    }
+
+    /**
+     * Runs the action right away when called on the context, as the connections of the server do
+     */
+    private void onContext(Runnable action) {
+        if (Vertx.currentContext() == context) {
+            action.run();
+        } else {
+            context.runOnContext(v -> action.run());
+        }
+    }
+
+    @Override
+    public String binaryHandlerID() {
+        return null;
+    }
+
+    @Override
+    public String textHandlerID() {
+        return null;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return null;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return null;
+    }
+
+    @Override
+    public boolean isSsl() {
+        return false;
+    }
+
+    @Override
+    public SSLSession sslSession() {
+        return null;
+    }
+
+    @Override
+    public Future<Void> sendReceiptIfNeeded(Frame frame) {
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public Future<Void> sendError(Throwable throwable) {
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public Future<Void> sendErrorAndDisconnect(Throwable throwable) {
+        close();
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public void pause() {
+    }
+
+    @Override
+    public void resume() {
+    }
+
+    @Override
+    public void fetch(long amount) {
+    }
+
+    /**
+     * A message written to the connection
+     */
+    public record Message(FrameTemplate template, Map<String, String> headers) {
+
+        public String header(String name) {
+            String value = headers != null ? headers.get(name) : null;
+            return value != null ? value : template.getHeader(name);
+        }
+    }
+}